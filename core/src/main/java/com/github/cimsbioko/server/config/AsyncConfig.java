@@ -1,6 +1,8 @@
 package com.github.cimsbioko.server.config;
 
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.scheduling.annotation.AsyncConfigurerSupport;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
@@ -8,14 +10,39 @@ import org.springframework.security.core.context.SecurityContextHolder;
 
 import javax.annotation.PostConstruct;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import static java.lang.Thread.MIN_PRIORITY;
 import static java.lang.Thread.NORM_PRIORITY;
 
+/**
+ * Configures asynchronous execution. Each class of background work runs on its own bounded executor, so that long
+ * running work, like a backup, does not hold up unrelated work, like mobile db exports. Executors are configurable
+ * using app.executor.[name].{core,max,queue,rejection,prefix} properties, and their metrics are published under the
+ * executor.* metrics, tagged with the executor name.
+ */
 @Configuration
 @EnableAsync
 public class AsyncConfig extends AsyncConfigurerSupport {
 
+    public static final String EXPORT_EXECUTOR = "exportExecutor";
+    public static final String EXPORT_READER_EXECUTOR = "exportReaderExecutor";
+    public static final String BACKUP_EXECUTOR = "backupExecutor";
+    public static final String FORM_PROCESSING_EXECUTOR = "formProcessingExecutor";
+    public static final String INDEXING_EXECUTOR = "indexingExecutor";
+
+    private static final String ABORT = "abort";
+    private static final String CALLER_RUNS = "caller-runs";
+    private static final String DISCARD = "discard";
+    private static final String DISCARD_OLDEST = "discard-oldest";
+
+    private final Environment env;
+
+    public AsyncConfig(Environment env) {
+        this.env = env;
+    }
+
     @PostConstruct
     void setupSecurityPropagation() {
         // propagates security context from calling thread for async calls, otherwise principal is null
@@ -29,4 +56,74 @@ public class AsyncConfig extends AsyncConfigurerSupport {
         executor.setThreadPriority(MIN_PRIORITY + (NORM_PRIORITY - MIN_PRIORITY) / 2);
         return executor;
     }
+
+    /**
+     * Runs mobile db exports. A single thread by default, to limit the load exports put on the database. Exports are
+     * coalesced per campaign, so each campaign queues at most one export, and rejections are reported to the requester.
+     */
+    @Bean(name = EXPORT_EXECUTOR)
+    public InstrumentedTaskExecutor exportExecutor() {
+        return createExecutor("export", 1, 1, 16, ABORT);
+    }
+
+    /**
+     * Runs the queries of pipelined mobile db exports. Each export limits the queries it runs at once, so the pool
+     * mainly bounds the source connections held by concurrent exports. Rejections fail the export.
+     */
+    @Bean(name = EXPORT_READER_EXECUTOR)
+    public InstrumentedTaskExecutor exportReaderExecutor() {
+        return createExecutor("exportreader", 4, 4, 16, ABORT);
+    }
+
+    /**
+     * Runs backups, which are user requested, so rejections are reported to the requester.
+     */
+    @Bean(name = BACKUP_EXECUTOR)
+    public InstrumentedTaskExecutor backupExecutor() {
+        return createExecutor("backup", 1, 1, 4, ABORT);
+    }
+
+    /**
+     * Runs form processing. Processing is triggered periodically and each run handles all pending submissions, so at
+     * most one run waits behind the running one and further triggers are dropped.
+     */
+    @Bean(name = FORM_PROCESSING_EXECUTOR)
+    public InstrumentedTaskExecutor formProcessingExecutor() {
+        return createExecutor("formproc", 1, 1, 1, DISCARD);
+    }
+
+    /**
+     * Runs search index rebuilds, which are user requested, so rejections are reported to the requester.
+     */
+    @Bean(name = INDEXING_EXECUTOR)
+    public InstrumentedTaskExecutor indexingExecutor() {
+        return createExecutor("indexing", 1, 1, 1, ABORT);
+    }
+
+    private InstrumentedTaskExecutor createExecutor(String name, int core, int max, int queue, String rejection) {
+        String prefix = "app.executor." + name + ".";
+        InstrumentedTaskExecutor executor = new InstrumentedTaskExecutor(name);
+        executor.setCorePoolSize(env.getProperty(prefix + "core", Integer.class, core));
+        executor.setMaxPoolSize(env.getProperty(prefix + "max", Integer.class, max));
+        executor.setQueueCapacity(env.getProperty(prefix + "queue", Integer.class, queue));
+        executor.setRejectedExecutionHandler(rejectionPolicy(env.getProperty(prefix + "rejection", rejection)));
+        executor.setThreadNamePrefix(env.getProperty(prefix + "prefix", name + "-"));
+        executor.setThreadPriority(MIN_PRIORITY + (NORM_PRIORITY - MIN_PRIORITY) / 2);
+        return executor;
+    }
+
+    private static RejectedExecutionHandler rejectionPolicy(String name) {
+        switch (name) {
+            case ABORT:
+                return new ThreadPoolExecutor.AbortPolicy();
+            case CALLER_RUNS:
+                return new ThreadPoolExecutor.CallerRunsPolicy();
+            case DISCARD:
+                return new ThreadPoolExecutor.DiscardPolicy();
+            case DISCARD_OLDEST:
+                return new ThreadPoolExecutor.DiscardOldestPolicy();
+            default:
+                throw new IllegalArgumentException("unknown rejection policy: " + name);
+        }
+    }
 }
@@ -1,5 +1,7 @@
 package com.github.cimsbioko.server.config;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
@@ -9,18 +11,38 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.security.core.userdetails.UserCache;
 import org.springframework.security.core.userdetails.cache.SpringCacheBasedUserCache;
 
+import java.util.HashSet;
+import java.util.Set;
+
+import static java.util.Arrays.asList;
+
 @Configuration
 @EnableCaching
 public class CachingConfig {
 
     public static final String USER_CACHE = "userCache";
     public static final String CAMPAIGN_MEMBERSHIP_CACHE = "campaignMembershipCache";
-    public static final String MY_CAMPAIGNS_CACHE = "campaignMembershipCache";
+    public static final String MY_CAMPAIGNS_CACHE = "myCampaignsCache";
+    public static final String DEFAULT_CAMPAIGN_CACHE = "defaultCampaignCache";
     public static final String FORM_METADATA_CACHE = "formMetadataCache";
+    public static final String FORM_INTAKE_CACHE = "formIntakeCache";
+
+    /**
+     * Caches holding state that can change on other nodes, where evictions on the node making the change don't reach.
+     * They expire a fixed time after they are loaded, so other nodes see the change within that time.
+     */
+    private static final Set<String> SHARED_STATE_CACHES = new HashSet<>(asList(FORM_INTAKE_CACHE, DEFAULT_CAMPAIGN_CACHE));
 
     @Bean
-    public CacheManager cacheManager(@Value("${app.caffeine.spec:expireAfterAccess=5m}") String cacheSpec) {
-        CaffeineCacheManager manager = new CaffeineCacheManager();
+    public CacheManager cacheManager(@Value("${app.caffeine.spec:expireAfterAccess=5m}") String cacheSpec,
+                                     @Value("${app.caffeine.shared.spec:expireAfterWrite=30s}") String sharedCacheSpec) {
+        CaffeineCacheManager manager = new CaffeineCacheManager() {
+            @Override
+            protected Cache<Object, Object> createNativeCaffeineCache(String name) {
+                return SHARED_STATE_CACHES.contains(name) ?
+                        Caffeine.from(sharedCacheSpec).build() : super.createNativeCaffeineCache(name);
+            }
+        };
         manager.setCacheSpecification(cacheSpec);
         return manager;
     }
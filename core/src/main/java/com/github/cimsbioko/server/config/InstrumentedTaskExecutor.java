@@ -0,0 +1,58 @@
+package com.github.cimsbioko.server.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link ThreadPoolTaskExecutor} that publishes its metrics when declared as a bean: pool size, active count,
+ * queue depth and remaining queue capacity, along with the time tasks spend waiting in the queue (executor.idle) and
+ * running (executor). Tasks submitted before the metrics are bound to a registry run untimed.
+ */
+public class InstrumentedTaskExecutor extends ThreadPoolTaskExecutor implements MeterBinder {
+
+    private final String name;
+
+    private volatile Timer executionTimer, idleTimer;
+
+    public InstrumentedTaskExecutor(String name) {
+        this.name = name;
+        setTaskDecorator(this::timed);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Tags tags = Tags.of("name", name);
+        new ExecutorServiceMetrics(getThreadPoolExecutor(), name, Tags.empty()).bindTo(registry);
+        Gauge.builder("executor.queue.remaining", this, e -> e.getThreadPoolExecutor().getQueue().remainingCapacity())
+                .tags(tags)
+                .description("The number of additional tasks that can be queued without rejection")
+                .register(registry);
+        idleTimer = registry.timer("executor.idle", tags);
+        executionTimer = registry.timer("executor", tags);
+    }
+
+    private Runnable timed(Runnable task) {
+        long submitted = System.nanoTime();
+        return () -> {
+            long started = System.nanoTime();
+            Timer idle = idleTimer, execution = executionTimer;
+            if (idle != null) {
+                idle.record(started - submitted, TimeUnit.NANOSECONDS);
+            }
+            try {
+                task.run();
+            } finally {
+                if (execution != null) {
+                    execution.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                }
+            }
+        };
+    }
+}
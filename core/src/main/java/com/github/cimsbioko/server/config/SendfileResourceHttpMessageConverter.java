@@ -0,0 +1,44 @@
+package com.github.cimsbioko.server.config;
+
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.ResourceHttpMessageConverter;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A {@link ResourceHttpMessageConverter} that hands file transfers to Tomcat's sendfile support, so the file is sent by
+ * the kernel without being copied through the JVM. Falls back on copying when sendfile is unavailable, such as for
+ * resources that are not files or when the connector does not support it.
+ */
+public class SendfileResourceHttpMessageConverter extends ResourceHttpMessageConverter {
+
+    static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    @Override
+    protected void writeContent(Resource resource, HttpOutputMessage outputMessage) throws IOException {
+        HttpServletRequest request = getCurrentRequest();
+        if (request != null && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED)) && resource.isFile()) {
+            // tomcat sends the file once the response is committed, the body must be left empty
+            File file = resource.getFile();
+            request.setAttribute(SENDFILE_FILENAME, file.getCanonicalPath());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, file.length());
+        } else {
+            super.writeContent(resource, outputMessage);
+        }
+    }
+
+    private static HttpServletRequest getCurrentRequest() {
+        RequestAttributes attrs = RequestContextHolder.getRequestAttributes();
+        return attrs instanceof ServletRequestAttributes ? ((ServletRequestAttributes) attrs).getRequest() : null;
+    }
+}
@@ -1,6 +1,7 @@
 package com.github.cimsbioko.server.config;
 
 import com.github.cimsbioko.server.dao.*;
+import com.github.cimsbioko.server.hibernate.SubmissionContentsListener;
 import com.github.cimsbioko.server.security.RoleMapper;
 import com.github.cimsbioko.server.security.TokenGenerator;
 import com.github.cimsbioko.server.security.TokenHasher;
@@ -9,23 +10,34 @@ import com.github.cimsbioko.server.service.impl.*;
 import com.github.cimsbioko.server.service.impl.backup.BackupServiceImpl;
 import com.github.cimsbioko.server.service.impl.campaign.CampaignServiceImpl;
 import com.github.cimsbioko.server.service.impl.indexing.IndexingServiceImpl;
+import com.github.cimsbioko.server.service.impl.sync.ExportLeases;
 import com.github.cimsbioko.server.service.impl.sync.SyncServiceImpl;
+import com.github.cimsbioko.server.service.impl.sync.VersionHistory;
 import com.github.cimsbioko.server.sqliteexport.Exporter;
 import com.github.cimsbioko.server.webapi.odk.EndpointHelper;
 import com.github.cimsbioko.server.webapi.odk.FileHasher;
 import com.github.cimsbioko.server.webapi.odk.FormFileSystem;
 import com.vividsolutions.jts.geom.GeometryFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.scheduling.TaskScheduler;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.client.RestTemplate;
 
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 import java.io.File;
 import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.Executor;
+
+import static com.github.cimsbioko.server.config.AsyncConfig.EXPORT_EXECUTOR;
 
 @Configuration
 public class ServiceConfig {
@@ -36,14 +48,15 @@ public class ServiceConfig {
     }
 
     @Bean
-    public ErrorService errorService(ErrorRepository repo) {
-        return new ErrorServiceImpl(repo);
+    public ErrorService errorService(ErrorRepository repo, EntityManager em) {
+        return new ErrorServiceImpl(repo, em);
     }
 
     @Bean
     public FormService formService(FormRepository repo, FormSubmissionRepository submissionRepo, FileHasher hasher,
-                                   FormFileSystem fs, XLSFormService xlsformService, FormMetadataService metadataService) {
-        return new FormServiceImpl(repo, submissionRepo, hasher, fs, xlsformService, metadataService);
+                                   FormFileSystem fs, XLSFormService xlsformService, FormMetadataService metadataService,
+                                   LastSubmissionService lastSubmissions) {
+        return new FormServiceImpl(repo, submissionRepo, hasher, fs, xlsformService, metadataService, lastSubmissions);
     }
 
     @Bean
@@ -62,13 +75,46 @@ public class ServiceConfig {
     }
 
     @Bean
-    public FormSubmissionService submissionService(FormSubmissionRepository submissionRepo, FormRepository formRepo) {
-        return new FormSubmissionServiceImpl(submissionRepo, formRepo);
+    public FormSubmissionService submissionService(FormSubmissionRepository submissionRepo,
+                                                   LastSubmissionService lastSubmissions, EntityManager em,
+                                                   ApplicationEventPublisher publisher) {
+        return new FormSubmissionServiceImpl(submissionRepo, lastSubmissions, em, publisher);
+    }
+
+    @Bean
+    public IntakePolicyService intakePolicyService(FormRepository formRepo, CampaignRepository campaignRepo) {
+        return new IntakePolicyServiceImpl(formRepo, campaignRepo);
+    }
+
+    @Bean
+    public LastSubmissionService lastSubmissionService(JdbcTemplate jdbcTemplate) {
+        return new LastSubmissionServiceImpl(jdbcTemplate);
     }
 
     @Bean
-    public SyncService syncService(TaskScheduler scheduler, CampaignRepository repo, File dataDir, Exporter exporter, ApplicationEventPublisher publisher) {
-        return new SyncServiceImpl(scheduler, repo, dataDir, exporter, publisher);
+    public SyncService syncService(TaskScheduler scheduler, CampaignRepository repo, File dataDir, Exporter exporter,
+                                   ApplicationEventPublisher publisher, JdbcTemplate jdbcTemplate, VersionHistory history,
+                                   ExportLeases leases, @Qualifier(EXPORT_EXECUTOR) Executor exportExecutor,
+                                   @Value("${app.export.incremental.enabled:false}") boolean incremental,
+                                   @Value("${app.export.incremental.fullevery:24}") int fullExportInterval,
+                                   @Value("${app.export.incremental.retention:P14D}") String changeRetention,
+                                   @Value("${app.export.staterefresh:PT5S}") String stateRefresh) {
+        return new SyncServiceImpl(scheduler, repo, dataDir, exporter, publisher, jdbcTemplate, history, leases,
+                exportExecutor, incremental, fullExportInterval, Duration.parse(changeRetention),
+                Duration.parse(stateRefresh));
+    }
+
+    @Bean
+    public ExportLeases exportLeases(JdbcTemplate jdbcTemplate, PlatformTransactionManager txManager,
+                                     @Value("${app.export.lease:PT30M}") String leaseDuration) {
+        return new ExportLeases(jdbcTemplate, txManager, Duration.parse(leaseDuration));
+    }
+
+    @Bean
+    public VersionHistory versionHistory(@Value("${app.export.history.versions:3}") int versions,
+                                         @Value("${app.export.history.budget:1GB}") String budget,
+                                         @Value("${app.export.history.blocksize:4096}") int blockSize) {
+        return new VersionHistory(versions, DataSize.parse(budget).toBytes(), blockSize);
     }
 
     @Bean
@@ -82,15 +128,52 @@ public class ServiceConfig {
     }
 
     @Bean
-    public FormProcessorServiceImpl formProcessingService(CampaignRepository campaignRepository) {
-        return new FormProcessorServiceImpl(campaignRepository);
+    public EntityResolver entityResolver(EntityManager em, LocationRepository locationRepo,
+                                         IndividualRepository individualRepo, LocationHierarchyRepository hierarchyRepo,
+                                         FieldWorkerRepository fieldWorkerRepo) {
+        return new EntityResolverImpl(em, locationRepo, individualRepo, hierarchyRepo, fieldWorkerRepo);
+    }
+
+    @Bean
+    public FormProcessingMetrics formProcessingMetrics(FormSubmissionRepository submissionRepo) {
+        return new FormProcessingMetrics(submissionRepo);
+    }
+
+    @Bean
+    public FormProcessorServiceImpl formProcessingService(CampaignRepository campaignRepository, EntityManager em,
+                                                          FormProcessingMetrics metrics,
+                                                          IndexedChangeTracker changeTracker) {
+        return new FormProcessorServiceImpl(campaignRepository, em, metrics, changeTracker);
+    }
+
+    @Bean
+    public IndexedChangeTracker indexedChangeTracker(EntityManagerFactory emf) {
+        IndexedChangeTracker tracker = new IndexedChangeTracker();
+        tracker.register(emf);
+        return tracker;
+    }
+
+    @Bean
+    public SubmissionContentsListener submissionContentsListener(EntityManagerFactory emf) {
+        SubmissionContentsListener listener = new SubmissionContentsListener();
+        listener.register(emf);
+        return listener;
     }
 
     @Bean
     ScheduledFormProcessing scheduledFormProcessing(EntityManager entityManager, FormSubmissionService formsService,
                                                     FormProcessorService formProcessorService,
-                                                    ErrorService errorService) {
-        return new ScheduledFormProcessing(entityManager, formsService, formProcessorService, errorService);
+                                                    ErrorService errorService, PlatformTransactionManager txManager,
+                                                    FormProcessingMetrics metrics) {
+        return new ScheduledFormProcessing(entityManager, formsService, formProcessorService, errorService, txManager,
+                metrics);
+    }
+
+    @Bean
+    FormProcessingTrigger formProcessingTrigger(ScheduledFormProcessing processing, TaskScheduler scheduler,
+                                                @Value("${app.formproc.trigger.debounce:PT5S}") String debounce,
+                                                @Value("${app.formproc.trigger.enabled:false}") boolean enabled) {
+        return new FormProcessingTrigger(processing, scheduler, Duration.parse(debounce), enabled);
     }
 
     @Bean
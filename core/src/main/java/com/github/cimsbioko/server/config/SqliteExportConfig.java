@@ -1,23 +1,81 @@
 package com.github.cimsbioko.server.config;
 
 import com.github.cimsbioko.server.sqliteexport.*;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
 
 import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.github.cimsbioko.server.config.AsyncConfig.EXPORT_READER_EXECUTOR;
 
 @Configuration
 public class SqliteExportConfig {
 
+    @Value("${app.export.batchsize:1}")
+    private int batchSize;
+
+    @Value("${app.export.commitsize:0}")
+    private int commitSize;
+
+    @Value("${app.export.readers:1}")
+    private int readers;
+
+    @Value("${app.export.queuerows:10000}")
+    private int queueRows;
+
+    @Value("${app.export.pragma.journal_mode:}")
+    private String journalMode;
+
+    @Value("${app.export.pragma.synchronous:}")
+    private String synchronous;
+
+    @Value("${app.export.pragma.cache_size:0}")
+    private int cacheSize;
+
+    @Value("${app.export.pragma.page_size:0}")
+    private int pageSize;
+
+    @Value("${app.export.pragma.temp_store:}")
+    private String tempStore;
+
     @Bean
-    public Source source(DataSource dataSource, @Value("${app.export.fetchsize}") int fetchSize) {
-        return new DSSource(dataSource, fetchSize);
+    public Source source(DataSource dataSource, @Value("${app.export.fetchsize}") int fetchSize,
+                         @Value("${app.export.streaming:false}") boolean streaming) {
+        return streaming ? new CursorSource(dataSource, fetchSize) : new DSSource(dataSource, fetchSize);
     }
 
     @Bean(initMethod = "loadDriver")
     public Target target() {
-        return new SqliteTarget();
+        return new SqliteTarget(bulkLoadPragmas());
+    }
+
+    /**
+     * Only pragmas that do not persist in the database file are applied by default, so bulk loading does not change
+     * the files tablets receive. Page size is the exception, it is only applied when explicitly configured.
+     */
+    private List<String> bulkLoadPragmas() {
+        List<String> pragmas = new ArrayList<>();
+        if (pageSize > 0) {
+            pragmas.add("page_size=" + pageSize);
+        }
+        if (!journalMode.isEmpty()) {
+            pragmas.add("journal_mode=" + journalMode);
+        }
+        if (!synchronous.isEmpty()) {
+            pragmas.add("synchronous=" + synchronous);
+        }
+        if (cacheSize != 0) {
+            pragmas.add("cache_size=" + cacheSize);
+        }
+        if (!tempStore.isEmpty()) {
+            pragmas.add("temp_store=" + tempStore);
+        }
+        return pragmas;
     }
 
     @Bean
@@ -31,7 +89,11 @@ public class SqliteExportConfig {
     }
 
     @Bean
-    Exporter exporter(Source source) {
-        return new Exporter(source, target(), mapperFactory());
+    Exporter exporter(Source source, @Qualifier(EXPORT_READER_EXECUTOR) AsyncTaskExecutor readerExecutor) {
+        if (readers > 1) {
+            return new PipelinedExporter(source, target(), mapperFactory(), batchSize, commitSize, readerExecutor,
+                    readers, queueRows);
+        }
+        return new Exporter(source, target(), mapperFactory(), batchSize, commitSize);
     }
 }
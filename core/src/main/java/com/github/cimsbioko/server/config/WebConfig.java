@@ -8,13 +8,19 @@ import org.springframework.boot.web.server.MimeMappings;
 import org.springframework.boot.web.server.WebServerFactoryCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.web.multipart.MultipartResolver;
 import org.springframework.web.multipart.support.StandardServletMultipartResolver;
-import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
-import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.handler.SimpleUrlHandlerMapping;
+import org.springframework.web.servlet.resource.EncodedResourceResolver;
+import org.springframework.web.servlet.resource.PathResourceResolver;
+import org.springframework.web.servlet.resource.ResourceHttpRequestHandler;
 
 import javax.annotation.Resource;
 import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
 
 @Configuration
 public class WebConfig {
@@ -24,15 +30,25 @@ public class WebConfig {
     @Resource
     File dataDir;
 
+    /**
+     * Serves exported files, such as mobile databases and their sync metadata. Precompressed variants are served to
+     * clients accepting them, and files are transferred using sendfile where possible.
+     */
     @Bean
-    WebMvcConfigurer webMvcConfigurerAdapter() {
-        return new WebMvcConfigurer() {
-            @Override
-            public void addResourceHandlers(ResourceHandlerRegistry registry) {
-                registry.addResourceHandler(CACHED_FILES_PATH + "/**")
-                        .addResourceLocations(dataDir.toURI().toString());
-            }
-        };
+    ResourceHttpRequestHandler cachedFilesHandler() {
+        ResourceHttpRequestHandler handler = new ResourceHttpRequestHandler();
+        handler.setLocations(Collections.singletonList(new FileSystemResource(dataDir.getAbsolutePath() + "/")));
+        handler.setResourceResolvers(Arrays.asList(new EncodedResourceResolver(), new PathResourceResolver()));
+        handler.setResourceHttpMessageConverter(new SendfileResourceHttpMessageConverter());
+        return handler;
+    }
+
+    @Bean
+    SimpleUrlHandlerMapping cachedFilesHandlerMapping(ResourceHttpRequestHandler cachedFilesHandler) {
+        SimpleUrlHandlerMapping mapping = new SimpleUrlHandlerMapping();
+        mapping.setUrlMap(Collections.singletonMap(CACHED_FILES_PATH + "/**", cachedFilesHandler));
+        mapping.setOrder(Ordered.LOWEST_PRECEDENCE - 1);
+        return mapping;
     }
 
     @Bean
@@ -59,6 +75,7 @@ public class WebConfig {
             MimeMappings mappings = new MimeMappings(MimeMappings.DEFAULT);
             mappings.add("db", "application/x-sqlite3");
             mappings.add("jrsmd", "application/vnd.jrsync+jrsmd");
+            mappings.add("dbpatch", "application/vnd.cims.dbpatch");
             container.setMimeMappings(mappings);
         };
     }
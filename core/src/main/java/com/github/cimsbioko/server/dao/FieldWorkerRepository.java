@@ -7,10 +7,17 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
+import java.util.List;
+
 public interface FieldWorkerRepository extends PagingAndSortingRepository<FieldWorker, String>, FieldworkerSearch {
 
     Page<FieldWorker> findByDeletedIsNull(Pageable pageable);
 
+    FieldWorker findByExtId(String extId);
+
+    List<FieldWorker> findByExtIdIn(Collection<String> extIds);
+
     @Query("select case when count(fw) > 0 then true else false end from #{#entityName} fw where fw.extId = :id")
     boolean idExists(@Param("id") String id);
 }
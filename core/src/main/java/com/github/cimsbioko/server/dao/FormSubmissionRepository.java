@@ -1,27 +1,57 @@
 package com.github.cimsbioko.server.dao;
 
 import com.github.cimsbioko.server.domain.FormSubmission;
+import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.data.repository.query.Param;
 
+import javax.persistence.QueryHint;
+
 import java.sql.Timestamp;
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Stream;
 
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
 public interface FormSubmissionRepository extends PagingAndSortingRepository<FormSubmission, String>, FormSubmissionSearch {
 
     @Query("select f from #{#entityName} f where f.processed is null order by date_trunc('hour', f.submitted), f.collected")
     Stream<FormSubmission> findUnprocessed(Pageable pageable);
 
-    List<FormSubmission> findByFormIdAndSubmittedAfter(String formId, Timestamp submitted, Pageable pageable);
+    long countByProcessedIsNull();
+
+    @Query(value = SubmissionSummary.SELECT + " from #{#entityName} f", countQuery = "select count(f) from #{#entityName} f")
+    Page<SubmissionSummary> findSummaries(Pageable pageable);
 
-    List<FormSubmission> findByFormId(String formId, Pageable pageable);
+    @Query("select f.instanceId from #{#entityName} f where f.instanceId in :ids")
+    Set<String> findExistingIds(@Param("ids") Collection<String> ids);
+
+    @Query("select f.instanceId as instanceId, f.submitted as submitted from #{#entityName} f where f.formId = :formId" +
+            " and (f.submitted > :submitted or f.submitted = :submitted and f.instanceId > :instanceId)" +
+            " order by f.submitted, f.instanceId")
+    List<SubmissionKey> findKeysByFormIdAfter(@Param("formId") String formId, @Param("submitted") Timestamp submitted,
+                                              @Param("instanceId") String instanceId, Pageable pageable);
+
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "50"))
+    @Query("select f from #{#entityName} f where f.formId = :formId" +
+            " and (f.submitted > :submitted or f.submitted = :submitted and f.instanceId > :instanceId)" +
+            " order by f.submitted, f.instanceId")
+    Stream<FormSubmission> streamByFormIdAfter(@Param("formId") String formId, @Param("submitted") Timestamp submitted,
+                                               @Param("instanceId") String instanceId, Pageable pageable);
 
     long deleteByFormIdAndFormVersion(String formId, String formVersion);
 
+    @Modifying(flushAutomatically = true)
+    @Query("update #{#entityName} s set s.processed = :processed, s.processedOk = :processedOk where s.instanceId in :ids")
+    int markProcessed(@Param("ids") Collection<String> ids, @Param("processedOk") Boolean processedOk,
+                      @Param("processed") Timestamp processed);
+
     @Modifying(flushAutomatically = true, clearAutomatically = true)
     @Query("update #{#entityName} s set s.processed = null where s.campaignId = :campaign and s.formBinding = :binding")
     int markUnprocessed(@Param("campaign") String campaign, @Param("binding") String binding);
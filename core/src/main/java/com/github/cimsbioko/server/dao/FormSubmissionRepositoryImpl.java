@@ -2,6 +2,7 @@ package com.github.cimsbioko.server.dao;
 
 import com.github.cimsbioko.server.domain.FormSubmission;
 import org.apache.lucene.search.Query;
+import org.hibernate.search.engine.ProjectionConstants;
 import org.hibernate.search.jpa.FullTextEntityManager;
 import org.hibernate.search.jpa.FullTextQuery;
 import org.hibernate.search.jpa.Search;
@@ -12,7 +13,11 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.stream.Collectors;
 
 public class FormSubmissionRepositoryImpl implements FormSubmissionSearch {
 
@@ -51,17 +56,34 @@ public class FormSubmissionRepositoryImpl implements FormSubmissionSearch {
         return getFullTextEntityManager().createFullTextQuery(getSearchQuery(query), FormSubmission.class);
     }
 
+    /**
+     * Pages through matching submission ids, then loads only the summaries of the submissions on the page, in the same
+     * order, so that listing search results doesn't load submission contents.
+     */
     @SuppressWarnings("unchecked")
-    private PageImpl<FormSubmission> getSearchPage(FullTextQuery query, Pageable page) {
+    private PageImpl<SubmissionSummary> getSearchPage(FullTextQuery query, Pageable page) {
         FullTextQuery pagedQuery = query
+                .setProjection(ProjectionConstants.ID)
                 .setFirstResult((int) page.getOffset())
                 .setMaxResults(page.getPageSize());
-        return new PageImpl<>((List<FormSubmission>) pagedQuery.getResultList(), page, pagedQuery.getResultSize());
+        List<String> ids = ((List<Object[]>) pagedQuery.getResultList())
+                .stream()
+                .map(row -> (String) row[0])
+                .collect(Collectors.toList());
+        if (ids.isEmpty()) {
+            return new PageImpl<>(Collections.emptyList(), page, pagedQuery.getResultSize());
+        }
+        List<SubmissionSummary> summaries = new ArrayList<>(em
+                .createQuery(SubmissionSummary.SELECT + " from FormSubmission f where f.instanceId in :ids", SubmissionSummary.class)
+                .setParameter("ids", ids)
+                .getResultList());
+        summaries.sort(Comparator.comparingInt(summary -> ids.indexOf(summary.getInstanceId())));
+        return new PageImpl<>(summaries, page, pagedQuery.getResultSize());
     }
 
     @Override
     @Transactional(readOnly = true)
-    public Page<FormSubmission> findBySearch(String query, Pageable page) {
+    public Page<SubmissionSummary> findBySearch(String query, Pageable page) {
         return getSearchPage(getFullTextQuery(query), page);
     }
 }
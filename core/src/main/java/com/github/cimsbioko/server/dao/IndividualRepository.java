@@ -3,8 +3,11 @@ package com.github.cimsbioko.server.dao;
 import com.github.cimsbioko.server.domain.Individual;
 import org.springframework.data.repository.PagingAndSortingRepository;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface IndividualRepository extends PagingAndSortingRepository<Individual, String> {
     List<Individual> findByExtIdAndDeletedIsNull(String extId);
+
+    List<Individual> findByExtIdInAndDeletedIsNull(Collection<String> extIds);
 }
@@ -3,6 +3,11 @@ package com.github.cimsbioko.server.dao;
 import com.github.cimsbioko.server.domain.LocationHierarchy;
 import org.springframework.data.repository.PagingAndSortingRepository;
 
+import java.util.Collection;
+import java.util.List;
+
 public interface LocationHierarchyRepository extends PagingAndSortingRepository<LocationHierarchy, String> {
     LocationHierarchy findByExtId(String extId);
+
+    List<LocationHierarchy> findByExtIdIn(Collection<String> extIds);
 }
@@ -0,0 +1,13 @@
+package com.github.cimsbioko.server.dao;
+
+import java.sql.Timestamp;
+
+/**
+ * The columns identifying a submission's position in its form's submissions, without loading its contents.
+ */
+public interface SubmissionKey {
+
+    String getInstanceId();
+
+    Timestamp getSubmitted();
+}
@@ -0,0 +1,78 @@
+package com.github.cimsbioko.server.dao;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.sql.Timestamp;
+
+/**
+ * The descriptive columns of a submission, for listing submissions without loading their contents.
+ */
+public class SubmissionSummary {
+
+    static final String SELECT = "select new com.github.cimsbioko.server.dao.SubmissionSummary(f.instanceId, f.formId," +
+            " f.formVersion, f.formBinding, f.campaignId, f.deviceId, f.collected, f.submitted, f.processed, f.processedOk)";
+
+    private final String instanceId, formId, formVersion, formBinding, campaignId, deviceId;
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd'T'HH:mm:ss.SSSZ")
+    private final Timestamp collected, submitted, processed;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private final Boolean processedOk;
+
+    public SubmissionSummary(String instanceId, String formId, String formVersion, String formBinding,
+                             String campaignId, String deviceId, Timestamp collected, Timestamp submitted,
+                             Timestamp processed, Boolean processedOk) {
+        this.instanceId = instanceId;
+        this.formId = formId;
+        this.formVersion = formVersion;
+        this.formBinding = formBinding;
+        this.campaignId = campaignId;
+        this.deviceId = deviceId;
+        this.collected = collected;
+        this.submitted = submitted;
+        this.processed = processed;
+        this.processedOk = processedOk;
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    public String getFormId() {
+        return formId;
+    }
+
+    public String getFormVersion() {
+        return formVersion;
+    }
+
+    public String getFormBinding() {
+        return formBinding;
+    }
+
+    public String getCampaignId() {
+        return campaignId;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public Timestamp getCollected() {
+        return collected;
+    }
+
+    public Timestamp getSubmitted() {
+        return submitted;
+    }
+
+    public Timestamp getProcessed() {
+        return processed;
+    }
+
+    public Boolean getProcessedOk() {
+        return processedOk;
+    }
+}
@@ -38,7 +38,8 @@ public class Form {
 
     private Timestamp uploaded;
 
-    @Column(name = "last_submission")
+    // maintained by LastSubmissionService, so saving a form doesn't overwrite a later time with the one it was loaded with
+    @Column(name = "last_submission", insertable = false, updatable = false)
     private Timestamp lastSubmission;
 
     public Form() {
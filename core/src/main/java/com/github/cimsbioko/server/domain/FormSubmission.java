@@ -4,21 +4,35 @@ import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.github.cimsbioko.server.search.XmlDocumentBridge;
+import com.github.cimsbioko.server.util.SerializedDocument;
 import org.hibernate.annotations.DynamicInsert;
+import org.hibernate.annotations.DynamicUpdate;
 import org.hibernate.annotations.Type;
 import org.hibernate.search.annotations.Field;
 import org.hibernate.search.annotations.FieldBridge;
 import org.hibernate.search.annotations.Indexed;
 import org.jdom2.Document;
+import org.jdom2.JDOMException;
 import org.json.JSONObject;
 
 import javax.persistence.*;
+import java.io.IOException;
+import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.Objects;
 
+import static com.github.cimsbioko.server.util.JDOMUtil.docFromObj;
+import static com.github.cimsbioko.server.util.JDOMUtil.stringFromDoc;
+
+/**
+ * A received form submission. Its xml and json are stored as text and only parsed when first read, so loading
+ * submissions to list or update them doesn't pay for parsing their contents. Changes made to the parsed contents in
+ * place are stored when the submission is flushed, see {@link #storeContents()}.
+ */
 @Entity
 @Table(name = "form_submission")
 @DynamicInsert
+@DynamicUpdate
 @Indexed
 public class FormSubmission {
 
@@ -41,18 +55,26 @@ public class FormSubmission {
     @Column(name = "from_device")
     private String deviceId;
 
-    @JsonIgnore
-    @Type(type = "xml")
+    @Type(type = "xmltext")
     @Column(name = "as_xml")
-    @Field
+    @Field(name = "xml")
     @FieldBridge(impl = XmlDocumentBridge.class)
-    private Document xml;
+    private String xmlText;
 
-    @JsonIgnore
-    @Type(type = "json")
+    @Type(type = "jsontext")
     @Column(name = "as_json")
+    private String jsonText;
+
+    @Transient
+    private Document xml;
+
+    @Transient
     private JSONObject json;
 
+    // serialized contents as last stored, to detect changes made in place
+    @Transient
+    private String xmlSnapshot, jsonSnapshot;
+
     @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd'T'HH:mm:ss.SSSZ")
     private Timestamp collected, submitted, processed;
 
@@ -71,8 +93,8 @@ public class FormSubmission {
                           String formBinding, String campaignId, String deviceId, Timestamp collected, Timestamp submitted, Timestamp processed,
                           Boolean processedOk, FormSubmission deprecatedBy) {
         this.instanceId = instanceId;
-        this.xml = xml;
-        this.json = json;
+        setXml(xml);
+        setJson(json);
         this.formId = formId;
         this.formVersion = formVersion;
         this.formBinding = formBinding;
@@ -89,11 +111,25 @@ public class FormSubmission {
         return instanceId;
     }
 
+    @JsonIgnore
     public Document getXml() {
+        if (xml == null && xmlText != null) {
+            try {
+                xml = docFromObj(xmlText);
+                xmlSnapshot = stringFromDoc(xml, false);
+            } catch (JDOMException | IOException | SQLException e) {
+                throw new IllegalStateException("failed to parse xml for submission " + instanceId, e);
+            }
+        }
         return xml;
     }
 
+    @JsonIgnore
     public JSONObject getJson() {
+        if (json == null && jsonText != null) {
+            json = new JSONObject(jsonText);
+            jsonSnapshot = json.toString();
+        }
         return json;
     }
 
@@ -159,10 +195,37 @@ public class FormSubmission {
 
     public void setXml(Document xml) {
         this.xml = xml;
+        this.xmlText = stringFromDoc(xml);
+        // serialized documents must not be modified, so they aren't checked for changes
+        this.xmlSnapshot = xml instanceof SerializedDocument ? null : xmlText;
     }
 
     public void setJson(JSONObject json) {
         this.json = json;
+        this.jsonText = json == null ? null : json.toString();
+        this.jsonSnapshot = jsonText;
+    }
+
+    /**
+     * Stores changes made in place to the xml or json returned by this submission, by serializing them again and
+     * comparing them with their contents as last stored. Only contents that were changed are stored, so unchanged
+     * contents aren't written when the submission is updated. Called when the submission is flushed.
+     */
+    public void storeContents() {
+        if (xmlSnapshot != null) {
+            String current = stringFromDoc(xml, false);
+            if (!current.equals(xmlSnapshot)) {
+                xmlText = current;
+                xmlSnapshot = current;
+            }
+        }
+        if (jsonSnapshot != null) {
+            String current = json.toString();
+            if (!current.equals(jsonSnapshot)) {
+                jsonText = current;
+                jsonSnapshot = current;
+            }
+        }
     }
 
     public void setCollected(Timestamp collected) {
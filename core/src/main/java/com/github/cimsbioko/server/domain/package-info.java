@@ -1,7 +1,11 @@
 @TypeDef(name = "json", typeClass = JSONType.class)
+@TypeDef(name = "jsontext", typeClass = JSONTextType.class)
 @TypeDef(name = "xml", typeClass = XMLType.class)
+@TypeDef(name = "xmltext", typeClass = XMLTextType.class)
 package com.github.cimsbioko.server.domain;
 
+import com.github.cimsbioko.server.hibernate.JSONTextType;
 import com.github.cimsbioko.server.hibernate.JSONType;
+import com.github.cimsbioko.server.hibernate.XMLTextType;
 import com.github.cimsbioko.server.hibernate.XMLType;
 import org.hibernate.annotations.TypeDef;
\ No newline at end of file
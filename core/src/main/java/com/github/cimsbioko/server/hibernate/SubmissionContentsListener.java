@@ -0,0 +1,35 @@
+package com.github.cimsbioko.server.hibernate;
+
+import com.github.cimsbioko.server.domain.FormSubmission;
+import org.hibernate.HibernateException;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.FlushEntityEvent;
+import org.hibernate.event.spi.FlushEntityEventListener;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Stores changes made in place to the parsed contents of submissions as they are flushed. Submissions map their
+ * contents as text, so without this, hibernate's dirty checking wouldn't see changes made to the parsed documents.
+ */
+public class SubmissionContentsListener implements FlushEntityEventListener {
+
+    /**
+     * Registers the listener ahead of hibernate's own, so contents are stored before submissions are checked for changes.
+     */
+    public void register(EntityManagerFactory emf) {
+        EventListenerRegistry registry = emf.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.prependListeners(EventType.FLUSH_ENTITY, this);
+    }
+
+    @Override
+    public void onFlushEntity(FlushEntityEvent event) throws HibernateException {
+        Object entity = event.getEntity();
+        if (entity instanceof FormSubmission) {
+            ((FormSubmission) entity).storeContents();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.cimsbioko.server.hibernate;
+
+import org.hibernate.HibernateException;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.usertype.UserType;
+
+import java.io.Serializable;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLXML;
+import java.sql.Types;
+import java.util.Objects;
+
+/**
+ * Maps an xml column to its serialized text, for entities that parse it only when it is read. Unlike
+ * {@link XMLType}, values are immutable strings, so loading and flushing them never parses or serializes documents.
+ */
+public class XMLTextType implements UserType {
+
+    @Override
+    public int[] sqlTypes() {
+        return new int[]{Types.SQLXML};
+    }
+
+    @Override
+    public Class returnedClass() {
+        return String.class;
+    }
+
+    @Override
+    public boolean equals(Object x, Object y) throws HibernateException {
+        return Objects.equals(x, y);
+    }
+
+    @Override
+    public int hashCode(Object x) throws HibernateException {
+        return Objects.hashCode(x);
+    }
+
+    @Override
+    public Object nullSafeGet(ResultSet rs, String[] names, SharedSessionContractImplementor session, Object owner) throws HibernateException, SQLException {
+        Object value = rs.getObject(names[0]);
+        if (value instanceof SQLXML) {
+            return ((SQLXML) value).getString();
+        }
+        return value == null ? null : value.toString();
+    }
+
+    @Override
+    public void nullSafeSet(PreparedStatement st, Object value, int index, SharedSessionContractImplementor session) throws HibernateException, SQLException {
+        if (value == null) {
+            st.setNull(index, Types.SQLXML);
+        } else {
+            st.setObject(index, value, Types.SQLXML);
+        }
+    }
+
+    @Override
+    public Object deepCopy(Object value) throws HibernateException {
+        return value;
+    }
+
+    @Override
+    public boolean isMutable() {
+        return false;
+    }
+
+    @Override
+    public Serializable disassemble(Object value) throws HibernateException {
+        return (Serializable) value;
+    }
+
+    @Override
+    public Object assemble(Serializable cached, Object owner) throws HibernateException {
+        return cached;
+    }
+
+    @Override
+    public Object replace(Object original, Object target, Object owner) throws HibernateException {
+        return original;
+    }
+}
@@ -1,5 +1,6 @@
 package com.github.cimsbioko.server.hibernate;
 
+import com.github.cimsbioko.server.util.SerializedDocument;
 import org.hibernate.HibernateException;
 import org.hibernate.engine.spi.SharedSessionContractImplementor;
 import org.hibernate.usertype.UserType;
@@ -58,6 +59,10 @@ public class XMLType implements UserType {
 
     @Override
     public Object deepCopy(Object value) throws HibernateException {
+        if (value instanceof SerializedDocument) {
+            // not modified after creation, so safe to share
+            return value;
+        }
         try {
             return docFromObj(value);
         } catch (SQLException | JDOMException | IOException e) {
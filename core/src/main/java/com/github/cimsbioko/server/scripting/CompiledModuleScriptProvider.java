@@ -0,0 +1,59 @@
+package com.github.cimsbioko.server.scripting;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.commonjs.module.ModuleScript;
+import org.mozilla.javascript.commonjs.module.ModuleScriptProvider;
+import org.mozilla.javascript.commonjs.module.provider.ModuleSource;
+import org.mozilla.javascript.commonjs.module.provider.ModuleSourceProvider;
+
+import java.io.Reader;
+import java.net.URI;
+
+/**
+ * Provides modules compiled once per campaign archive. Compiled scripts don't depend on the scope they run in, so
+ * configs loaded from archives with the same content, like an uploaded campaign that is pre-loaded and then installed,
+ * share them. Sources are still resolved through the config's own source provider, so modules keep their own uris.
+ */
+class CompiledModuleScriptProvider implements ModuleScriptProvider {
+
+    private static final String ENTRY_SEPARATOR = "!/";
+
+    private static final Cache<String, Script> compiledScripts = Caffeine.newBuilder().softValues().build();
+
+    private final ModuleSourceProvider sources;
+    private final String archiveHash;
+
+    CompiledModuleScriptProvider(ModuleSourceProvider sources, String archiveHash) {
+        this.sources = sources;
+        this.archiveHash = archiveHash;
+    }
+
+    @Override
+    public ModuleScript getModuleScript(Context cx, String moduleId, URI moduleUri, URI baseUri, Scriptable paths)
+            throws Exception {
+        ModuleSource source = moduleUri == null ? sources.loadSource(moduleId, paths, null)
+                : sources.loadSource(moduleUri, baseUri, null);
+        if (source == null) {
+            return null;
+        }
+        try (Reader reader = source.getReader()) {
+            String key = archiveHash + ENTRY_SEPARATOR + entryName(source.getUri());
+            Script script = compiledScripts.getIfPresent(key);
+            if (script == null) {
+                script = cx.compileReader(reader, source.getUri().toString(), 1, source.getSecurityDomain());
+                compiledScripts.put(key, script);
+            }
+            return new ModuleScript(script, source.getUri(), source.getBase());
+        }
+    }
+
+    private static String entryName(URI uri) {
+        String location = uri.toString();
+        int separator = location.lastIndexOf(ENTRY_SEPARATOR);
+        return separator < 0 ? location : location.substring(separator + ENTRY_SEPARATOR.length());
+    }
+}
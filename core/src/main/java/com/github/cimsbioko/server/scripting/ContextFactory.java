@@ -6,23 +6,61 @@ import static org.mozilla.javascript.Context.VERSION_ES6;
 
 /**
  * Custom context factory for consistent creation of contexts when entering js, including through the vm bridge.
+ * Contexts are bound to the thread entering js. When scripts run on several threads at once, objects are created
+ * thread-safe, since they share the scopes their campaign's scripts were loaded into. Scripts are interpreted by
+ * default, or compiled to bytecode in compiled mode.
  */
 public class ContextFactory extends org.mozilla.javascript.ContextFactory {
 
-    ContextFactory() {
+    public static final String INTERPRETED_MODE = "interpreted";
+    public static final String COMPILED_MODE = "compiled";
+
+    private static final int INTERPRETED = -1;
+    private static final int FULLY_OPTIMIZED = 9;
+
+    private final boolean threadSafeObjects;
+    private final int optimizationLevel;
+
+    ContextFactory(boolean threadSafeObjects, String mode) {
         super();
+        this.threadSafeObjects = threadSafeObjects;
+        switch (mode) {
+            case INTERPRETED_MODE:
+                optimizationLevel = INTERPRETED;
+                break;
+            case COMPILED_MODE:
+                optimizationLevel = FULLY_OPTIMIZED;
+                break;
+            default:
+                throw new IllegalArgumentException("unknown script mode: " + mode);
+        }
+    }
+
+    /**
+     * Whether scripts entered through the context are compiled to bytecode, rather than interpreted.
+     */
+    public static boolean isCompiled(Context ctx) {
+        return ctx.getOptimizationLevel() > INTERPRETED;
+    }
+
+    @Override
+    protected boolean hasFeature(Context cx, int featureIndex) {
+        if (featureIndex == Context.FEATURE_THREAD_SAFE_OBJECTS) {
+            return threadSafeObjects;
+        }
+        return super.hasFeature(cx, featureIndex);
     }
 
     @Override
     protected Context makeContext() {
         Context ctx = super.makeContext();
-        ctx.setOptimizationLevel(-1);
+        ctx.setOptimizationLevel(optimizationLevel);
         ctx.setLanguageVersion(VERSION_ES6);
         return ctx;
     }
 
-    public static void register() {
-        ContextFactory ctxFactory = new ContextFactory();
+    public static void register(boolean threadSafeObjects, String mode) {
+        ContextFactory ctxFactory = new ContextFactory(threadSafeObjects, mode);
         if (!hasExplicitGlobal()) {
             initGlobal(ctxFactory);
         } else {
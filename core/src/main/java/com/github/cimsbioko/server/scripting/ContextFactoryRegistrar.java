@@ -4,6 +4,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.context.event.ApplicationPreparedEvent;
 import org.springframework.context.ApplicationListener;
+import org.springframework.core.env.Environment;
 
 /**
  * Responsible for registering a custom rhino context factory global on application startup.
@@ -14,7 +15,10 @@ public class ContextFactoryRegistrar implements ApplicationListener<ApplicationP
 
     @Override
     public void onApplicationEvent(ApplicationPreparedEvent event) {
-        log.info("registering custom js context factory");
-        ContextFactory.register();
+        Environment env = event.getApplicationContext().getEnvironment();
+        int workers = env.getProperty("app.formproc.workers", Integer.class, 1);
+        String mode = env.getProperty("app.scripting.mode", ContextFactory.INTERPRETED_MODE);
+        log.info("registering custom js context factory, {} mode", mode);
+        ContextFactory.register(workers > 1, mode);
     }
 }
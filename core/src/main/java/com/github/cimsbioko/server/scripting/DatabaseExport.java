@@ -1,10 +1,41 @@
 package com.github.cimsbioko.server.scripting;
 
+import java.util.List;
 import java.util.Map;
 
 public interface DatabaseExport {
     String[] initScripts();
     Map<String, String> exportQueries();
+
+    /**
+     * Scripts run on the exported database once tables are exported. They are also run after incremental exports,
+     * which update the previous export, so they need to be safe to run on a database they were already run on.
+     */
     String[] postScripts();
     String exportSchedule();
-}
\ No newline at end of file
+
+    /**
+     * Optional, enables incremental exports. Yields the column identifying rows in each exported table, keyed by table.
+     */
+    Map<String, String> exportKeys();
+
+    /**
+     * Optional, enables incremental exports. Yields a query for each exported table, keyed by table, that lists the
+     * keys of rows changed or deleted since the previous export. The queries take the change position of the previous
+     * export as their only parameter, and typically select the row_uuid of sync_change rows with a txid at or after it.
+     */
+    Map<String, String> changeQueries();
+
+    /**
+     * Optional. Yields the tables whose changes each table's change query accounts for, keyed by table. Tables are
+     * only updated incrementally when every table their export query reads is tracked and accounted for. When absent,
+     * only tables exported from a single tracked table are updated incrementally.
+     */
+    Map<String, List<String>> changeSources();
+
+    /**
+     * Optional. Yields a query returning a single value that changes whenever the exported data changes, used to skip
+     * scheduled exports when nothing changed. When absent, modification counts for the whole schema are used.
+     */
+    String fingerprintQuery();
+}
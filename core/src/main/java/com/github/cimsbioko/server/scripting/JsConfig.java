@@ -5,6 +5,7 @@ import com.github.cimsbioko.server.domain.Individual;
 import com.github.cimsbioko.server.domain.Location;
 import com.github.cimsbioko.server.domain.LocationHierarchy;
 import com.github.cimsbioko.server.exception.ConstraintViolations;
+import com.github.cimsbioko.server.service.EntityResolver;
 import com.github.cimsbioko.server.service.GeometryService;
 import com.github.cimsbioko.server.service.ScriptableFormMetadataService;
 import com.github.cimsbioko.server.service.StoredProcService;
@@ -12,6 +13,7 @@ import com.github.cimsbioko.server.service.SubmissionExportService;
 import com.github.cimsbioko.server.util.IdUtil;
 import org.json.JSONObject;
 import org.mozilla.javascript.*;
+import org.mozilla.javascript.commonjs.module.ModuleScriptProvider;
 import org.mozilla.javascript.commonjs.module.Require;
 import org.mozilla.javascript.commonjs.module.RequireBuilder;
 import org.mozilla.javascript.commonjs.module.provider.SoftCachingModuleScriptProvider;
@@ -19,11 +21,9 @@ import org.mozilla.javascript.commonjs.module.provider.UrlModuleSourceProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationContext;
+import org.springframework.util.DigestUtils;
 
-import java.io.Closeable;
-import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
+import java.io.*;
 import java.net.*;
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -39,6 +39,9 @@ public class JsConfig implements Closeable {
 
     private static final String INIT_MODULE = "init";
 
+    private static volatile ScriptableObject sharedStandardObjects;
+
+    private final File file;
     private final URLClassLoader loader;
 
     private ApplicationContext ctx;
@@ -49,6 +52,7 @@ public class JsConfig implements Closeable {
         if (!file.canRead()) {
             throw new IllegalArgumentException("config file doesn't exist or is unreadable");
         }
+        this.file = file;
         String base = "jar:file:" + file.getPath() + "!/";
         URL[] urls = {new URL(base + "server/"), new URL(base + "shared/")};
         this.loader = URLClassLoader.newInstance(urls);
@@ -80,8 +84,31 @@ public class JsConfig implements Closeable {
         return formProcessors;
     }
 
+    /**
+     * Builds the campaign's top-level scope. When compiled, campaigns share a single sealed set of standard objects
+     * through their scope's prototype, rather than each initializing their own. Scripts that modify standard objects
+     * need interpreted mode.
+     */
     private static ScriptableObject buildScope(Context ctx) {
-        return ctx.initSafeStandardObjects();
+        if (!ContextFactory.isCompiled(ctx)) {
+            return ctx.initSafeStandardObjects();
+        }
+        ScriptableObject shared = getSharedStandardObjects(ctx);
+        ScriptableObject scope = (ScriptableObject) ctx.newObject(shared);
+        scope.setPrototype(shared);
+        scope.setParentScope(null);
+        return scope;
+    }
+
+    private static ScriptableObject getSharedStandardObjects(Context ctx) {
+        if (sharedStandardObjects == null) {
+            synchronized (JsConfig.class) {
+                if (sharedStandardObjects == null) {
+                    sharedStandardObjects = ctx.initSafeStandardObjects(null, true);
+                }
+            }
+        }
+        return sharedStandardObjects;
     }
 
     private void installConstants(ScriptableObject scope) {
@@ -93,6 +120,7 @@ public class JsConfig implements Closeable {
         putConst(scope, "locationHierarchyLevelRepo", ctx.getBean(LocationHierarchyLevelRepository.class));
         putConst(scope, "locationRepo", ctx.getBean(LocationRepository.class));
         putConst(scope, "fieldWorkerRepo", ctx.getBean(FieldWorkerRepository.class));
+        putConst(scope, "entityResolver", ctx.getBean(EntityResolver.class));
         putConst(scope, "individualRepo", ctx.getBean(IndividualRepository.class));
         putConst(scope, "geometryService", ctx.getBean(GeometryService.class));
         putConst(scope, "formMetadataService", ctx.getBean(ScriptableFormMetadataService.class));
@@ -114,7 +142,7 @@ public class JsConfig implements Closeable {
     }
 
     private static void installInterfaces(ScriptableObject scope) {
-        putClasses(scope, DatabaseExport.class, FormProcessor.class, SubmissionRecord.class);
+        putClasses(scope, DatabaseExport.class, FormProcessor.class, OrderedFormProcessor.class, SubmissionRecord.class);
     }
 
     private static void putClasses(ScriptableObject scope, Class<?>... classes) {
@@ -130,14 +158,30 @@ public class JsConfig implements Closeable {
     private Require enableJsModules(Context ctx, ScriptableObject scope) throws URISyntaxException {
         RequireBuilder rb = new RequireBuilder()
                 .setSandboxed(true)
-                .setModuleScriptProvider(
-                        new SoftCachingModuleScriptProvider(
-                                new NonCachingModuleSourceProvider(getJsModulePath())));
+                .setModuleScriptProvider(getModuleScriptProvider(ctx));
         Require require = rb.createRequire(ctx, scope);
         require.install(scope);
         return require;
     }
 
+    private ModuleScriptProvider getModuleScriptProvider(Context ctx) throws URISyntaxException {
+        NonCachingModuleSourceProvider sources = new NonCachingModuleSourceProvider(getJsModulePath());
+        String archiveHash = ContextFactory.isCompiled(ctx) ? getArchiveHash() : null;
+        if (archiveHash == null) {
+            return new SoftCachingModuleScriptProvider(sources);
+        }
+        return new CompiledModuleScriptProvider(sources, archiveHash);
+    }
+
+    private String getArchiveHash() {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            return DigestUtils.md5DigestAsHex(in);
+        } catch (IOException e) {
+            log.warn("failed to hash campaign archive, compiled modules won't be shared", e);
+            return null;
+        }
+    }
+
     private List<URI> getJsModulePath() throws URISyntaxException {
         if (loader != null) {
             List<URI> uris = new ArrayList<>();
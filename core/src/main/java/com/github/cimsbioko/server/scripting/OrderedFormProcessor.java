@@ -0,0 +1,18 @@
+package com.github.cimsbioko.server.scripting;
+
+import com.github.cimsbioko.server.domain.FormSubmission;
+
+/**
+ * A form processor that allows processing submissions in parallel. It is separate from {@link FormProcessor}, so that
+ * processors can still be created from a single function.
+ */
+public interface OrderedFormProcessor extends FormProcessor {
+
+    /**
+     * Yields the key ordering the submission within its campaign, such as the hierarchy it modifies: submissions with
+     * the same key are processed in the order received, those with different keys may be processed concurrently.
+     * Processors whose submissions depend on each other must yield the same key for them. When null, the configured
+     * default ordering applies.
+     */
+    String orderingKey(FormSubmission submission);
+}
@@ -0,0 +1,46 @@
+package com.github.cimsbioko.server.service;
+
+import com.github.cimsbioko.server.domain.FieldWorker;
+import com.github.cimsbioko.server.domain.Individual;
+import com.github.cimsbioko.server.domain.Location;
+import com.github.cimsbioko.server.domain.LocationHierarchy;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Resolves entities by their external ids for form processors. Within a transaction, resolved entities are cached for
+ * as long as they remain in the persistence context, so ids a submission resolves repeatedly, or prefetches in bulk,
+ * are only queried once. Entities saved through the resolver are reflected in later lookups, including those created or
+ * voided; changes saved through the repositories directly may not be. Lookups are also reused across submissions when
+ * they are processed in chunks, with app.formproc.chunkSize above one, since they then share a transaction.
+ */
+public interface EntityResolver {
+
+    List<Location> findLocations(String extId);
+
+    List<Individual> findIndividuals(String extId);
+
+    LocationHierarchy findHierarchy(String extId);
+
+    FieldWorker findFieldWorker(String extId);
+
+    /**
+     * Resolves many locations with a single query, so they can be found without querying later in the transaction.
+     */
+    void prefetchLocations(Collection<?> extIds);
+
+    void prefetchIndividuals(Collection<?> extIds);
+
+    void prefetchHierarchies(Collection<?> extIds);
+
+    void prefetchFieldWorkers(Collection<?> extIds);
+
+    Location save(Location location);
+
+    Individual save(Individual individual);
+
+    LocationHierarchy save(LocationHierarchy hierarchy);
+
+    FieldWorker save(FieldWorker fieldWorker);
+}
@@ -2,6 +2,13 @@ package com.github.cimsbioko.server.service;
 
 import com.github.cimsbioko.server.domain.FormSubmission;
 
+import java.util.Map;
+
 public interface ErrorService {
     void logError(FormSubmission submission, String message);
+
+    /**
+     * Logs errors for several submissions within the current transaction, inserted as a single batch.
+     */
+    void logErrors(Map<FormSubmission, String> messages);
 }
@@ -3,8 +3,23 @@ package com.github.cimsbioko.server.service;
 import com.github.cimsbioko.server.domain.FormSubmission;
 
 import java.util.List;
+import java.util.Map;
 
 public interface FormProcessorService {
     List<String> getBindings(String campaignUuid);
     void process(FormSubmission submission);
+
+    /**
+     * Processes submissions within the current transaction, each within its own savepoint, so that a submission that
+     * fails only rolls back its own changes. A failure that leaves the transaction only able to roll back, like a
+     * failed database statement, is rethrown, since the remaining submissions can't be processed in it.
+     *
+     * @return the failures of submissions rolled back to their savepoints, keyed by submission in processing order
+     */
+    Map<FormSubmission, RuntimeException> processAll(List<FormSubmission> submissions);
+
+    /**
+     * Returns the key ordering the submission: submissions with the same key must be processed in order.
+     */
+    String getOrderingKey(FormSubmission submission);
 }
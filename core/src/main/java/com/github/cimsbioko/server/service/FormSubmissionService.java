@@ -3,13 +3,31 @@ package com.github.cimsbioko.server.service;
 import com.github.cimsbioko.server.domain.FormSubmission;
 import com.github.cimsbioko.server.exception.ExistingSubmissionException;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.stream.Stream;
 
 public interface FormSubmissionService {
 
     FormSubmission recordSubmission(FormSubmission submission, String deprecatedId) throws ExistingSubmissionException;
 
+    /**
+     * Records a batch of submissions in a single transaction, skipping those that are already recorded.
+     *
+     * @param deprecatedIds the ids of the submissions deprecated by the new ones, keyed by the new instance ids
+     * @return the submissions that were recorded
+     */
+    List<FormSubmission> recordSubmissions(List<FormSubmission> submissions, Map<String, String> deprecatedIds);
+
     Stream<FormSubmission> getUnprocessed(int batchSize);
 
     void markProcessed(FormSubmission submission, Boolean processedOk);
+
+    /**
+     * Marks submissions processed within the current transaction, with a statement per outcome.
+     *
+     * @param failed the submissions that failed processing, a subset of submissions
+     */
+    void markProcessed(Collection<FormSubmission> submissions, Collection<FormSubmission> failed);
 }
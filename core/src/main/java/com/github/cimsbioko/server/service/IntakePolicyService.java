@@ -0,0 +1,26 @@
+package com.github.cimsbioko.server.service;
+
+import com.github.cimsbioko.server.domain.FormId;
+
+import java.util.Optional;
+
+/**
+ * Answers the questions asked about every received submission, before it is recorded. Answers are cached, so that
+ * receiving a submission doesn't require reading forms and campaigns.
+ */
+public interface IntakePolicyService {
+
+    enum FormIntake {
+        UNKNOWN, DISABLED, ENABLED
+    }
+
+    /**
+     * Returns whether the form exists and accepts submissions.
+     */
+    FormIntake getFormIntake(FormId id);
+
+    /**
+     * Returns the uuid of the default campaign, used for submissions that don't specify one.
+     */
+    Optional<String> getDefaultCampaign();
+}
@@ -0,0 +1,32 @@
+package com.github.cimsbioko.server.service;
+
+import com.github.cimsbioko.server.domain.Form;
+import com.github.cimsbioko.server.domain.FormId;
+
+import java.sql.Timestamp;
+
+/**
+ * Tracks when forms last received a submission.
+ */
+public interface LastSubmissionService {
+
+    /**
+     * Records that a form received a submission at the given time.
+     */
+    void submitted(FormId form, Timestamp time);
+
+    /**
+     * Returns the time the form last received a submission, including submissions not yet written to the form.
+     */
+    Timestamp getLastSubmission(Form form);
+
+    /**
+     * Clears the time the form last received a submission, for when its submissions are removed.
+     */
+    void reset(FormId form);
+
+    /**
+     * Writes the recorded times to their forms.
+     */
+    void flush();
+}
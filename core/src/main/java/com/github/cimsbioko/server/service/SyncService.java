@@ -5,7 +5,7 @@ import java.util.Optional;
 
 public interface SyncService {
     enum Status {
-        SCHEDULED, RUNNING, PAUSED, NO_SYNC
+        SCHEDULED, QUEUED, RUNNING, COALESCED, PAUSED, NO_SYNC
     }
     interface Task {
         int getPercentComplete();
@@ -16,7 +16,9 @@ public interface SyncService {
     Status getStatus(String campaign);
     File getOutput(String campaign);
     void requestExport(String campaign);
+    void cancelExport(String campaign);
     Optional<Task> getTask(String campaign);
+    Optional<File> getPatch(String campaign, String fromHash);
     void pauseSync(String campaign);
     void resumeSync(String campaign);
 }
@@ -0,0 +1,238 @@
+package com.github.cimsbioko.server.service.impl;
+
+import com.github.cimsbioko.server.dao.FieldWorkerRepository;
+import com.github.cimsbioko.server.dao.IndividualRepository;
+import com.github.cimsbioko.server.dao.LocationHierarchyRepository;
+import com.github.cimsbioko.server.dao.LocationRepository;
+import com.github.cimsbioko.server.domain.FieldWorker;
+import com.github.cimsbioko.server.domain.Individual;
+import com.github.cimsbioko.server.domain.Location;
+import com.github.cimsbioko.server.domain.LocationHierarchy;
+import com.github.cimsbioko.server.service.EntityResolver;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+
+/**
+ * Caches resolved entities in a resource bound to the current transaction, which is discarded when the transaction
+ * completes. Cached entities are only reused while they are still managed, so clearing the persistence context, as is
+ * done when a submission is rolled back to its savepoint, causes them to be queried again. Entities voided or given
+ * another external id since they were cached are filtered out on lookup, and saved entities are added to the entries
+ * for their external id, so the cache reflects changes made through it without being invalidated. Lookups that found
+ * nothing are not cached, so entities created later in the transaction are found however they were created.
+ */
+public class EntityResolverImpl implements EntityResolver {
+
+    private static final int PREFETCH_SIZE = 500;
+
+    private final EntityManager em;
+    private final Lookup<Location> locations;
+    private final Lookup<Individual> individuals;
+    private final Lookup<LocationHierarchy> hierarchies;
+    private final Lookup<FieldWorker> fieldWorkers;
+
+    public EntityResolverImpl(EntityManager em, LocationRepository locationRepo, IndividualRepository individualRepo,
+                              LocationHierarchyRepository hierarchyRepo, FieldWorkerRepository fieldWorkerRepo) {
+        this.em = em;
+        locations = new Lookup<>(Location::getExtId, l -> l.getDeleted() == null,
+                locationRepo::findByExtIdAndDeletedIsNull, locationRepo::findByExtIdInAndDeletedIsNull,
+                locationRepo::save);
+        individuals = new Lookup<>(Individual::getExtId, i -> i.getDeleted() == null,
+                individualRepo::findByExtIdAndDeletedIsNull, individualRepo::findByExtIdInAndDeletedIsNull,
+                individualRepo::save);
+        hierarchies = new Lookup<>(LocationHierarchy::getExtId, h -> true,
+                extId -> asList(hierarchyRepo.findByExtId(extId)), hierarchyRepo::findByExtIdIn, hierarchyRepo::save);
+        fieldWorkers = new Lookup<>(FieldWorker::getExtId, fw -> true,
+                extId -> asList(fieldWorkerRepo.findByExtId(extId)), fieldWorkerRepo::findByExtIdIn,
+                fieldWorkerRepo::save);
+    }
+
+    private static <T> List<T> asList(T entity) {
+        return entity == null ? emptyList() : singletonList(entity);
+    }
+
+    @Override
+    public List<Location> findLocations(String extId) {
+        return locations.find(extId);
+    }
+
+    @Override
+    public List<Individual> findIndividuals(String extId) {
+        return individuals.find(extId);
+    }
+
+    @Override
+    public LocationHierarchy findHierarchy(String extId) {
+        return hierarchies.find(extId).stream().findFirst().orElse(null);
+    }
+
+    @Override
+    public FieldWorker findFieldWorker(String extId) {
+        return fieldWorkers.find(extId).stream().findFirst().orElse(null);
+    }
+
+    @Override
+    public void prefetchLocations(Collection<?> extIds) {
+        locations.prefetch(extIds);
+    }
+
+    @Override
+    public void prefetchIndividuals(Collection<?> extIds) {
+        individuals.prefetch(extIds);
+    }
+
+    @Override
+    public void prefetchHierarchies(Collection<?> extIds) {
+        hierarchies.prefetch(extIds);
+    }
+
+    @Override
+    public void prefetchFieldWorkers(Collection<?> extIds) {
+        fieldWorkers.prefetch(extIds);
+    }
+
+    @Override
+    public Location save(Location location) {
+        return locations.save(location);
+    }
+
+    @Override
+    public Individual save(Individual individual) {
+        return individuals.save(individual);
+    }
+
+    @Override
+    public LocationHierarchy save(LocationHierarchy hierarchy) {
+        return hierarchies.save(hierarchy);
+    }
+
+    @Override
+    public FieldWorker save(FieldWorker fieldWorker) {
+        return fieldWorkers.save(fieldWorker);
+    }
+
+    /**
+     * Returns the transaction's cache, binding one to the transaction if necessary, or null outside of a transaction.
+     * The cache is unbound while the transaction is suspended, so that transactions started within it have their own.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<Lookup<?>, Map<String, List<?>>> getCaches() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        Map<Lookup<?>, Map<String, List<?>>> caches =
+                (Map<Lookup<?>, Map<String, List<?>>>) TransactionSynchronizationManager.getResource(this);
+        if (caches == null) {
+            Map<Lookup<?>, Map<String, List<?>>> bound = new HashMap<>();
+            TransactionSynchronizationManager.bindResource(this, bound);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void suspend() {
+                    TransactionSynchronizationManager.unbindResource(EntityResolverImpl.this);
+                }
+
+                @Override
+                public void resume() {
+                    TransactionSynchronizationManager.bindResource(EntityResolverImpl.this, bound);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(EntityResolverImpl.this);
+                }
+            });
+            caches = bound;
+        }
+        return caches;
+    }
+
+    private class Lookup<T> {
+
+        private final Function<T, String> extId;
+        private final Predicate<T> active;
+        private final Function<String, List<T>> query;
+        private final Function<Collection<String>, List<T>> bulkQuery;
+        private final Function<T, T> save;
+
+        Lookup(Function<T, String> extId, Predicate<T> active, Function<String, List<T>> query,
+               Function<Collection<String>, List<T>> bulkQuery, Function<T, T> save) {
+            this.extId = extId;
+            this.active = active;
+            this.query = query;
+            this.bulkQuery = bulkQuery;
+            this.save = save;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Map<String, List<T>> getCache() {
+            Map<Lookup<?>, Map<String, List<?>>> caches = getCaches();
+            return caches == null ? null : (Map) caches.computeIfAbsent(this, lookup -> new HashMap<>());
+        }
+
+        /**
+         * Whether cached entities can be used in place of querying. Lookups that found nothing aren't reused, since
+         * the entity may be created later in the transaction by other means than the resolver.
+         */
+        private boolean isValid(List<T> entities) {
+            return entities != null && !entities.isEmpty() && entities.stream().allMatch(em::contains);
+        }
+
+        List<T> find(String id) {
+            Map<String, List<T>> cache = getCache();
+            if (cache == null) {
+                return query.apply(id);
+            }
+            List<T> cached = cache.get(id);
+            if (!isValid(cached)) {
+                cached = new ArrayList<>(query.apply(id));
+                if (cached.isEmpty()) {
+                    cache.remove(id);
+                } else {
+                    cache.put(id, cached);
+                }
+            }
+            return cached.stream()
+                    .filter(entity -> id.equals(extId.apply(entity)) && active.test(entity))
+                    .collect(Collectors.toList());
+        }
+
+        void prefetch(Collection<?> ids) {
+            Map<String, List<T>> cache = getCache();
+            if (cache == null) {
+                return;
+            }
+            List<String> missing = ids.stream()
+                    .filter(Objects::nonNull)
+                    .map(Object::toString)
+                    .distinct()
+                    .filter(id -> !isValid(cache.get(id)))
+                    .collect(Collectors.toList());
+            for (int start = 0; start < missing.size(); start += PREFETCH_SIZE) {
+                List<String> batch = missing.subList(start, Math.min(start + PREFETCH_SIZE, missing.size()));
+                batch.forEach(cache::remove);
+                bulkQuery.apply(batch).forEach(entity ->
+                        cache.computeIfAbsent(extId.apply(entity), id -> new ArrayList<>()).add(entity));
+            }
+        }
+
+        T save(T entity) {
+            T saved = save.apply(entity);
+            Map<String, List<T>> cache = getCache();
+            if (cache != null) {
+                List<T> cached = cache.get(extId.apply(saved));
+                if (cached != null && !cached.contains(saved)) {
+                    cached.add(saved);
+                }
+            }
+            return saved;
+        }
+    }
+}
@@ -4,15 +4,21 @@ import com.github.cimsbioko.server.dao.ErrorRepository;
 import com.github.cimsbioko.server.domain.Error;
 import com.github.cimsbioko.server.domain.FormSubmission;
 import com.github.cimsbioko.server.service.ErrorService;
+import org.hibernate.Session;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.EntityManager;
+import java.util.Map;
+
 public class ErrorServiceImpl implements ErrorService {
 
     private ErrorRepository errorDao;
+    private EntityManager em;
 
-    public ErrorServiceImpl(ErrorRepository repo) {
+    public ErrorServiceImpl(ErrorRepository repo, EntityManager em) {
         this.errorDao = repo;
+        this.em = em;
     }
 
     @Override
@@ -23,4 +29,19 @@ public class ErrorServiceImpl implements ErrorService {
         e.setMessage(message);
         errorDao.save(e);
     }
+
+    @Override
+    @Transactional
+    public void logErrors(Map<FormSubmission, String> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        em.unwrap(Session.class).setJdbcBatchSize(messages.size());
+        messages.forEach((submission, message) -> {
+            Error e = new Error();
+            e.setSubmission(submission);
+            e.setMessage(message);
+            em.persist(e);
+        });
+    }
 }
@@ -0,0 +1,101 @@
+package com.github.cimsbioko.server.service.impl;
+
+import com.github.cimsbioko.server.dao.FormSubmissionRepository;
+import com.github.cimsbioko.server.domain.FormSubmission;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes form processing metrics when declared as a bean: the time spent in each binding's processor
+ * (formproc.processor), the submissions processed by outcome (formproc.submissions), the time from submission to
+ * processing (formproc.latency) and the submissions awaiting processing (formproc.backlog). The backlog is kept as a
+ * running estimate, adjusted as submissions are recorded and processed, and is only counted in the database
+ * periodically, to correct for submissions changed otherwise, such as when they are reprocessed or deleted. Metrics
+ * recorded before the metrics are bound to a registry are dropped.
+ */
+public class FormProcessingMetrics implements MeterBinder {
+
+    private static final String NONE = "none";
+
+    private final FormSubmissionRepository submissionRepo;
+    private final AtomicLong backlog = new AtomicLong();
+
+    private volatile boolean backlogCounted;
+    private volatile MeterRegistry registry;
+
+    public FormProcessingMetrics(FormSubmissionRepository submissionRepo) {
+        this.submissionRepo = submissionRepo;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("formproc.backlog", this, FormProcessingMetrics::getBacklog)
+                .description("The estimated number of submissions awaiting processing")
+                .register(registry);
+        this.registry = registry;
+    }
+
+    double getBacklog() {
+        return backlogCounted ? Math.max(0, backlog.get()) : Double.NaN;
+    }
+
+    @Scheduled(fixedDelayString = "${app.formproc.metrics.backlogCount:PT10M}")
+    public void countBacklog() {
+        backlog.set(submissionRepo.countByProcessedIsNull());
+        backlogCounted = true;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSubmissionsRecorded(SubmissionsRecordedEvent event) {
+        backlog.addAndGet(event.getCount());
+    }
+
+    /**
+     * Records the time spent running the processor for a submission, whether or not it succeeded.
+     */
+    public void processorTime(FormSubmission submission, long nanos) {
+        MeterRegistry registry = this.registry;
+        if (registry != null) {
+            registry.timer("formproc.processor", tags(submission)).record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Records a submission's outcome once it is marked processed.
+     */
+    public void processed(FormSubmission submission, boolean processedOk) {
+        backlog.decrementAndGet();
+        MeterRegistry registry = this.registry;
+        if (registry != null) {
+            registry.counter("formproc.submissions", tags(submission).and("outcome", processedOk ? "success" : "failure"))
+                    .increment();
+            if (submission.getSubmitted() != null) {
+                Timer.builder("formproc.latency")
+                        .description("The time from receiving submissions to processing them")
+                        .tags("campaign", orNone(submission.getCampaignId()))
+                        .publishPercentileHistogram()
+                        .minimumExpectedValue(Duration.ofSeconds(1))
+                        .maximumExpectedValue(Duration.ofDays(7))
+                        .register(registry)
+                        .record(System.currentTimeMillis() - submission.getSubmitted().getTime(), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private static Tags tags(FormSubmission submission) {
+        return Tags.of("campaign", orNone(submission.getCampaignId()), "binding", orNone(submission.getFormBinding()));
+    }
+
+    private static String orNone(String value) {
+        return value == null ? NONE : value;
+    }
+}
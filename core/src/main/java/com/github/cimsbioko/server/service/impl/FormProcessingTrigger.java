@@ -0,0 +1,55 @@
+package com.github.cimsbioko.server.service.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Starts form processing shortly after submissions are recorded, rather than on the next scheduled run. Submissions
+ * recorded within the debounce window of the first are processed by the same run, so bursts of uploads don't start a
+ * run each. Scheduled runs continue as a fallback, for submissions marked for reprocessing or recorded elsewhere.
+ */
+public class FormProcessingTrigger {
+
+    private static final Logger log = LoggerFactory.getLogger(FormProcessingTrigger.class);
+
+    private final ScheduledFormProcessing processing;
+    private final TaskScheduler scheduler;
+    private final Duration debounce;
+    private final boolean enabled;
+    private final AtomicBoolean pending = new AtomicBoolean();
+
+    public FormProcessingTrigger(ScheduledFormProcessing processing, TaskScheduler scheduler, Duration debounce,
+                                 boolean enabled) {
+        this.processing = processing;
+        this.scheduler = scheduler;
+        this.debounce = debounce;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Handled once the recording transaction commits, so the triggered run finds the new submissions.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSubmissionsRecorded(SubmissionsRecordedEvent event) {
+        if (enabled && pending.compareAndSet(false, true)) {
+            log.debug("{} submissions recorded, processing in {}", event.getCount(), debounce);
+            scheduler.schedule(this::trigger, Date.from(Instant.now().plus(debounce)));
+        }
+    }
+
+    /**
+     * Requests a run, which is queued behind a running one, or dropped if one is already queued. Either way, the next
+     * run to start finds all submissions recorded before this point.
+     */
+    private void trigger() {
+        pending.set(false);
+        processing.processForms();
+    }
+}
@@ -5,26 +5,67 @@ import com.github.cimsbioko.server.domain.Campaign;
 import com.github.cimsbioko.server.domain.FormSubmission;
 import com.github.cimsbioko.server.scripting.FormProcessor;
 import com.github.cimsbioko.server.scripting.JsConfig;
+import com.github.cimsbioko.server.scripting.OrderedFormProcessor;
 import com.github.cimsbioko.server.service.FormProcessorService;
 import com.github.cimsbioko.server.service.impl.campaign.CampaignLoadedEvent;
 import com.github.cimsbioko.server.service.impl.campaign.CampaignUnloadedEvent;
+import org.hibernate.Session;
+import org.hibernate.search.jpa.FullTextEntityManager;
+import org.hibernate.search.jpa.Search;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.event.EventListener;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
+import javax.persistence.EntityManager;
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.Savepoint;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class FormProcessorServiceImpl implements FormProcessorService {
 
     private static final Logger log = LoggerFactory.getLogger(FormProcessorServiceImpl.class);
 
-    private final Map<String, Map<String, FormProcessor>> campaignProcessors = new HashMap<>();
+    static final String ORDER_BY_CAMPAIGN = "campaign";
+    static final String ORDER_BY_BINDING = "binding";
+    static final String ORDER_BY_SUBMISSION = "submission";
+
+    private final Map<String, Map<String, FormProcessor>> campaignProcessors = new ConcurrentHashMap<>();
     private final CampaignRepository campaignRepo;
+    private final EntityManager em;
+    private final FormProcessingMetrics metrics;
+    private final IndexedChangeTracker changeTracker;
+
+    private String ordering = ORDER_BY_CAMPAIGN;
 
-    public FormProcessorServiceImpl(CampaignRepository campaignRepo) {
+    public FormProcessorServiceImpl(CampaignRepository campaignRepo, EntityManager em, FormProcessingMetrics metrics,
+                                    IndexedChangeTracker changeTracker) {
         this.campaignRepo = campaignRepo;
+        this.em = em;
+        this.metrics = metrics;
+        this.changeTracker = changeTracker;
+    }
+
+    public String getOrdering() {
+        return ordering;
+    }
+
+    /**
+     * Sets the default ordering of submissions, used when their processor yields no ordering key: 'campaign' processes
+     * each campaign's submissions in order, 'binding' each campaign's submissions of the same form binding, and
+     * 'submission' imposes no order.
+     */
+    @Value("${app.formproc.ordering:campaign}")
+    public void setOrdering(String ordering) {
+        if (!Arrays.asList(ORDER_BY_CAMPAIGN, ORDER_BY_BINDING, ORDER_BY_SUBMISSION).contains(ordering)) {
+            throw new IllegalArgumentException("unknown form processing ordering: " + ordering);
+        }
+        this.ordering = ordering;
     }
 
     @EventListener
@@ -57,13 +98,104 @@ public class FormProcessorServiceImpl implements FormProcessorService {
     @Override
     @Transactional(propagation = Propagation.REQUIRES_NEW, rollbackFor = {Exception.class})
     public void process(FormSubmission submission) {
-        Optional.ofNullable(submission.getCampaignId())
+        runProcessor(submission);
+    }
+
+    /**
+     * Savepoints are managed on the jdbc connection, since spring's jpa transactions don't support them. Changes are
+     * flushed before releasing a savepoint, so each submission's statements run within its savepoint, and the
+     * persistence context is cleared when a submission is rolled back, so that changes rolled back in the database
+     * aren't flushed later. Otherwise, entities stay managed across the chunk, so they can be reused by later
+     * submissions, such as through the {@link com.github.cimsbioko.server.service.EntityResolver}. Search index updates
+     * queued by a rolled back submission's flushes aren't discarded with it, so the entities it changed are indexed
+     * again from the database, or purged from the index if they no longer exist.
+     */
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Map<FormSubmission, RuntimeException> processAll(List<FormSubmission> submissions) {
+        Session session = em.unwrap(Session.class);
+        Map<FormSubmission, RuntimeException> failures = new LinkedHashMap<>();
+        for (FormSubmission submission : submissions) {
+            Savepoint savepoint = session.doReturningWork(Connection::setSavepoint);
+            changeTracker.start();
+            try {
+                runProcessor(submission);
+                em.flush();
+                session.doWork(connection -> connection.releaseSavepoint(savepoint));
+                changeTracker.stop();
+            } catch (RuntimeException e) {
+                Map<Class<?>, Set<Serializable>> changed = changeTracker.stop();
+                if (TransactionAspectSupport.currentTransactionStatus().isRollbackOnly()) {
+                    throw e;
+                }
+                session.doWork(connection -> connection.rollback(savepoint));
+                em.clear();
+                reindex(changed);
+                failures.put(submission, e);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Queues index updates reflecting the database state of the given entities, replacing those queued earlier in the
+     * transaction for the same entities.
+     */
+    private void reindex(Map<Class<?>, Set<Serializable>> entities) {
+        FullTextEntityManager ftem = Search.getFullTextEntityManager(em);
+        Set<Class<?>> indexed = ftem.getSearchFactory().getIndexedTypes();
+        entities.forEach((type, ids) -> {
+            if (indexed.contains(type)) {
+                for (Serializable id : ids) {
+                    Object current = ftem.find(type, id);
+                    if (current != null) {
+                        ftem.index(current);
+                    } else {
+                        ftem.purge(type, id);
+                    }
+                }
+            }
+        });
+    }
+
+    private void runProcessor(FormSubmission submission) {
+        long start = System.nanoTime();
+        try {
+            getProcessor(submission).process(submission);
+        } finally {
+            metrics.processorTime(submission, System.nanoTime() - start);
+        }
+    }
+
+    private FormProcessor getProcessor(FormSubmission submission) {
+        return Optional.ofNullable(submission.getCampaignId())
                 .flatMap(campaignRepo::findActiveByUuid)
                 .map(Campaign::getUuid)
                 .map(campaignProcessors::get)
                 .map(processorMap -> processorMap.get(submission.getFormBinding()))
-                .orElse(new DefaultProcessor())
-                .process(submission);
+                .orElse(new DefaultProcessor());
+    }
+
+    @Override
+    public String getOrderingKey(FormSubmission submission) {
+        String key = Optional.ofNullable(submission.getCampaignId())
+                .map(campaignProcessors::get)
+                .map(processorMap -> processorMap.get(submission.getFormBinding()))
+                .filter(OrderedFormProcessor.class::isInstance)
+                .map(processor -> ((OrderedFormProcessor) processor).orderingKey(submission))
+                .orElseGet(() -> getDefaultOrderingKey(submission));
+        return submission.getCampaignId() + "/" + key;
+    }
+
+    private String getDefaultOrderingKey(FormSubmission submission) {
+        switch (ordering) {
+            case ORDER_BY_BINDING:
+                return submission.getFormBinding();
+            case ORDER_BY_SUBMISSION:
+                return submission.getInstanceId();
+            default:
+                return "";
+        }
     }
 
     static class DefaultProcessor implements FormProcessor {
@@ -6,6 +6,7 @@ import com.github.cimsbioko.server.domain.Form;
 import com.github.cimsbioko.server.domain.FormId;
 import com.github.cimsbioko.server.service.FormMetadataService;
 import com.github.cimsbioko.server.service.FormService;
+import com.github.cimsbioko.server.service.LastSubmissionService;
 import com.github.cimsbioko.server.service.XLSFormService;
 import com.github.cimsbioko.server.webapi.odk.FileHasher;
 import com.github.cimsbioko.server.webapi.odk.FormFileSystem;
@@ -35,6 +36,7 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
 
+import static com.github.cimsbioko.server.config.CachingConfig.FORM_INTAKE_CACHE;
 import static com.github.cimsbioko.server.config.CachingConfig.FORM_METADATA_CACHE;
 import static com.github.cimsbioko.server.util.JDOMUtil.getBuilder;
 import static com.github.cimsbioko.server.util.JDOMUtil.getOutputter;
@@ -62,23 +64,30 @@ public class FormServiceImpl implements FormService {
 
     private final FormMetadataService metadataService;
 
-    public FormServiceImpl(FormRepository repo, FormSubmissionRepository submissionDao, FileHasher hasher, FormFileSystem fs, XLSFormService xlsformService, FormMetadataService metadataService) {
+    private final LastSubmissionService lastSubmissions;
+
+    public FormServiceImpl(FormRepository repo, FormSubmissionRepository submissionDao, FileHasher hasher, FormFileSystem fs,
+                           XLSFormService xlsformService, FormMetadataService metadataService,
+                           LastSubmissionService lastSubmissions) {
         this.formDao = repo;
         this.submissionDao = submissionDao;
         this.hasher = hasher;
         this.formFileSystem = fs;
         this.xlsformService = xlsformService;
         this.metadataService = metadataService;
+        this.lastSubmissions = lastSubmissions;
     }
 
     @Override
     @Transactional
+    @CacheEvict(value = FORM_INTAKE_CACHE, allEntries = true)
     public void uploadForm(MultipartFile formXml, MultipartFile xlsform, MultiValueMap<String, MultipartFile> uploadedFiles) throws JDOMException, IOException, NoSuchAlgorithmException {
         installFormWithMedia(xlsform, uploadedFiles, formXml.getInputStream());
     }
 
     @Override
     @Transactional
+    @CacheEvict(value = FORM_INTAKE_CACHE, allEntries = true)
     public void uploadXlsform(MultipartFile xlsform, MultiValueMap<String, MultipartFile> uploadedFiles) throws JDOMException, IOException, NoSuchAlgorithmException {
         try (InputStream xlsInput = xlsform.getInputStream();
              ZipFile converted = xlsformService.convertXLSForm(xlsInput)) {
@@ -112,6 +121,7 @@ public class FormServiceImpl implements FormService {
 
     @Override
     @Transactional
+    @CacheEvict(value = FORM_INTAKE_CACHE, key = "{#id,#version}")
     public void manageForm(String id, String version, boolean downloads, boolean submissions) {
         formDao.findById(new FormId(id, version)).ifPresent((form) -> {
             if (form.isSubmissions() != submissions) {
@@ -134,19 +144,20 @@ public class FormServiceImpl implements FormService {
         formDao.findById(new FormId(id, version)).ifPresent((form) -> {
             log.info("wiping submissions for {} version {}", id, version);
             log.info("removed {} submissions", submissionDao.deleteByFormIdAndFormVersion(id, version));
-            form.setLastSubmission(null);
+            lastSubmissions.reset(form.getFormId());
         });
     }
 
     @Override
     @Transactional
-    @CacheEvict(value = FORM_METADATA_CACHE, key = "{#id,#version}")
+    @CacheEvict(value = {FORM_METADATA_CACHE, FORM_INTAKE_CACHE}, key = "{#id,#version}")
     public void deleteForm(String id, String version) {
         FormId formId = new FormId(id, version);
         formDao.findById(formId).ifPresent((form) -> {
             log.info("deleting form {} version {}", id, version);
             formDao.delete(form);
             metadataService.invalidateMetadata(formId);
+            lastSubmissions.reset(formId);
         });
     }
 
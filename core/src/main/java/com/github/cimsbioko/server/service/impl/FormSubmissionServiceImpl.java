@@ -1,27 +1,38 @@
 package com.github.cimsbioko.server.service.impl;
 
-import com.github.cimsbioko.server.dao.FormRepository;
 import com.github.cimsbioko.server.dao.FormSubmissionRepository;
 import com.github.cimsbioko.server.domain.FormId;
 import com.github.cimsbioko.server.domain.FormSubmission;
 import com.github.cimsbioko.server.exception.ExistingSubmissionException;
 import com.github.cimsbioko.server.service.FormSubmissionService;
+import com.github.cimsbioko.server.service.LastSubmissionService;
+import org.hibernate.Session;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.EntityManager;
 import java.sql.Timestamp;
 import java.time.Instant;
+import java.util.*;
 import java.util.stream.Stream;
 
+import static java.util.stream.Collectors.toSet;
+
 public class FormSubmissionServiceImpl implements FormSubmissionService {
 
     private final FormSubmissionRepository submissionDao;
-    private final FormRepository formDao;
+    private final LastSubmissionService lastSubmissions;
+    private final EntityManager em;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public FormSubmissionServiceImpl(FormSubmissionRepository submissionDao, FormRepository formDao) {
+    public FormSubmissionServiceImpl(FormSubmissionRepository submissionDao, LastSubmissionService lastSubmissions,
+                                     EntityManager em, ApplicationEventPublisher eventPublisher) {
         this.submissionDao = submissionDao;
-        this.formDao = formDao;
+        this.lastSubmissions = lastSubmissions;
+        this.em = em;
+        this.eventPublisher = eventPublisher;
     }
 
     @Override
@@ -37,14 +48,46 @@ public class FormSubmissionServiceImpl implements FormSubmissionService {
             if (deprecatedId != null) {
                 submissionDao.findById(deprecatedId).ifPresent(deprecated -> deprecated.setDeprecatedBy(created));
             }
-            formDao.findById(new FormId(submission.getFormId(), submission.getFormVersion())).ifPresent(form ->
-                    form.setLastSubmission(Timestamp.from(Instant.now()))
-            );
+            lastSubmissions.submitted(new FormId(submission.getFormId(), submission.getFormVersion()),
+                    Timestamp.from(Instant.now()));
+            if (submission.getProcessed() == null) {
+                eventPublisher.publishEvent(new SubmissionsRecordedEvent(1));
+            }
             // FIXME: Use optional rather than null
             return submissionDao.findById(instanceId).orElse(null);
         }
     }
 
+    @Override
+    @Transactional
+    public List<FormSubmission> recordSubmissions(List<FormSubmission> submissions, Map<String, String> deprecatedIds) {
+        Set<String> existing = submissionDao.findExistingIds(
+                submissions.stream().map(FormSubmission::getInstanceId).collect(toSet()));
+        // persisted directly rather than saved, which would look up each submission, and inserted as a jdbc batch
+        em.unwrap(Session.class).setJdbcBatchSize(submissions.size());
+        Map<String, FormSubmission> created = new LinkedHashMap<>();
+        for (FormSubmission submission : submissions) {
+            String instanceId = submission.getInstanceId();
+            if (!existing.contains(instanceId) && !created.containsKey(instanceId)) {
+                em.persist(submission);
+                created.put(instanceId, submission);
+            }
+        }
+        Timestamp now = Timestamp.from(Instant.now());
+        for (FormSubmission submission : created.values()) {
+            String deprecatedId = deprecatedIds.get(submission.getInstanceId());
+            if (deprecatedId != null) {
+                submissionDao.findById(deprecatedId).ifPresent(deprecated -> deprecated.setDeprecatedBy(submission));
+            }
+            lastSubmissions.submitted(new FormId(submission.getFormId(), submission.getFormVersion()), now);
+        }
+        int unprocessed = (int) created.values().stream().filter(s -> s.getProcessed() == null).count();
+        if (unprocessed > 0) {
+            eventPublisher.publishEvent(new SubmissionsRecordedEvent(unprocessed));
+        }
+        return new ArrayList<>(created.values());
+    }
+
     @Override
     public Stream<FormSubmission> getUnprocessed(int batchSize) {
         return submissionDao.findUnprocessed(PageRequest.of(0, batchSize));
@@ -58,4 +101,18 @@ public class FormSubmissionServiceImpl implements FormSubmissionService {
         submissionDao.save(submission);
     }
 
+    @Override
+    @Transactional
+    public void markProcessed(Collection<FormSubmission> submissions, Collection<FormSubmission> failed) {
+        Timestamp now = Timestamp.from(Instant.now());
+        Set<String> failedIds = failed.stream().map(FormSubmission::getInstanceId).collect(toSet());
+        Set<String> succeededIds = submissions.stream().map(FormSubmission::getInstanceId).collect(toSet());
+        succeededIds.removeAll(failedIds);
+        if (!succeededIds.isEmpty()) {
+            submissionDao.markProcessed(succeededIds, true, now);
+        }
+        if (!failedIds.isEmpty()) {
+            submissionDao.markProcessed(failedIds, false, now);
+        }
+    }
 }
@@ -0,0 +1,101 @@
+package com.github.cimsbioko.server.service.impl;
+
+import org.hibernate.Hibernate;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.*;
+import org.hibernate.persister.entity.EntityPersister;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records the entities written by flushes on the current thread while tracking, including owners of changed
+ * collections. Hibernate Search queues index updates for these entities as they are flushed, and discards them only
+ * when the transaction rolls back, so the recorded entities are those whose index entries need restoring when their
+ * changes are rolled back to a savepoint instead.
+ */
+public class IndexedChangeTracker implements PostInsertEventListener, PostUpdateEventListener,
+        PostDeleteEventListener, PostCollectionRecreateEventListener, PostCollectionUpdateEventListener,
+        PostCollectionRemoveEventListener {
+
+    private final transient ThreadLocal<Map<Class<?>, Set<Serializable>>> changes = new ThreadLocal<>();
+
+    /**
+     * Registers the tracker to receive the entity manager factory's flush events.
+     */
+    public void register(EntityManagerFactory emf) {
+        EventListenerRegistry registry = emf.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_INSERT, this);
+        registry.appendListeners(EventType.POST_UPDATE, this);
+        registry.appendListeners(EventType.POST_DELETE, this);
+        registry.appendListeners(EventType.POST_COLLECTION_RECREATE, this);
+        registry.appendListeners(EventType.POST_COLLECTION_UPDATE, this);
+        registry.appendListeners(EventType.POST_COLLECTION_REMOVE, this);
+    }
+
+    /**
+     * Starts recording changes flushed on the current thread, discarding any recorded previously.
+     */
+    public void start() {
+        changes.set(new HashMap<>());
+    }
+
+    /**
+     * Stops recording changes on the current thread.
+     *
+     * @return the ids of the entities changed since recording started, by entity class
+     */
+    public Map<Class<?>, Set<Serializable>> stop() {
+        Map<Class<?>, Set<Serializable>> recorded = changes.get();
+        changes.remove();
+        return recorded == null ? new HashMap<>() : recorded;
+    }
+
+    private void record(Object entity, Serializable id) {
+        Map<Class<?>, Set<Serializable>> recorded = changes.get();
+        if (recorded != null && entity != null && id != null) {
+            recorded.computeIfAbsent(Hibernate.getClass(entity), c -> new HashSet<>()).add(id);
+        }
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        record(event.getEntity(), event.getId());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        record(event.getEntity(), event.getId());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        record(event.getEntity(), event.getId());
+    }
+
+    @Override
+    public void onPostRecreateCollection(PostCollectionRecreateEvent event) {
+        record(event.getAffectedOwnerOrNull(), event.getAffectedOwnerIdOrNull());
+    }
+
+    @Override
+    public void onPostUpdateCollection(PostCollectionUpdateEvent event) {
+        record(event.getAffectedOwnerOrNull(), event.getAffectedOwnerIdOrNull());
+    }
+
+    @Override
+    public void onPostRemoveCollection(PostCollectionRemoveEvent event) {
+        record(event.getAffectedOwnerOrNull(), event.getAffectedOwnerIdOrNull());
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return false;
+    }
+}
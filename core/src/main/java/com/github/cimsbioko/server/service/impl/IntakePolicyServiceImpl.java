@@ -0,0 +1,41 @@
+package com.github.cimsbioko.server.service.impl;
+
+import com.github.cimsbioko.server.dao.CampaignRepository;
+import com.github.cimsbioko.server.dao.FormRepository;
+import com.github.cimsbioko.server.domain.Campaign;
+import com.github.cimsbioko.server.domain.FormId;
+import com.github.cimsbioko.server.service.IntakePolicyService;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+import static com.github.cimsbioko.server.config.CachingConfig.DEFAULT_CAMPAIGN_CACHE;
+import static com.github.cimsbioko.server.config.CachingConfig.FORM_INTAKE_CACHE;
+
+public class IntakePolicyServiceImpl implements IntakePolicyService {
+
+    private final FormRepository formRepo;
+    private final CampaignRepository campaignRepo;
+
+    public IntakePolicyServiceImpl(FormRepository formRepo, CampaignRepository campaignRepo) {
+        this.formRepo = formRepo;
+        this.campaignRepo = campaignRepo;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    @Cacheable(value = FORM_INTAKE_CACHE, key = "{#id.id,#id.version}")
+    public FormIntake getFormIntake(FormId id) {
+        return formRepo.findById(id)
+                .map(form -> form.isSubmissions() ? FormIntake.ENABLED : FormIntake.DISABLED)
+                .orElse(FormIntake.UNKNOWN);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    @Cacheable(value = DEFAULT_CAMPAIGN_CACHE, key = "'default'")
+    public Optional<String> getDefaultCampaign() {
+        return campaignRepo.findDefault().map(Campaign::getUuid);
+    }
+}
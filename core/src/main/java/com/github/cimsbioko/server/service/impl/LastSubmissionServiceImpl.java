@@ -0,0 +1,90 @@
+package com.github.cimsbioko.server.service.impl;
+
+import com.github.cimsbioko.server.domain.Form;
+import com.github.cimsbioko.server.domain.FormId;
+import com.github.cimsbioko.server.service.LastSubmissionService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.util.AbstractMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Keeps the latest submission time of each form in memory, and writes them to the form table periodically and on
+ * shutdown, rather than updating the form row in every submission's transaction, where concurrent submissions for the
+ * same form contend for its row lock. Writes only ever move a form's time forward, so nodes flushing their own times
+ * don't overwrite each other's later times.
+ */
+public class LastSubmissionServiceImpl implements LastSubmissionService, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(LastSubmissionServiceImpl.class);
+
+    private static final String FLUSH_SQL = "update form set last_submission = greatest(coalesce(last_submission, ?), ?)" +
+            " where id = ? and version = ?";
+    private static final String RESET_SQL = "update form set last_submission = null where id = ? and version = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ConcurrentMap<FormId, Timestamp> pending = new ConcurrentHashMap<>();
+
+    public LastSubmissionServiceImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void submitted(FormId form, Timestamp time) {
+        pending.merge(form, time, LastSubmissionServiceImpl::latest);
+    }
+
+    @Override
+    public Timestamp getLastSubmission(Form form) {
+        Timestamp flushed = form.getLastSubmission(), unflushed = pending.get(form.getFormId());
+        return flushed == null ? unflushed : unflushed == null ? flushed : latest(flushed, unflushed);
+    }
+
+    private static Timestamp latest(Timestamp a, Timestamp b) {
+        return a.after(b) ? a : b;
+    }
+
+    @Override
+    @Transactional
+    public void reset(FormId form) {
+        pending.remove(form);
+        jdbcTemplate.update(RESET_SQL, form.getId(), form.getVersion());
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${app.forms.lastsubmission.flushinterval:PT30S}")
+    @Transactional
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<FormId, Timestamp>> flushing = pending.entrySet().stream()
+                .map(AbstractMap.SimpleImmutableEntry::new)
+                .collect(toList());
+        jdbcTemplate.batchUpdate(FLUSH_SQL, flushing, flushing.size(), (ps, entry) -> {
+            ps.setTimestamp(1, entry.getValue());
+            ps.setTimestamp(2, entry.getValue());
+            ps.setString(3, entry.getKey().getId());
+            ps.setString(4, entry.getKey().getVersion());
+        });
+        // times recorded while flushing are kept for the next flush
+        flushing.forEach(entry -> pending.remove(entry.getKey(), entry.getValue()));
+        log.debug("flushed last submission times for {} forms", flushing.size());
+    }
+
+    @Override
+    public void destroy() {
+        flush();
+    }
+}
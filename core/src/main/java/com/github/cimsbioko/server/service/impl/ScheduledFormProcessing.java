@@ -10,33 +10,61 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.persistence.EntityManager;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import static com.github.cimsbioko.server.config.AsyncConfig.FORM_PROCESSING_EXECUTOR;
+import static java.lang.Thread.MIN_PRIORITY;
+import static java.lang.Thread.NORM_PRIORITY;
+
+/**
+ * Periodically processes received submissions. By default, submissions are processed one at a time, in the order
+ * received, each in its own transactions. With more than one worker, submissions are partitioned among the workers by
+ * their ordering key, so that submissions with the same key are still processed in order by the same worker while
+ * others proceed concurrently. With a chunk size above one, each worker processes chunks of submissions in a single
+ * transaction, which saves a commit per submission.
+ */
 public class ScheduledFormProcessing {
 
     private static final float MILLIS_PER_SECOND = 1000f;
+    private static final int QUEUED_PER_WORKER = 16;
     private static final Logger log = LoggerFactory.getLogger(FormProcessorServiceImpl.class);
 
     private final EntityManager entityManager;
     private final FormSubmissionService formsService;
     private final FormProcessorService formProcessorService;
     private final ErrorService errorService;
+    private final TransactionTemplate chunkTemplate;
+    private final FormProcessingMetrics metrics;
 
     private int batchSize;
+    private int workers = 1;
+    private int chunkSize = 1;
 
     public ScheduledFormProcessing(EntityManager entityManager, FormSubmissionService formsService,
-                                   FormProcessorService formProcessorService, ErrorService errorService) {
+                                   FormProcessorService formProcessorService, ErrorService errorService,
+                                   PlatformTransactionManager txManager, FormProcessingMetrics metrics) {
         this.entityManager = entityManager;
         this.formsService = formsService;
         this.formProcessorService = formProcessorService;
         this.errorService = errorService;
+        this.chunkTemplate = new TransactionTemplate(txManager);
+        this.chunkTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.metrics = metrics;
     }
 
     public int getBatchSize() {
@@ -48,32 +76,34 @@ public class ScheduledFormProcessing {
         this.batchSize = batchSize;
     }
 
+    public int getWorkers() {
+        return workers;
+    }
+
+    @Value("${app.formproc.workers:1}")
+    public void setWorkers(int workers) {
+        this.workers = Math.max(1, workers);
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    @Value("${app.formproc.chunkSize:1}")
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
     @RunAsUser("system")
     @Scheduled(fixedDelayString = "${app.formproc.interval:PT1M}")
-    @Async
+    @Async(FORM_PROCESSING_EXECUTOR)
     @Transactional(readOnly = true)
     public void processForms() {
         long start = System.currentTimeMillis();
         try (Stream<FormSubmission> forms = formsService.getUnprocessed(batchSize)) {
             log.info("attempting to process submissions");
             AtomicLong totalProcessed = new AtomicLong(), totalFailures = new AtomicLong();
-            forms.forEachOrdered(form -> {
-                if (totalProcessed.get() == 0) {
-                    log.info("time to first submission {}s", (System.currentTimeMillis() - start) / MILLIS_PER_SECOND);
-                }
-                boolean processedOk = false;
-                try {
-                    formProcessorService.process(form);
-                    processedOk = true;
-                } catch (Exception e) {
-                    log.error("failed to process submission {}: {}", form.getInstanceId(), e.getMessage());
-                    errorService.logError(form, causes(e).stream().map(Throwable::getMessage).collect(Collectors.joining("\n")));
-                    totalFailures.incrementAndGet();
-                }
-                formsService.markProcessed(form, processedOk);
-                totalProcessed.incrementAndGet();
-                entityManager.detach(form);
-            });
+            dispatch(forms, start, totalProcessed, totalFailures);
             float duration = (System.currentTimeMillis() - start) / MILLIS_PER_SECOND;
             String finalMessage = "processing completed: processed {} forms with {} failures ({}s)";
             long processed = totalProcessed.get(), failures = totalFailures.get();
@@ -85,6 +115,141 @@ public class ScheduledFormProcessing {
         }
     }
 
+    /**
+     * Dispatches chunks of submissions to single-threaded workers chosen by ordering key, or processes them directly
+     * with a single worker. Submissions are detached before dispatch, since they are processed and updated in their own
+     * transactions, and the number of submissions waiting on workers is bounded so that large backlogs aren't loaded
+     * ahead of processing. Worker threads are created per run, so they run as the same user as the run itself.
+     */
+    private void dispatch(Stream<FormSubmission> forms, long start, AtomicLong totalProcessed, AtomicLong totalFailures) {
+        List<ExecutorService> threads = new ArrayList<>();
+        Executor[] partitions = new Executor[workers];
+        if (workers > 1) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("formproc-worker-");
+            threadFactory.setThreadPriority(MIN_PRIORITY + (NORM_PRIORITY - MIN_PRIORITY) / 2);
+            for (int i = 0; i < partitions.length; i++) {
+                ExecutorService thread = Executors.newSingleThreadExecutor(threadFactory);
+                threads.add(thread);
+                partitions[i] = thread;
+            }
+        } else {
+            partitions[0] = Runnable::run;
+        }
+        // chunks being filled hold fewer permits than this, so dispatch can always wait on a dispatched chunk
+        Semaphore queued = new Semaphore(workers * (chunkSize + QUEUED_PER_WORKER));
+        List<List<FormSubmission>> chunks = new ArrayList<>();
+        for (int i = 0; i < partitions.length; i++) {
+            chunks.add(new ArrayList<>(chunkSize));
+        }
+        try {
+            forms.forEachOrdered(form -> {
+                int partition = workers > 1 ? Math.floorMod(formProcessorService.getOrderingKey(form).hashCode(), workers) : 0;
+                entityManager.detach(form);
+                queued.acquireUninterruptibly();
+                List<FormSubmission> chunk = chunks.get(partition);
+                chunk.add(form);
+                if (chunk.size() >= chunkSize) {
+                    chunks.set(partition, new ArrayList<>(chunkSize));
+                    execute(partitions[partition], chunk, queued, start, totalProcessed, totalFailures);
+                }
+            });
+            for (int i = 0; i < partitions.length; i++) {
+                if (!chunks.get(i).isEmpty()) {
+                    execute(partitions[i], chunks.get(i), queued, start, totalProcessed, totalFailures);
+                }
+            }
+        } finally {
+            threads.forEach(ExecutorService::shutdown);
+            awaitTermination(threads);
+        }
+    }
+
+    private void execute(Executor partition, List<FormSubmission> chunk, Semaphore queued, long start,
+                         AtomicLong totalProcessed, AtomicLong totalFailures) {
+        partition.execute(() -> {
+            try {
+                processChunk(chunk, start, totalProcessed, totalFailures);
+            } catch (RuntimeException e) {
+                log.error("failed to complete processing of {} submissions", chunk.size(), e);
+                totalFailures.addAndGet(chunk.size());
+            } finally {
+                queued.release(chunk.size());
+            }
+        });
+    }
+
+    private static void awaitTermination(List<ExecutorService> threads) {
+        boolean interrupted = false;
+        for (ExecutorService thread : threads) {
+            while (!thread.isTerminated()) {
+                try {
+                    thread.awaitTermination(1, TimeUnit.MINUTES);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Processes a chunk of submissions in a single transaction, marking them processed and logging their errors in the
+     * same transaction. Submissions that fail are rolled back to their savepoint. If a failure leaves the transaction
+     * unusable, the chunk is rolled back and its submissions are processed one at a time instead.
+     */
+    private void processChunk(List<FormSubmission> chunk, long start, AtomicLong totalProcessed, AtomicLong totalFailures) {
+        if (chunk.size() == 1) {
+            process(chunk.get(0), start, totalProcessed, totalFailures);
+            return;
+        }
+        if (totalProcessed.get() == 0) {
+            log.info("time to first submission {}s", (System.currentTimeMillis() - start) / MILLIS_PER_SECOND);
+        }
+        Map<FormSubmission, RuntimeException> failures;
+        try {
+            failures = chunkTemplate.execute(status -> {
+                Map<FormSubmission, RuntimeException> failed = formProcessorService.processAll(chunk);
+                formsService.markProcessed(chunk, failed.keySet());
+                Map<FormSubmission, String> messages = new LinkedHashMap<>();
+                failed.forEach((form, e) -> messages.put(form, causeMessages(e)));
+                errorService.logErrors(messages);
+                return failed;
+            });
+        } catch (RuntimeException e) {
+            log.warn("failed to process chunk of {} submissions, processing individually: {}", chunk.size(), e.getMessage());
+            chunk.forEach(form -> process(form, start, totalProcessed, totalFailures));
+            return;
+        }
+        failures.forEach((form, e) -> log.error("failed to process submission {}: {}", form.getInstanceId(), e.getMessage()));
+        chunk.forEach(form -> metrics.processed(form, !failures.containsKey(form)));
+        totalFailures.addAndGet(failures.size());
+        totalProcessed.addAndGet(chunk.size());
+    }
+
+    private void process(FormSubmission form, long start, AtomicLong totalProcessed, AtomicLong totalFailures) {
+        if (totalProcessed.get() == 0) {
+            log.info("time to first submission {}s", (System.currentTimeMillis() - start) / MILLIS_PER_SECOND);
+        }
+        boolean processedOk = false;
+        try {
+            formProcessorService.process(form);
+            processedOk = true;
+        } catch (Exception e) {
+            log.error("failed to process submission {}: {}", form.getInstanceId(), e.getMessage());
+            errorService.logError(form, causeMessages(e));
+            totalFailures.incrementAndGet();
+        }
+        formsService.markProcessed(form, processedOk);
+        metrics.processed(form, processedOk);
+        totalProcessed.incrementAndGet();
+    }
+
+    private String causeMessages(Throwable throwable) {
+        return causes(throwable).stream().map(Throwable::getMessage).collect(Collectors.joining("\n"));
+    }
+
     private List<Throwable> causes(Throwable throwable) {
         List<Throwable> causes = new ArrayList<>();
         for (Throwable t = throwable; t != null; t = t.getCause()) {
@@ -0,0 +1,18 @@
+package com.github.cimsbioko.server.service.impl;
+
+/**
+ * Published when new submissions are recorded, so that they can be processed without waiting for the next scheduled
+ * processing run.
+ */
+public class SubmissionsRecordedEvent {
+
+    private final int count;
+
+    SubmissionsRecordedEvent(int count) {
+        this.count = count;
+    }
+
+    public int getCount() {
+        return count;
+    }
+}
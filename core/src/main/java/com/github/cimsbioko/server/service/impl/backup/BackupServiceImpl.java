@@ -12,6 +12,8 @@ import org.springframework.transaction.annotation.Transactional;
 import javax.persistence.EntityManager;
 import java.sql.CallableStatement;
 
+import static com.github.cimsbioko.server.config.AsyncConfig.BACKUP_EXECUTOR;
+
 public class BackupServiceImpl implements BackupService {
 
     private final EntityManager em;
@@ -24,7 +26,7 @@ public class BackupServiceImpl implements BackupService {
     }
 
     @Override
-    @Async
+    @Async(BACKUP_EXECUTOR)
     @Transactional
     public void createBackup(String name, String description) {
         try {
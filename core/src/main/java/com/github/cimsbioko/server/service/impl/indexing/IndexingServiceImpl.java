@@ -8,6 +8,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.event.EventListener;
 import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Async;
 
 import javax.persistence.EntityManager;
 import javax.transaction.Transactional;
@@ -18,6 +19,8 @@ import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.LongAdder;
 
+import static com.github.cimsbioko.server.config.AsyncConfig.INDEXING_EXECUTOR;
+
 public class IndexingServiceImpl implements IndexingService {
 
     private static final Logger log = LoggerFactory.getLogger(IndexingServiceImpl.class);
@@ -64,15 +67,23 @@ public class IndexingServiceImpl implements IndexingService {
     }
 
     @Override
+    @Async(INDEXING_EXECUTOR)
     @Transactional
     public void requestRebuild() {
         if (inProgress.compareAndSet(false, true)) {
             log.debug("search index rebuild requested, starting");
             eventPublisher.publishEvent(new IndexingStartedEvent(Instant.now()));
-            Search.getFullTextEntityManager(em)
-                    .createIndexer()
-                    .progressMonitor(new IndexingEventPublisher(eventPublisher, 5000))
-                    .start();
+            try {
+                // waits so the indexing executor bounds and measures rebuilds
+                Search.getFullTextEntityManager(em)
+                        .createIndexer()
+                        .progressMonitor(new IndexingEventPublisher(eventPublisher, 5000))
+                        .startAndWait();
+            } catch (InterruptedException e) {
+                log.warn("search index rebuild interrupted");
+                inProgress.set(false);
+                Thread.currentThread().interrupt();
+            }
         } else {
             log.debug("search index rebuild requested, ignoring, already in progress");
         }
@@ -0,0 +1,212 @@
+package com.github.cimsbioko.server.service.impl.sync;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Compact binary patches between two versions of a file, based on fixed-size blocks. Sqlite stores data in fixed-size
+ * pages, so pages that did not change between exports are found at block-aligned offsets in the old version and can
+ * be copied from it, while the remaining blocks are included literally. Patches are deflate-compressed and, once
+ * inflated, consist of:
+ * <p>
+ * <li>a header: int magic, int format version, int block size, long target length, UTF target hash</li>
+ * <li>operations: byte COPY, long source offset, int length | byte DATA, int length, data bytes</li>
+ * <li>a terminating byte END</li>
+ */
+final class BlockPatch {
+
+    static final String FILE_EXT = "dbpatch";
+
+    static final int MAGIC = 0x43504154;
+    static final int VERSION = 1;
+
+    static final byte END = 0, COPY = 1, DATA = 2;
+
+    private static final int MAX_DATA_RUN = 1 << 20;
+    private static final String BLOCK_HASH = "MD5";
+
+    private BlockPatch() {
+    }
+
+    /**
+     * Writes a patch that transforms the source file into the target file.
+     */
+    static void create(File source, File target, String targetHash, int blockSize, File patch)
+            throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance(BLOCK_HASH);
+        try (FileChannel src = FileChannel.open(source.toPath(), READ);
+             InputStream tgt = new BufferedInputStream(new FileInputStream(target));
+             DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(
+                     new BufferedOutputStream(new FileOutputStream(patch))))) {
+
+            Map<Long, Long> sourceBlocks = indexBlocks(src, blockSize, digest);
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(blockSize);
+            out.writeLong(target.length());
+            out.writeUTF(targetHash);
+
+            byte[] block = new byte[blockSize];
+            ByteBuffer candidate = ByteBuffer.allocate(blockSize);
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            long copyOffset = -1, copyLength = 0;
+            int read;
+            while ((read = readBlock(tgt, block)) > 0) {
+                Long offset = sourceBlocks.get(key(digest, block, read));
+                boolean matched = offset != null && sameContent(src, offset, block, read, candidate);
+                if (matched && copyOffset >= 0 && copyOffset + copyLength == offset && copyLength + read <= Integer.MAX_VALUE) {
+                    copyLength += read;
+                } else if (matched) {
+                    writeCopy(out, copyOffset, copyLength);
+                    writeData(out, data);
+                    copyOffset = offset;
+                    copyLength = read;
+                } else {
+                    writeCopy(out, copyOffset, copyLength);
+                    copyOffset = -1;
+                    copyLength = 0;
+                    data.write(block, 0, read);
+                    if (data.size() >= MAX_DATA_RUN) {
+                        writeData(out, data);
+                    }
+                }
+            }
+            writeCopy(out, copyOffset, copyLength);
+            writeData(out, data);
+            out.writeByte(END);
+        }
+    }
+
+    /**
+     * Applies a patch to the source file, writing the result to the target file.
+     *
+     * @return the hash of the target content, as recorded in the patch
+     */
+    static String apply(File source, InputStream patch, File target) throws IOException {
+        try (FileChannel src = FileChannel.open(source.toPath(), READ);
+             DataInputStream in = new DataInputStream(new InflaterInputStream(patch));
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(target))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("unsupported patch format");
+            }
+            in.readInt();
+            long targetLength = in.readLong();
+            String targetHash = in.readUTF();
+            byte[] buffer = new byte[8192];
+            long written = 0;
+            for (byte op = in.readByte(); op != END; op = in.readByte()) {
+                if (op == COPY) {
+                    long offset = in.readLong();
+                    int length = in.readInt();
+                    while (length > 0) {
+                        ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, Math.min(length, buffer.length));
+                        readFully(src, chunk, offset);
+                        if (chunk.hasRemaining()) {
+                            throw new EOFException("patch copies beyond end of source");
+                        }
+                        out.write(buffer, 0, chunk.limit());
+                        offset += chunk.limit();
+                        length -= chunk.limit();
+                        written += chunk.limit();
+                    }
+                } else if (op == DATA) {
+                    byte[] data = new byte[in.readInt()];
+                    in.readFully(data);
+                    out.write(data);
+                    written += data.length;
+                } else {
+                    throw new IOException("unknown patch operation " + op);
+                }
+            }
+            if (written != targetLength) {
+                throw new IOException("patch produced " + written + " bytes, expected " + targetLength);
+            }
+            return targetHash;
+        }
+    }
+
+    private static Map<Long, Long> indexBlocks(FileChannel src, int blockSize, MessageDigest digest) throws IOException {
+        Map<Long, Long> blocks = new HashMap<>();
+        ByteBuffer buffer = ByteBuffer.allocate(blockSize);
+        long size = src.size();
+        for (long offset = 0; offset < size; offset += blockSize) {
+            buffer.clear();
+            readFully(src, buffer, offset);
+            blocks.putIfAbsent(key(digest, buffer.array(), buffer.position()), offset);
+        }
+        return blocks;
+    }
+
+    private static long key(MessageDigest digest, byte[] block, int length) {
+        digest.update(block, 0, length);
+        byte[] hash = digest.digest();
+        long key = length;
+        for (int i = 0; i < 8; i++) {
+            key = key * 31 + (hash[i] & 0xff);
+        }
+        return key;
+    }
+
+    private static boolean sameContent(FileChannel src, long offset, byte[] block, int length, ByteBuffer candidate)
+            throws IOException {
+        candidate.clear();
+        candidate.limit(length);
+        readFully(src, candidate, offset);
+        if (candidate.position() != length) {
+            return false;
+        }
+        byte[] content = candidate.array();
+        for (int i = 0; i < length; i++) {
+            if (content[i] != block[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Fills the buffer from the channel, starting at the given position, stopping early only at end of file.
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+    }
+
+    private static int readBlock(InputStream in, byte[] block) throws IOException {
+        int total = 0, read;
+        while (total < block.length && (read = in.read(block, total, block.length - total)) >= 0) {
+            total += read;
+        }
+        return total;
+    }
+
+    private static void writeCopy(DataOutputStream out, long offset, long length) throws IOException {
+        if (offset >= 0 && length > 0) {
+            out.writeByte(COPY);
+            out.writeLong(offset);
+            out.writeInt((int) length);
+        }
+    }
+
+    private static void writeData(DataOutputStream out, ByteArrayOutputStream data) throws IOException {
+        if (data.size() > 0) {
+            out.writeByte(DATA);
+            out.writeInt(data.size());
+            data.writeTo(out);
+            data.reset();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.github.cimsbioko.server.service.impl.sync;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Controls whether the change log records changes to tracked tables. Changes are only recorded while incremental
+ * exports are enabled, so the log doesn't grow when nothing reads it. Since changes made while tracking was off are
+ * missing from the log, it is only complete for changes from the position at which tracking was last enabled.
+ */
+class ChangeTracking {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    ChangeTracking(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Starts recording changes, if not already recording. The position is taken once enabling is committed, so
+     * transactions from that position on only write while changes are recorded.
+     */
+    void enable() {
+        jdbcTemplate.update("update sync_change_tracking set enabled = true where not enabled");
+        jdbcTemplate.update("update sync_change_tracking set tracked_since = txid_snapshot_xmax(txid_current_snapshot())"
+                + " where enabled and tracked_since is null");
+    }
+
+    /**
+     * Stops recording changes and discards those recorded.
+     */
+    void disable() {
+        jdbcTemplate.update("update sync_change_tracking set enabled = false, tracked_since = null");
+        jdbcTemplate.update("delete from sync_change");
+    }
+
+    /**
+     * Gets the position from which the change log is complete, or nothing if changes aren't recorded.
+     */
+    Optional<Long> getTrackedSince() {
+        List<Long> since = jdbcTemplate.queryForList("select tracked_since from sync_change_tracking where enabled",
+                Long.class);
+        return since.stream().filter(Objects::nonNull).findFirst();
+    }
+}
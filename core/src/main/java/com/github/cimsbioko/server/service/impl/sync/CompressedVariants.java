@@ -0,0 +1,58 @@
+package com.github.cimsbioko.server.service.impl.sync;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Creates compressed variants of exported files once, at export time, so they can be served as-is rather than being
+ * compressed for every download.
+ */
+final class CompressedVariants {
+
+    static final String GZIP_EXT = "gz";
+    static final String ZIP_EXT = "zip";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private CompressedVariants() {
+    }
+
+    /**
+     * Writes gzip and zip variants of the source file, compressing both concurrently.
+     *
+     * @param source       the file to compress
+     * @param zipEntryName the name of the file inside the zip variant
+     * @param gzip         the gzip variant to write
+     * @param zip          the zip variant to write
+     */
+    static void create(File source, String zipEntryName, File gzip, File zip) throws IOException {
+        CompletableFuture<Void> gzipped = CompletableFuture.runAsync(() -> {
+            try (OutputStream out = new GZIPOutputStream(new FileOutputStream(gzip), BUFFER_SIZE)) {
+                Files.copy(source.toPath(), out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(zip), BUFFER_SIZE))) {
+            ZipEntry entry = new ZipEntry(zipEntryName);
+            entry.setSize(source.length());
+            entry.setTime(source.lastModified());
+            out.putNextEntry(entry);
+            Files.copy(source.toPath(), out);
+            out.closeEntry();
+        }
+        try {
+            gzipped.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.github.cimsbioko.server.service.impl.sync;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Determines the tables export queries read and the tables whose changes are tracked for incremental exports. The
+ * tables a query reads are taken from the plan postgresql produces for it, so tables read through views, joins and
+ * subqueries are included without parsing the query.
+ */
+class ExportDependencies {
+
+    private static final String TRACKED_TABLES_QUERY = "select distinct c.relname from pg_trigger t" +
+            " join pg_class c on c.oid = t.tgrelid join pg_proc p on p.oid = t.tgfoid" +
+            " where p.proname = 'record_sync_change' and not t.tgisinternal";
+
+    private static final String PLAN = "Plan";
+    private static final String PLANS = "Plans";
+    private static final String NODE_TYPE = "Node Type";
+    private static final String RELATION_NAME = "Relation Name";
+    private static final String FUNCTION_SCAN = "Function Scan";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    ExportDependencies(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Gets the tables whose changes are recorded in the change log.
+     */
+    Set<String> getTrackedTables() {
+        return new HashSet<>(jdbcTemplate.queryForList(TRACKED_TABLES_QUERY, String.class));
+    }
+
+    /**
+     * Gets the tables the query reads, or nothing if they can't be determined, such as when it reads from functions.
+     */
+    Optional<Set<String>> getTables(String query) {
+        List<String> plan = jdbcTemplate.queryForList("explain (format json) " + query, String.class);
+        return plan.size() == 1 ? getTables(new JSONArray(plan.get(0))) : Optional.empty();
+    }
+
+    /**
+     * Gets the tables any of the queries read, or nothing if they can't be determined for one of them.
+     */
+    Optional<Set<String>> getTables(Collection<String> queries) {
+        Set<String> tables = new TreeSet<>();
+        for (String query : queries) {
+            Optional<Set<String>> read = getTables(query);
+            if (!read.isPresent()) {
+                return Optional.empty();
+            }
+            tables.addAll(read.get());
+        }
+        return Optional.of(tables);
+    }
+
+    static Optional<Set<String>> getTables(JSONArray plans) {
+        Set<String> tables = new HashSet<>();
+        for (int i = 0; i < plans.length(); i++) {
+            if (!collectTables(plans.getJSONObject(i).getJSONObject(PLAN), tables)) {
+                return Optional.empty();
+            }
+        }
+        return Optional.of(tables);
+    }
+
+    private static boolean collectTables(JSONObject node, Set<String> tables) {
+        if (FUNCTION_SCAN.equals(node.optString(NODE_TYPE))) {
+            return false;
+        }
+        if (node.has(RELATION_NAME)) {
+            tables.add(node.getString(RELATION_NAME));
+        }
+        JSONArray children = node.optJSONArray(PLANS);
+        if (children != null) {
+            for (int i = 0; i < children.length(); i++) {
+                if (!collectTables(children.getJSONObject(i), tables)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,124 @@
+package com.github.cimsbioko.server.service.impl.sync;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Coordinates the exports of a single campaign on this node. Requests arriving while an export is queued are merged
+ * into it, and requests arriving while it runs are coalesced into a single follow-up export, so repeated requests never
+ * queue more than one additional export. Running exports can be cancelled, which also drops the follow-up export.
+ * Cancellation is cooperative: the export checks for it between steps, rather than being interrupted while it holds
+ * database connections.
+ */
+class ExportJob {
+
+    private static final Logger log = LoggerFactory.getLogger(ExportJob.class);
+
+    enum State {
+        IDLE, QUEUED, RUNNING, COALESCED
+    }
+
+    interface Action {
+        void export(boolean skipUnchanged);
+    }
+
+    private final String campaign;
+    private final Executor executor;
+    private final Action action;
+
+    private State state = State.IDLE;
+    private boolean skipUnchanged;
+    private volatile boolean cancelled;
+
+    ExportJob(String campaign, Executor executor, Action action) {
+        this.campaign = campaign;
+        this.executor = executor;
+        this.action = action;
+    }
+
+    /**
+     * Requests an export.
+     *
+     * @param skipUnchanged whether the export may be skipped when nothing changed, only honoured if all requests merged
+     *                      into the export allow it
+     * @return false if the export could not be queued
+     */
+    synchronized boolean submit(boolean skipUnchanged) {
+        switch (state) {
+            case IDLE:
+                this.skipUnchanged = skipUnchanged;
+                state = State.QUEUED;
+                try {
+                    executor.execute(this::run);
+                } catch (RejectedExecutionException e) {
+                    log.warn("failed to queue export for campaign {}", campaign, e);
+                    state = State.IDLE;
+                    return false;
+                }
+                return true;
+            case RUNNING:
+                this.skipUnchanged = skipUnchanged;
+                state = State.COALESCED;
+                log.debug("export for campaign {} running, coalesced request into follow-up export", campaign);
+                return true;
+            default:
+                this.skipUnchanged &= skipUnchanged;
+                return true;
+        }
+    }
+
+    /**
+     * Cancels the queued or running export, along with any follow-up export.
+     *
+     * @return true if there was an export to cancel
+     */
+    synchronized boolean cancel() {
+        switch (state) {
+            case QUEUED:
+                // the queued task finds the job idle and does nothing
+                state = State.IDLE;
+                return true;
+            case RUNNING:
+            case COALESCED:
+                state = State.RUNNING;
+                cancelled = true;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    private void run() {
+        boolean skip;
+        synchronized (this) {
+            if (state != State.QUEUED) {
+                return;
+            }
+            state = State.RUNNING;
+            cancelled = false;
+            skip = skipUnchanged;
+        }
+        try {
+            action.export(skip);
+        } finally {
+            synchronized (this) {
+                boolean followUp = state == State.COALESCED;
+                state = State.IDLE;
+                if (followUp) {
+                    submit(skipUnchanged);
+                }
+            }
+        }
+    }
+}
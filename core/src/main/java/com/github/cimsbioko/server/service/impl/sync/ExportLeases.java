@@ -0,0 +1,168 @@
+package com.github.cimsbioko.server.service.impl.sync;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Coordinates mobile db exports between application nodes sharing a database. A node must hold a campaign's lease to
+ * export it, so each export runs on a single node, and the outcome is recorded for all nodes to report. Leases expire,
+ * so exports held by a failed node are eventually taken over. Each operation commits on its own, so it is visible to
+ * other nodes immediately, even when called within a long-running transaction.
+ */
+public class ExportLeases {
+
+    // lease times use the database clock, so they are consistent regardless of clock differences between nodes
+    private static final String EXPIRY = "clock_timestamp() + ? * interval '1 millisecond'";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate txTemplate;
+    private final String owner;
+    private final Duration leaseDuration;
+
+    public ExportLeases(JdbcTemplate jdbcTemplate, PlatformTransactionManager txManager, Duration leaseDuration) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.txTemplate = new TransactionTemplate(txManager);
+        this.txTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.owner = UUID.randomUUID().toString();
+        this.leaseDuration = leaseDuration;
+    }
+
+    public Duration getLeaseDuration() {
+        return leaseDuration;
+    }
+
+    /**
+     * Attempts to take the export lease for a campaign. Fails while another export of the campaign holds an unexpired
+     * lease, including exports running on this node.
+     *
+     * @return true if the lease was acquired
+     */
+    public boolean acquire(String campaign) {
+        return update("insert into sync_export (campaign, owner, lease_expires) values (?, ?, " + EXPIRY + ")" +
+                " on conflict (campaign) do update set owner = excluded.owner, lease_expires = excluded.lease_expires," +
+                " cancel_requested = false" +
+                " where sync_export.owner is null or sync_export.lease_expires < clock_timestamp()",
+                campaign, owner, leaseDuration.toMillis()) > 0;
+    }
+
+    /**
+     * Extends the lease held by this node, for exports running longer than the lease duration.
+     */
+    public void renew(String campaign) {
+        update("update sync_export set lease_expires = " + EXPIRY + " where campaign = ? and owner = ?",
+                leaseDuration.toMillis(), campaign, owner);
+    }
+
+    public void started(String campaign) {
+        update("update sync_export set started = clock_timestamp(), progress = 0 where campaign = ? and owner = ?",
+                campaign, owner);
+    }
+
+    public void progress(String campaign, int tablesProcessed) {
+        update("update sync_export set progress = ? where campaign = ? and owner = ?", tablesProcessed, campaign, owner);
+    }
+
+    /**
+     * Publishes the content hash of a newly exported database to all nodes.
+     */
+    public void finished(String campaign, String contentHash) {
+        update("update sync_export set finished = clock_timestamp(), content_hash = ? where campaign = ? and owner = ?",
+                contentHash, campaign, owner);
+    }
+
+    /**
+     * Releases the lease held by this node.
+     */
+    public void release(String campaign) {
+        update("update sync_export set owner = null, lease_expires = null where campaign = ? and owner = ?",
+                campaign, owner);
+    }
+
+    /**
+     * Requests cancellation of a campaign's running export, on whichever node it runs.
+     */
+    public void requestCancel(String campaign) {
+        update("update sync_export set cancel_requested = true where campaign = ? and owner is not null", campaign);
+    }
+
+    /**
+     * Whether cancellation was requested for the export running on this node.
+     */
+    public boolean isCancelRequested(String campaign) {
+        return jdbcTemplate.queryForList("select cancel_requested from sync_export where campaign = ? and owner = ?",
+                Boolean.class, campaign, owner).stream().anyMatch(Boolean.TRUE::equals);
+    }
+
+    public void setPaused(String campaign, boolean paused) {
+        update("insert into sync_export (campaign, paused) values (?, ?)" +
+                " on conflict (campaign) do update set paused = excluded.paused", campaign, paused);
+    }
+
+    /**
+     * Gets the cluster-wide export state for a campaign.
+     */
+    public Optional<ExportState> get(String campaign) {
+        List<ExportState> states = jdbcTemplate.query(
+                "select owner is not null and lease_expires >= clock_timestamp()" +
+                        " and started is not null and (finished is null or finished < started), started, finished, progress," +
+                        " content_hash, paused from sync_export where campaign = ?",
+                (rs, row) -> new ExportState(rs.getBoolean(1), rs.getTimestamp(2), rs.getTimestamp(3),
+                        rs.getInt(4), rs.getString(5), rs.getBoolean(6)), campaign);
+        return states.stream().findFirst();
+    }
+
+    private int update(String sql, Object... args) {
+        Integer updated = txTemplate.execute(status -> jdbcTemplate.update(sql, args));
+        return updated != null ? updated : 0;
+    }
+
+    public static class ExportState {
+
+        private final boolean running;
+        private final Date started, finished;
+        private final int progress;
+        private final String contentHash;
+        private final boolean paused;
+
+        ExportState(boolean running, Date started, Date finished, int progress, String contentHash, boolean paused) {
+            this.running = running;
+            this.started = started;
+            this.finished = finished;
+            this.progress = progress;
+            this.contentHash = contentHash;
+            this.paused = paused;
+        }
+
+        public boolean isRunning() {
+            return running;
+        }
+
+        public Date getStarted() {
+            return started;
+        }
+
+        public Date getFinished() {
+            return finished;
+        }
+
+        public int getProgress() {
+            return progress;
+        }
+
+        public String getContentHash() {
+            return contentHash;
+        }
+
+        public boolean isPaused() {
+            return paused;
+        }
+    }
+}
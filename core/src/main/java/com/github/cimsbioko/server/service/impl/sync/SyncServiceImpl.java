@@ -11,24 +11,31 @@ import com.github.cimsbioko.server.service.impl.campaign.CampaignUnloadedEvent;
 import com.github.cimsbioko.server.sqliteexport.Exporter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.event.EventListener;
 import org.springframework.core.Ordered;
 import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.scheduling.TaskScheduler;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.support.CronTrigger;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.security.NoSuchAlgorithmException;
 import java.sql.SQLException;
-import java.util.Date;
-import java.util.Map;
-import java.util.Optional;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.github.cimsbioko.server.util.TimeUtil.describeDuration;
 import static org.apache.commons.codec.binary.Hex.encodeHexString;
@@ -40,6 +47,19 @@ public class SyncServiceImpl implements SyncService {
 
     private static final int DEFAULT_SYNC_BLOCK_SIZE = 8192;
     private static final String MD5 = "MD5";
+    private static final String DOWNLOAD_NAME = "cims.db";
+
+    private static final String CHANGE_POSITION = "changePosition";
+    private static final String EXPORTED = "exported";
+    private static final String INCREMENTAL_EXPORTS = "incrementalExports";
+    private static final String FINGERPRINT = "fingerprint";
+
+    // modification counters for tables of the current schema
+    private static final String FINGERPRINT_QUERY = "select coalesce(sum(n_tup_ins + n_tup_upd + n_tup_del), 0)" +
+            " from pg_stat_user_tables where schemaname = current_schema()";
+
+    // tables written without changing exported data: the change log, export leases and last submission times
+    private static final String BOOKKEEPING_TABLES = "'sync_change', 'sync_export', 'form'";
 
     private final TaskScheduler scheduler;
 
@@ -47,19 +67,73 @@ public class SyncServiceImpl implements SyncService {
 
     private final Map<String, SyncTask> campaignTasks = new ConcurrentHashMap<>();
 
+    private final Map<String, ExportJob> exportJobs = new ConcurrentHashMap<>();
+
     private final Exporter exporter;
 
     private final ApplicationEventPublisher eventPublisher;
 
     private final CampaignRepository repo;
 
+    private final JdbcTemplate jdbcTemplate;
+
+    private final VersionHistory history;
+
+    private final ExportLeases leases;
+
+    private final Executor exportExecutor;
+
+    private final ExportDependencies dependencies;
+
+    private final ChangeTracking changeTracking;
+
+    private final boolean incrementalEnabled;
+
+    private final int fullExportInterval;
+
+    private final Duration changeRetention;
+
+    private final Duration stateRefresh;
+
+    /**
+     * @param incrementalEnabled whether to update the previous export with changed rows rather than rebuilding it
+     * @param fullExportInterval the number of incremental exports between full exports, which compact the database
+     * @param changeRetention    how long to keep tracked changes
+     * @param stateRefresh       how often to refresh the export state reported for campaigns
+     */
     public SyncServiceImpl(TaskScheduler scheduler, CampaignRepository repo, File dataDir, Exporter exporter,
-                           ApplicationEventPublisher eventPublisher) {
+                           ApplicationEventPublisher eventPublisher, JdbcTemplate jdbcTemplate, VersionHistory history,
+                           ExportLeases leases, Executor exportExecutor, boolean incrementalEnabled,
+                           int fullExportInterval, Duration changeRetention, Duration stateRefresh) {
         this.scheduler = scheduler;
         this.dataDir = dataDir;
         this.exporter = exporter;
         this.eventPublisher = eventPublisher;
         this.repo = repo;
+        this.jdbcTemplate = jdbcTemplate;
+        this.dependencies = new ExportDependencies(jdbcTemplate);
+        this.changeTracking = new ChangeTracking(jdbcTemplate);
+        this.history = history;
+        this.leases = leases;
+        this.exportExecutor = exportExecutor;
+        this.incrementalEnabled = incrementalEnabled;
+        this.fullExportInterval = fullExportInterval;
+        this.changeRetention = changeRetention;
+        this.stateRefresh = stateRefresh;
+    }
+
+    /**
+     * Records changes for incremental exports only while they are enabled, discarding recorded changes otherwise, and
+     * starts refreshing the export state of campaigns, which picks up exports and pauses on other nodes.
+     */
+    @EventListener
+    public void onApplicationReady(ApplicationReadyEvent event) {
+        if (incrementalEnabled) {
+            changeTracking.enable();
+        } else {
+            changeTracking.disable();
+        }
+        scheduler.scheduleAtFixedRate(() -> campaignTasks.values().forEach(SyncTask::refreshState), stateRefresh);
     }
 
     @EventListener
@@ -70,6 +144,7 @@ public class SyncServiceImpl implements SyncService {
                 .ifPresent(task -> {
                     task.cancel();
                     campaignTasks.remove(campaignUuid);
+                    Optional.ofNullable(exportJobs.remove(campaignUuid)).ifPresent(ExportJob::cancel);
                     log.info("removed db export for campaign '{}' ({})", event.getName(), campaignUuid);
                 });
     }
@@ -84,13 +159,17 @@ public class SyncServiceImpl implements SyncService {
     }
 
     private void scheduleExport(String campaignUuid, String campaignName, JsConfig config) {
+        ExportJob job = exportJobs.computeIfAbsent(campaignUuid,
+                uuid -> new ExportJob(uuid, exportExecutor, skipUnchanged -> export(uuid, skipUnchanged)));
         Optional
                 .ofNullable(config.getDatabaseExport())
                 .map(DatabaseExport::exportSchedule)
                 .map(CronTrigger::new)
-                .map(t -> scheduler.schedule(() -> requestExport(campaignUuid), t))
+                .map(t -> scheduler.schedule(() -> scheduledExport(campaignUuid), t))
                 .ifPresent(future -> {
-                    campaignTasks.put(campaignUuid, new SyncTask(config, campaignUuid, campaignName, future));
+                    SyncTask task = new SyncTask(config, campaignUuid, campaignName, future, job, leases);
+                    task.refreshState();
+                    campaignTasks.put(campaignUuid, task);
                     log.info("added db export for campaign '{}' ({}), schedule '{}'",
                             campaignName, campaignUuid, config.getDatabaseExport().exportSchedule());
                 });
@@ -99,39 +178,51 @@ public class SyncServiceImpl implements SyncService {
     @EventListener
     @Order(Ordered.HIGHEST_PRECEDENCE)
     public void onExportStarted(ExportStartedEvent e) {
-        SyncTask t = campaignTasks.get(e.getCampaignUuid());
-        t.setStarted(new Date());
-        t.setFinished(null);
+        leases.started(e.getCampaignUuid());
+        refreshState(e.getCampaignUuid());
     }
 
     @EventListener
     @Order(Ordered.HIGHEST_PRECEDENCE)
     public void onExportUpdate(ExportStatusEvent e) {
-        campaignTasks.get(e.getCampaignUuid()).setItemCount(e.getTablesProcessed());
-    }
-
-    @EventListener
-    @Order(Ordered.HIGHEST_PRECEDENCE)
-    public void onExportFinished(ExportFinishedEvent e) {
-        SyncTask t = campaignTasks.get(e.getCampaignUuid());
-        t.setFinished(new Date());
-        t.setDescriptor(e.getContentHash());
+        leases.progress(e.getCampaignUuid(), e.getTablesProcessed());
+        refreshState(e.getCampaignUuid());
     }
 
     public Optional<Task> getTask(String campaign) {
         return Optional.ofNullable(campaignTasks.get(campaign));
     }
 
+    /**
+     * Finds a patch from a previously exported version to the current version of a campaign's database.
+     */
+    @Override
+    public Optional<File> getPatch(String campaign, String fromHash) {
+        return getTask(campaign)
+                .map(Task::getContentHash)
+                .flatMap(hash -> history.getPatch(getOutput(campaign), fromHash, hash));
+    }
+
     @Override
     public void pauseSync(String campaign) {
-        Optional.ofNullable(campaignTasks.get(campaign)).ifPresent(SyncTask::cancel);
+        Optional.ofNullable(campaignTasks.get(campaign)).ifPresent(task -> {
+            task.cancel();
+            leases.setPaused(campaign, true);
+            task.refreshState();
+        });
     }
 
     @Override
     public void resumeSync(String campaign) {
         Optional.ofNullable(campaignTasks.get(campaign))
                 .filter(task -> task.getStatus() == Status.PAUSED)
-                .ifPresent(task -> scheduleExport(task.getCampaignUuid(), task.getCampaignName(), task.getConfig()));
+                .ifPresent(task -> {
+                    leases.setPaused(campaign, false);
+                    task.refreshState();
+                    if (task.isCancelled()) {
+                        scheduleExport(task.getCampaignUuid(), task.getCampaignName(), task.getConfig());
+                    }
+                });
     }
 
     @Override
@@ -143,64 +234,207 @@ public class SyncServiceImpl implements SyncService {
         return new File(dataDir, String.format("%s.db", campaign));
     }
 
-    @Async
-    @Transactional
+    /**
+     * Requests an export, which is coalesced with exports already queued or running for the campaign.
+     */
     @Override
     public void requestExport(String campaign) {
+        Optional.ofNullable(exportJobs.get(campaign)).ifPresent(job -> job.submit(false));
+    }
+
+    /**
+     * Cancels the campaign's queued or running export, including one running on another node.
+     */
+    @Override
+    public void cancelExport(String campaign) {
+        Optional.ofNullable(exportJobs.get(campaign)).ifPresent(ExportJob::cancel);
+        leases.requestCancel(campaign);
+    }
+
+    /**
+     * Exports on schedule, unless paused on any node, skipping the export when its data has not changed since the
+     * previous export.
+     */
+    private void scheduledExport(String campaign) {
+        if (leases.get(campaign).map(ExportLeases.ExportState::isPaused).orElse(false)) {
+            log.debug("skipped export for campaign {}, paused", campaign);
+            return;
+        }
+        Optional.ofNullable(exportJobs.get(campaign)).ifPresent(job -> job.submit(true));
+    }
+
+    private void refreshState(String campaign) {
+        Optional.ofNullable(campaignTasks.get(campaign)).ifPresent(SyncTask::refreshState);
+    }
+
+    private boolean isCancelled(String campaign) {
+        return Optional.ofNullable(exportJobs.get(campaign)).map(ExportJob::isCancelled).orElse(false)
+                || leases.isCancelRequested(campaign);
+    }
+
+    /**
+     * Aborts the running export of a campaign if it was cancelled on any node.
+     */
+    private void checkCancelled(String campaign) {
+        if (isCancelled(campaign)) {
+            throw new CancellationException("export for campaign " + campaign + " cancelled");
+        }
+    }
+
+    /**
+     * Exports a campaign's database, provided no other export of it is running on any node. The lease is renewed
+     * for as long as the export runs, and held until the version history is updated, since it shares the output
+     * location with other nodes.
+     */
+    private void export(String campaign, boolean skipUnchanged) {
+        if (!leases.acquire(campaign)) {
+            log.info("skipped export for campaign {}, already running", campaign);
+            return;
+        }
+        Duration renewalPeriod = leases.getLeaseDuration().dividedBy(3);
+        ScheduledFuture<?> renewal = scheduler.scheduleAtFixedRate(() -> leases.renew(campaign),
+                Instant.now().plus(renewalPeriod), renewalPeriod);
+        boolean completed = false;
         try {
             Optional<Campaign> optionalActiveCampaign = repo.findActiveByUuid(campaign);
             if (optionalActiveCampaign.isPresent()) {
-                runExport(optionalActiveCampaign.get());
+                String md5 = runExport(optionalActiveCampaign.get(), skipUnchanged);
+                if (md5 != null) {
+                    leases.finished(campaign, md5);
+                    refreshState(campaign);
+                    eventPublisher.publishEvent(new ExportFinishedEvent(campaign, md5));
+                    recordHistory(campaign, md5);
+                }
             }
+            completed = true;
+        } catch (CancellationException e) {
+            log.info("cancelled export for campaign {}", campaign);
         } catch (IOException | SQLException | NoSuchAlgorithmException e) {
             log.error("failed to generate mobile db for campaign " + campaign, e);
-            eventPublisher.publishEvent(new ExportFinishedEvent(campaign));
+        } finally {
+            renewal.cancel(false);
+            if (!completed) {
+                deleteScratchFiles(getOutput(campaign));
+            }
+            leases.release(campaign);
+            refreshState(campaign);
+            if (!completed) {
+                eventPublisher.publishEvent(new ExportFinishedEvent(campaign));
+            }
         }
     }
 
-    private void runExport(Campaign campaign) throws IOException, SQLException, NoSuchAlgorithmException {
+    /**
+     * Removes the partial output of an export that did not complete.
+     */
+    private void deleteScratchFiles(File dest) {
+        for (File output : new File[]{dest, getMetadataFile(dest), getGzipFile(dest), getZipFile(dest)}) {
+            File scratch = getScratchFile(output);
+            try {
+                Files.deleteIfExists(scratch.toPath());
+            } catch (IOException e) {
+                log.warn("failed to delete scratch file {}", scratch, e);
+            }
+        }
+    }
+
+    private void recordHistory(String campaign, String md5) {
+        try {
+            history.record(getOutput(campaign), md5);
+        } catch (IOException | NoSuchAlgorithmException e) {
+            log.warn("failed to update version history for campaign {}", campaign, e);
+        }
+    }
+
+    /**
+     * Exports a campaign's database, latching the new database and sync metadata once complete.
+     *
+     * @return the content hash of the new database, or null if the database was not replaced
+     */
+    private String runExport(Campaign campaign, boolean skipUnchanged) throws IOException, SQLException, NoSuchAlgorithmException {
 
         long start = System.currentTimeMillis();
 
         String campaignUuid = campaign.getUuid();
 
-        int tablesProcessed = 0;
-
-        JsConfig config = campaignTasks.get(campaignUuid).getConfig();
+        SyncTask task = campaignTasks.get(campaignUuid);
+        JsConfig config = task.getConfig();
         File dest = getOutput(campaignUuid);
         DatabaseExport export = config.getDatabaseExport();
 
         Map<String, String> tableQueries = export.exportQueries();
 
-        eventPublisher.publishEvent(new ExportStartedEvent(campaignUuid));
+        File scratch = getScratchFile(dest);
+        File metaDest = getMetadataFile(dest);
+        File metaScratch = getScratchFile(metaDest);
+        File gzipDest = getGzipFile(dest);
+        File gzipScratch = getScratchFile(gzipDest);
+        File zipDest = getZipFile(dest);
+        File zipScratch = getScratchFile(zipDest);
+        File stateDest = getStateFile(dest);
+
+        Properties state = readState(stateDest);
+
+        // skipping keeps the existing file, metadata and content hash, so clients keep getting not modified responses
+        String fingerprint = getFingerprint(export);
+        if (skipUnchanged && task.isExported() && dest.exists() && metaDest.exists()
+                && fingerprint.equals(state.getProperty(FINGERPRINT))) {
+            log.info("skipped export of {} for campaign '{}', unchanged since previous export",
+                    dest.getName(), campaign.getName());
+            return null;
+        }
 
-        File scratch = new File(dest.getParentFile(), dest.getName() + ".tmp");
-        File metaDest = new File(dest.getParentFile(), dest.getName() + ".jrsmd");
-        File metaScratch = new File(dest.getParentFile(), metaDest.getName() + ".tmp");
+        eventPublisher.publishEvent(new ExportStartedEvent(campaignUuid));
 
         eventPublisher.publishEvent(new ExportStatusEvent(campaignUuid));
 
-        // run each of the export's init scripts in order
-        for (String initScriptName : export.initScripts()) {
-            log.debug("executing init script {} on {}", initScriptName, scratch);
-            exporter.scriptTarget(config.getResource(initScriptName), scratch);
+        // changes from transactions still running at this point are picked up again by the next export
+        long changePosition = getChangePosition();
+
+        AtomicInteger tablesProcessed = new AtomicInteger();
+        Exporter.Listener listener = (table, rows, millis) -> {
+            log.info("exported {} rows to table {} in {} ({} rows/s)", rows, table, describeDuration(millis),
+                    millis > 0 ? rows * 1000 / millis : rows);
+            int processed = tablesProcessed.incrementAndGet();
+            eventPublisher.publishEvent(new ExportStatusEvent(campaignUuid, processed,
+                    (int) ((processed / (float) tableQueries.size()) * 100)));
+            checkCancelled(campaignUuid);
+        };
+
+        int incrementalExports = Integer.parseInt(state.getProperty(INCREMENTAL_EXPORTS, "0"));
+        boolean incremental = false;
+        if (task.isExported() && canExportIncrementally(export, dest, state)) {
+            try {
+                Files.copy(dest.toPath(), scratch.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                exportChanges(export, Long.parseLong(state.getProperty(CHANGE_POSITION)), scratch, listener);
+                runPostScripts(config, export, scratch);
+                incremental = true;
+            } catch (IOException | SQLException | DataAccessException e) {
+                log.warn("incremental export failed for campaign '{}', falling back to full export", campaign.getName(), e);
+                tablesProcessed.set(0);
+            }
         }
 
-        // export each of the queries as a table in the target database file
-        for (Map.Entry<String, String> e : tableQueries.entrySet()) {
-            log.debug("executing query '{}' on {}", e.getValue(), scratch);
-            exporter.export(e.getValue(), e.getKey(), scratch);
-            tablesProcessed += 1;
-            eventPublisher.publishEvent(new ExportStatusEvent(campaignUuid, tablesProcessed,
-                    (int) ((tablesProcessed / (float) tableQueries.size()) * 100)));
-        }
+        if (incremental) {
+            incrementalExports++;
+        } else {
+            Files.deleteIfExists(scratch.toPath());
+            incrementalExports = 0;
 
-        // run each of the export's post scripts in order
-        for (String postScriptName : export.postScripts()) {
-            log.debug("executing post script {} on {}", postScriptName, scratch);
-            exporter.scriptTarget(config.getResource(postScriptName), scratch);
+            // run each of the export's init scripts in order
+            for (String initScriptName : export.initScripts()) {
+                log.debug("executing init script {} on {}", initScriptName, scratch);
+                exporter.scriptTarget(config.getResource(initScriptName), scratch);
+            }
+
+            // export each of the queries as a table in the target database file
+            exporter.exportAll(tableQueries, scratch, listener);
+
+            runPostScripts(config, export, scratch);
         }
 
+        checkCancelled(campaignUuid);
+
         log.debug("generating sync metadata");
         try (InputStream in = new FileInputStream(scratch)) {
             Metadata.generate("", DEFAULT_SYNC_BLOCK_SIZE, MD5, MD5, in, metaScratch);
@@ -210,30 +444,226 @@ public class SyncServiceImpl implements SyncService {
             md5 = encodeHexString(Metadata.read(metaStream).getFileHash());
         }
 
+        log.debug("compressing mobile db");
+        CompressedVariants.create(scratch, DOWNLOAD_NAME, gzipScratch, zipScratch);
+
+        checkCancelled(campaignUuid);
+
         // Complete the process, latching the new file contents and sync metadata
-        if (scratch.renameTo(dest) && metaScratch.renameTo(metaDest)) {
-            log.info("exported {} for campaign '{}' with signature: {} in {}",
-                    dest.getName(), campaign.getName(), md5, describeDuration(System.currentTimeMillis() - start));
-            eventPublisher.publishEvent(new ExportFinishedEvent(campaignUuid, md5));
+        // compressed variants go first, serving them with the previous content hash only causes a redundant download
+        if (gzipScratch.renameTo(gzipDest) && zipScratch.renameTo(zipDest)
+                && scratch.renameTo(dest) && metaScratch.renameTo(metaDest)) {
+            state.setProperty(CHANGE_POSITION, Long.toString(changePosition));
+            state.setProperty(FINGERPRINT, fingerprint);
+            state.setProperty(EXPORTED, Long.toString(start));
+            state.setProperty(INCREMENTAL_EXPORTS, Integer.toString(incrementalExports));
+            writeState(state, stateDest);
+            task.setExported(true);
+            pruneChanges();
+            log.info("exported {} for campaign '{}' ({}) with signature: {} in {}",
+                    dest.getName(), campaign.getName(), incremental ? "incremental" : "full", md5,
+                    describeDuration(System.currentTimeMillis() - start));
+            return md5;
         } else {
             eventPublisher.publishEvent(new ExportFinishedEvent(campaignUuid));
+            return null;
+        }
+    }
+
+    /**
+     * Runs each of the export's post scripts in order.
+     */
+    private void runPostScripts(JsConfig config, DatabaseExport export, File target) throws IOException, SQLException {
+        for (String postScriptName : export.postScripts()) {
+            log.debug("executing post script {} on {}", postScriptName, target);
+            exporter.scriptTarget(config.getResource(postScriptName), target);
         }
     }
 
+    /**
+     * Determines whether the previous export can be updated in place of a full export. This requires the export to
+     * define keys and change queries for all of its tables, changes to be tracked for every table they read, a complete
+     * change history since the previous export, including changes being recorded since before it, and fewer incremental
+     * exports since the last full export than the configured compaction interval.
+     */
+    private boolean canExportIncrementally(DatabaseExport export, File dest, Properties state) {
+        if (!incrementalEnabled || !dest.exists() || state.getProperty(CHANGE_POSITION) == null) {
+            return false;
+        }
+        Map<String, String> keys = export.exportKeys(), changeQueries = export.changeQueries();
+        if (keys == null || changeQueries == null || !keys.keySet().containsAll(export.exportQueries().keySet())
+                || !changeQueries.keySet().containsAll(export.exportQueries().keySet())) {
+            return false;
+        }
+        try {
+            long position = Long.parseLong(state.getProperty(CHANGE_POSITION));
+            if (!changeTracking.getTrackedSince().filter(since -> since <= position).isPresent()) {
+                log.info("changes weren't recorded since the previous export, using full export");
+                return false;
+            }
+            if (!changesCovered(export)) {
+                return false;
+            }
+        } catch (DataAccessException e) {
+            log.warn("failed to determine tables read by exports, using full export", e);
+            return false;
+        }
+        // changes are pruned by age, half the retention period leaves ample room for long-running transactions
+        long exported = Long.parseLong(state.getProperty(EXPORTED, "0"));
+        boolean historyAvailable = System.currentTimeMillis() - exported < changeRetention.toMillis() / 2;
+        int incrementalExports = Integer.parseInt(state.getProperty(INCREMENTAL_EXPORTS, "0"));
+        return historyAvailable && incrementalExports < fullExportInterval;
+    }
+
+    /**
+     * Determines whether the change queries account for changes to every table the export queries read. Without
+     * declared change sources, a change query is only assumed to cover the table its export query reads, so exports
+     * joining tables are never updated incrementally.
+     */
+    private boolean changesCovered(DatabaseExport export) {
+        Set<String> tracked = dependencies.getTrackedTables();
+        Map<String, List<String>> changeSources = export.changeSources();
+        for (Map.Entry<String, String> e : export.exportQueries().entrySet()) {
+            String table = e.getKey();
+            Optional<Set<String>> read = dependencies.getTables(e.getValue());
+            boolean covered;
+            if (!read.isPresent()) {
+                covered = false;
+            } else if (changeSources == null || changeSources.get(table) == null) {
+                covered = read.get().size() == 1 && tracked.containsAll(read.get());
+            } else {
+                Set<String> sources = new HashSet<>();
+                for (Object source : changeSources.get(table)) {
+                    sources.add(String.valueOf(source));
+                }
+                sources.retainAll(tracked);
+                covered = sources.containsAll(read.get());
+            }
+            if (!covered) {
+                log.info("changes to table {} are not fully tracked, using full export", table);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Updates a copy of the previous export with the rows changed since it was generated.
+     */
+    private void exportChanges(DatabaseExport export, long lastPosition, File target, Exporter.Listener listener)
+            throws IOException, SQLException {
+        Map<String, String> keys = export.exportKeys(), changeQueries = export.changeQueries();
+        for (Map.Entry<String, String> e : export.exportQueries().entrySet()) {
+            String table = e.getKey();
+            long start = System.currentTimeMillis();
+            List<Object> changed = new ArrayList<>(new LinkedHashSet<>(
+                    jdbcTemplate.queryForList(changeQueries.get(table), Object.class, lastPosition)));
+            long rows = exporter.exportChanges(e.getValue(), table, keys.get(table), changed, target);
+            log.debug("updated {} keys of table {}", changed.size(), table);
+            listener.tableExported(table, rows, System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * Gets a value that changes when the data behind an export changes. Campaigns can supply their own query, the
+     * default is based on modification counts for the tables the export queries read. When those can't be determined,
+     * counts for the entire schema are used, except for tables the server writes to regardless of data changes.
+     */
+    private String getFingerprint(DatabaseExport export) {
+        if (export.fingerprintQuery() != null) {
+            return String.valueOf(jdbcTemplate.queryForObject(export.fingerprintQuery(), String.class));
+        }
+        Optional<Set<String>> tables;
+        try {
+            tables = dependencies.getTables(export.exportQueries().values());
+        } catch (DataAccessException e) {
+            log.warn("failed to determine tables read by exports, using schema modification counts", e);
+            tables = Optional.empty();
+        }
+        if (tables.isPresent() && !tables.get().isEmpty()) {
+            String placeholders = String.join(", ", Collections.nCopies(tables.get().size(), "?"));
+            return String.valueOf(jdbcTemplate.queryForObject(FINGERPRINT_QUERY + " and relname in (" + placeholders
+                    + ")", String.class, tables.get().toArray()));
+        }
+        return String.valueOf(jdbcTemplate.queryForObject(FINGERPRINT_QUERY + " and relname not in ("
+                + BOOKKEEPING_TABLES + ")", String.class));
+    }
+
+    /**
+     * Gets the current change log position: changes at or after it may not be visible yet.
+     */
+    private long getChangePosition() {
+        return jdbcTemplate.queryForObject("select txid_snapshot_xmin(txid_current_snapshot())", Long.class);
+    }
+
+    private void pruneChanges() {
+        int pruned = jdbcTemplate.update("delete from sync_change where changed < ?",
+                new Timestamp(System.currentTimeMillis() - changeRetention.toMillis()));
+        if (pruned > 0) {
+            log.info("pruned {} changes older than {}", pruned, changeRetention);
+        }
+    }
+
+    private static File getScratchFile(File dest) {
+        return new File(dest.getParentFile(), dest.getName() + ".tmp");
+    }
+
+    private static File getMetadataFile(File dest) {
+        return new File(dest.getParentFile(), dest.getName() + ".jrsmd");
+    }
+
+    private static File getGzipFile(File dest) {
+        return new File(dest.getParentFile(), dest.getName() + "." + CompressedVariants.GZIP_EXT);
+    }
+
+    private static File getZipFile(File dest) {
+        return new File(dest.getParentFile(), dest.getName() + "." + CompressedVariants.ZIP_EXT);
+    }
+
+    private static File getStateFile(File dest) {
+        return new File(dest.getParentFile(), dest.getName() + ".state");
+    }
+
+    private static Properties readState(File stateFile) throws IOException {
+        Properties state = new Properties();
+        if (stateFile.exists()) {
+            try (InputStream in = new FileInputStream(stateFile)) {
+                state.load(in);
+            }
+        }
+        return state;
+    }
+
+    private static void writeState(Properties state, File stateFile) throws IOException {
+        try (OutputStream out = new FileOutputStream(stateFile)) {
+            state.store(out, "mobile db export state");
+        }
+    }
+
+    /**
+     * A campaign's locally scheduled export. Its status, progress and content hash are based on the campaign's state in
+     * the export lease table, so they are consistent across nodes regardless of which node ran the export. The state
+     * is kept in memory, so reporting them doesn't query the database. It is refreshed when this node updates it, and
+     * periodically for updates from other nodes.
+     */
     static class SyncTask implements SyncService.Task {
 
         private final JsConfig config;
         private final String campaignUuid, campaignName;
         private final ScheduledFuture<?> taskFuture;
-        private Date started, finished;
-        private int itemCount;
-        private String descriptor;
+        private final ExportJob job;
+        private final ExportLeases leases;
+        private volatile ExportLeases.ExportState state;
+        private boolean exported;
 
-        SyncTask(JsConfig config, String campaignUuid, String campaignName, ScheduledFuture<?> future) {
+        SyncTask(JsConfig config, String campaignUuid, String campaignName, ScheduledFuture<?> future, ExportJob job,
+                 ExportLeases leases) {
             this.config = config;
             this.campaignName = campaignName;
             this.campaignUuid = campaignUuid;
             this.taskFuture = future;
+            this.job = job;
+            this.leases = leases;
         }
 
         JsConfig getConfig() {
@@ -256,23 +686,29 @@ public class SyncServiceImpl implements SyncService {
             taskFuture.cancel(false);
         }
 
-        void setStarted(Date started) {
-            this.started = started;
-        }
-
-        void setFinished(Date finished) {
-            this.finished = finished;
+        boolean isCancelled() {
+            return taskFuture.isCancelled();
         }
 
-        void setItemCount(int itemCount) {
-            this.itemCount = itemCount;
+        void refreshState() {
+            try {
+                state = leases.get(campaignUuid).orElse(null);
+            } catch (DataAccessException e) {
+                log.warn("failed to refresh export state for campaign {}", campaignUuid, e);
+            }
         }
 
         @Override
         public Status getStatus() {
-            if (started != null && finished == null) {
+            ExportJob.State jobState = job.getState();
+            Optional<ExportLeases.ExportState> state = Optional.ofNullable(this.state);
+            if (jobState == ExportJob.State.COALESCED) {
+                return Status.COALESCED;
+            } else if (jobState == ExportJob.State.RUNNING || state.map(ExportLeases.ExportState::isRunning).orElse(false)) {
                 return Status.RUNNING;
-            } else if (taskFuture.isCancelled()) {
+            } else if (jobState == ExportJob.State.QUEUED) {
+                return Status.QUEUED;
+            } else if (taskFuture.isCancelled() || state.map(ExportLeases.ExportState::isPaused).orElse(false)) {
                 return Status.PAUSED;
             } else {
                 return Status.SCHEDULED;
@@ -281,15 +717,24 @@ public class SyncServiceImpl implements SyncService {
 
         @Override
         public int getPercentComplete() {
+            int itemCount = Optional.ofNullable(state).map(ExportLeases.ExportState::getProgress).orElse(0);
             return (int) ((itemCount / (float) config.getDatabaseExport().exportQueries().size()) * 100);
         }
 
         public String getContentHash() {
-            return descriptor;
+            return Optional.ofNullable(state).map(ExportLeases.ExportState::getContentHash).orElse(null);
+        }
+
+        /**
+         * Whether an export completed since the campaign was loaded. Until then, exports are neither skipped nor
+         * incremental, since the export definition may have changed.
+         */
+        boolean isExported() {
+            return exported;
         }
 
-        void setDescriptor(String descriptor) {
-            this.descriptor = descriptor;
+        void setExported(boolean exported) {
+            this.exported = exported;
         }
     }
 }
@@ -0,0 +1,175 @@
+package com.github.cimsbioko.server.service.impl.sync;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static com.github.cimsbioko.server.util.TimeUtil.describeDuration;
+
+/**
+ * Retains recent versions of exported databases, keyed by content hash, along with patches from each retained version
+ * to the latest one. Clients holding a retained version can then download a small patch instead of running block
+ * matching against the sync metadata. Retention is bounded by both a number of versions and a disk budget.
+ */
+public class VersionHistory {
+
+    private static final Logger log = LoggerFactory.getLogger(VersionHistory.class);
+
+    private static final String VERSION_EXT = "db";
+    private static final String TMP_EXT = "tmp";
+    private static final String HASH_PATTERN = "[0-9a-fA-F]+";
+
+    private final int maxVersions;
+    private final long budgetBytes;
+    private final int blockSize;
+
+    /**
+     * @param maxVersions the number of versions to retain per campaign, including the latest, less than two disables
+     *                    history
+     * @param budgetBytes the disk space available to each campaign's history
+     * @param blockSize   the patch block size, matching the page size of exported databases works best
+     */
+    public VersionHistory(int maxVersions, long budgetBytes, int blockSize) {
+        this.maxVersions = maxVersions;
+        this.budgetBytes = budgetBytes;
+        this.blockSize = blockSize;
+    }
+
+    public boolean isEnabled() {
+        return maxVersions > 1;
+    }
+
+    /**
+     * The directory holding history for an exported database. It is kept beside the database so patches can be
+     * served the same way as the database itself.
+     */
+    static File getHistoryDir(File db) {
+        return new File(db.getParentFile(), db.getName() + ".history");
+    }
+
+    static String getPatchName(String fromHash, String toHash) {
+        return String.format("%s-%s.%s", fromHash, toHash, BlockPatch.FILE_EXT);
+    }
+
+    /**
+     * Finds a patch from a retained version to the given version.
+     *
+     * @return the patch file, if one exists
+     */
+    public Optional<File> getPatch(File db, String fromHash, String toHash) {
+        if (!fromHash.matches(HASH_PATTERN)) {
+            return Optional.empty();
+        }
+        File patch = new File(getHistoryDir(db), getPatchName(fromHash, toHash));
+        return patch.exists() ? Optional.of(patch) : Optional.empty();
+    }
+
+    /**
+     * Records a new latest version of the database, generates patches from retained versions to it and enforces
+     * retention limits. This reads each retained version, so it should not run on the request path.
+     */
+    public void record(File db, String hash) throws IOException, NoSuchAlgorithmException {
+        if (!isEnabled()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        File dir = getHistoryDir(db);
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("failed to create history directory " + dir);
+        }
+
+        File latest = new File(dir, hash + "." + VERSION_EXT);
+        if (!latest.exists()) {
+            retain(db, latest);
+        }
+        if (!latest.setLastModified(System.currentTimeMillis())) {
+            log.debug("failed to update modification time of {}", latest);
+        }
+
+        List<File> versions = listVersions(dir, latest);
+        enforceLimits(dir, versions, hash, false);
+
+        int patches = 0;
+        for (File version : versions.subList(1, versions.size())) {
+            String fromHash = getHash(version);
+            File patch = new File(dir, getPatchName(fromHash, hash));
+            if (!patch.exists()) {
+                File scratch = new File(dir, patch.getName() + "." + TMP_EXT);
+                BlockPatch.create(version, latest, hash, blockSize, scratch);
+                Files.move(scratch.toPath(), patch.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                patches++;
+            }
+        }
+
+        // patches to previous versions are superseded, clients are only ever directed to the latest
+        for (File file : listFiles(dir, "." + BlockPatch.FILE_EXT)) {
+            if (!file.getName().endsWith("-" + hash + "." + BlockPatch.FILE_EXT)) {
+                Files.delete(file.toPath());
+            }
+        }
+
+        enforceLimits(dir, versions, hash, true);
+
+        log.info("generated {} patches for {} in {}", patches, db.getName(), describeDuration(System.currentTimeMillis() - start));
+    }
+
+    /**
+     * Retains the content of the database. Exports replace the database by renaming, so a hard link keeps the content
+     * without copying it. A copy is used where links are unsupported.
+     */
+    private static void retain(File db, File version) throws IOException {
+        try {
+            Files.createLink(version.toPath(), db.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(db.toPath(), version.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Removes the oldest versions, along with their patches, until the history fits within the version limit and,
+     * optionally, the disk budget. The latest version is always kept. Removed versions are removed from the list.
+     */
+    private void enforceLimits(File dir, List<File> versions, String latestHash, boolean budget) throws IOException {
+        long used = Arrays.stream(listFiles(dir, "")).mapToLong(File::length).sum();
+        for (int i = versions.size() - 1; i > 0 && (i >= maxVersions || budget && used > budgetBytes); i--) {
+            File version = versions.remove(i);
+            File patch = new File(dir, getPatchName(getHash(version), latestHash));
+            used -= version.length() + patch.length();
+            Files.deleteIfExists(patch.toPath());
+            Files.delete(version.toPath());
+        }
+    }
+
+    /**
+     * Lists retained versions, the latest first, followed by the others from most to least recent.
+     */
+    private static List<File> listVersions(File dir, File latest) {
+        List<File> versions = Arrays.stream(listFiles(dir, "." + VERSION_EXT))
+                .filter(f -> !f.equals(latest))
+                .sorted(Comparator.comparingLong(File::lastModified).reversed())
+                .collect(Collectors.toCollection(ArrayList::new));
+        versions.add(0, latest);
+        return versions;
+    }
+
+    private static File[] listFiles(File dir, String suffix) {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(suffix));
+        return files != null ? files : new File[0];
+    }
+
+    private static String getHash(File version) {
+        String name = version.getName();
+        return name.substring(0, name.lastIndexOf('.'));
+    }
+}
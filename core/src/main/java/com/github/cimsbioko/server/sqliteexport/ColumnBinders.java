@@ -0,0 +1,324 @@
+package com.github.cimsbioko.server.sqliteexport;
+
+import java.sql.*;
+
+/**
+ * Typed column binders, used to copy values without boxing every value and without going through the drivers'
+ * generic object conversions. Each binder stores exactly what binding the result of getObject would, so switching
+ * from generic to typed binding does not change the exported data.
+ */
+final class ColumnBinders {
+
+    /**
+     * Copies a single column value from the current record of a source query to a target insert statement.
+     */
+    interface ColumnBinder {
+
+        void bind(ResultSet source, PreparedStatement target, int column) throws SQLException;
+
+        /**
+         * Creates a buffer holding this column's values for up to the given number of records.
+         */
+        ColumnBuffer newBuffer(int capacity);
+    }
+
+    /**
+     * Holds a column's values for a number of source records, so that records can be read and written on different
+     * threads. Primitive values are held in primitive arrays, so buffering them does not box them either.
+     */
+    interface ColumnBuffer {
+
+        void read(ResultSet source, int column, int row) throws SQLException;
+
+        void write(PreparedStatement target, int column, int row) throws SQLException;
+    }
+
+    @FunctionalInterface
+    interface Getter<T> {
+        T get(ResultSet source, int column) throws SQLException;
+    }
+
+    @FunctionalInterface
+    interface Setter<T> {
+        void set(PreparedStatement target, int column, T value) throws SQLException;
+    }
+
+    static final ColumnBinder LONG = new LongBinder();
+
+    static final ColumnBinder FLOAT = new FloatBinder();
+
+    static final ColumnBinder DOUBLE = new DoubleBinder();
+
+    static final ColumnBinder BOOLEAN = new BooleanBinder();
+
+    static final ColumnBinder STRING = new ReferenceBinder<>(ResultSet::getString, PreparedStatement::setString);
+
+    static final ColumnBinder DECIMAL = new ReferenceBinder<>(ResultSet::getBigDecimal, PreparedStatement::setBigDecimal);
+
+    static final ColumnBinder BYTES = new ReferenceBinder<>(ResultSet::getBytes, PreparedStatement::setBytes);
+
+    static final ColumnBinder DATE = new ReferenceBinder<>(ResultSet::getDate, PreparedStatement::setDate);
+
+    static final ColumnBinder TIMESTAMP = new ReferenceBinder<>(ResultSet::getTimestamp, PreparedStatement::setTimestamp);
+
+    static final ColumnBinder OBJECT = new ReferenceBinder<>(ResultSet::getObject, PreparedStatement::setObject);
+
+    private ColumnBinders() {
+    }
+
+    /**
+     * Selects the binder for a column based on its JDBC type, falling back on generic binding for types without a
+     * typed equivalent, such as json, uuid and geometry columns.
+     *
+     * @param sqlType the column type, as defined in {@link Types}
+     * @return the binder to use for columns of the given type
+     */
+    static ColumnBinder forType(int sqlType) {
+        switch (sqlType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+                return LONG;
+            case Types.REAL:
+                return FLOAT;
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return DOUBLE;
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return BOOLEAN;
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGNVARCHAR:
+                return STRING;
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                return DECIMAL;
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+                return BYTES;
+            case Types.DATE:
+                return DATE;
+            case Types.TIMESTAMP:
+            case Types.TIMESTAMP_WITH_TIMEZONE:
+                return TIMESTAMP;
+            default:
+                return OBJECT;
+        }
+    }
+
+    /**
+     * Selects the binder for a column of a query. Bit columns are only bound as booleans when they hold a single bit,
+     * since postgresql reports bit strings, such as bit(8), with the same type.
+     */
+    static ColumnBinder forColumn(ResultSetMetaData md, int column) throws SQLException {
+        int sqlType = md.getColumnType(column);
+        if (sqlType == Types.BIT && md.getPrecision(column) > 1) {
+            return OBJECT;
+        }
+        return forType(sqlType);
+    }
+
+    /**
+     * Selects binders for all columns of a query.
+     */
+    static ColumnBinder[] forColumns(ResultSetMetaData md) throws SQLException {
+        ColumnBinder[] binders = new ColumnBinder[md.getColumnCount()];
+        for (int c = 1; c <= binders.length; c++) {
+            binders[c - 1] = forColumn(md, c);
+        }
+        return binders;
+    }
+
+    /**
+     * Creates buffers for the columns of a query, given the binders selected for its columns.
+     */
+    static ColumnBuffer[] newBuffers(ColumnBinder[] binders, int capacity) {
+        ColumnBuffer[] buffers = new ColumnBuffer[binders.length];
+        for (int c = 0; c < binders.length; c++) {
+            buffers[c] = binders[c].newBuffer(capacity);
+        }
+        return buffers;
+    }
+
+    private static class LongBinder implements ColumnBinder {
+
+        @Override
+        public void bind(ResultSet source, PreparedStatement target, int column) throws SQLException {
+            long value = source.getLong(column);
+            if (source.wasNull()) {
+                target.setNull(column, Types.BIGINT);
+            } else {
+                target.setLong(column, value);
+            }
+        }
+
+        @Override
+        public ColumnBuffer newBuffer(int capacity) {
+            long[] values = new long[capacity];
+            boolean[] nulls = new boolean[capacity];
+            return new ColumnBuffer() {
+                @Override
+                public void read(ResultSet source, int column, int row) throws SQLException {
+                    values[row] = source.getLong(column);
+                    nulls[row] = source.wasNull();
+                }
+
+                @Override
+                public void write(PreparedStatement target, int column, int row) throws SQLException {
+                    if (nulls[row]) {
+                        target.setNull(column, Types.BIGINT);
+                    } else {
+                        target.setLong(column, values[row]);
+                    }
+                }
+            };
+        }
+    }
+
+    private static class FloatBinder implements ColumnBinder {
+
+        @Override
+        public void bind(ResultSet source, PreparedStatement target, int column) throws SQLException {
+            float value = source.getFloat(column);
+            if (source.wasNull()) {
+                target.setNull(column, Types.REAL);
+            } else {
+                target.setFloat(column, value);
+            }
+        }
+
+        @Override
+        public ColumnBuffer newBuffer(int capacity) {
+            float[] values = new float[capacity];
+            boolean[] nulls = new boolean[capacity];
+            return new ColumnBuffer() {
+                @Override
+                public void read(ResultSet source, int column, int row) throws SQLException {
+                    values[row] = source.getFloat(column);
+                    nulls[row] = source.wasNull();
+                }
+
+                @Override
+                public void write(PreparedStatement target, int column, int row) throws SQLException {
+                    if (nulls[row]) {
+                        target.setNull(column, Types.REAL);
+                    } else {
+                        target.setFloat(column, values[row]);
+                    }
+                }
+            };
+        }
+    }
+
+    private static class DoubleBinder implements ColumnBinder {
+
+        @Override
+        public void bind(ResultSet source, PreparedStatement target, int column) throws SQLException {
+            double value = source.getDouble(column);
+            if (source.wasNull()) {
+                target.setNull(column, Types.DOUBLE);
+            } else {
+                target.setDouble(column, value);
+            }
+        }
+
+        @Override
+        public ColumnBuffer newBuffer(int capacity) {
+            double[] values = new double[capacity];
+            boolean[] nulls = new boolean[capacity];
+            return new ColumnBuffer() {
+                @Override
+                public void read(ResultSet source, int column, int row) throws SQLException {
+                    values[row] = source.getDouble(column);
+                    nulls[row] = source.wasNull();
+                }
+
+                @Override
+                public void write(PreparedStatement target, int column, int row) throws SQLException {
+                    if (nulls[row]) {
+                        target.setNull(column, Types.DOUBLE);
+                    } else {
+                        target.setDouble(column, values[row]);
+                    }
+                }
+            };
+        }
+    }
+
+    private static class BooleanBinder implements ColumnBinder {
+
+        @Override
+        public void bind(ResultSet source, PreparedStatement target, int column) throws SQLException {
+            boolean value = source.getBoolean(column);
+            if (source.wasNull()) {
+                target.setNull(column, Types.BOOLEAN);
+            } else {
+                target.setBoolean(column, value);
+            }
+        }
+
+        @Override
+        public ColumnBuffer newBuffer(int capacity) {
+            boolean[] values = new boolean[capacity];
+            boolean[] nulls = new boolean[capacity];
+            return new ColumnBuffer() {
+                @Override
+                public void read(ResultSet source, int column, int row) throws SQLException {
+                    values[row] = source.getBoolean(column);
+                    nulls[row] = source.wasNull();
+                }
+
+                @Override
+                public void write(PreparedStatement target, int column, int row) throws SQLException {
+                    if (nulls[row]) {
+                        target.setNull(column, Types.BOOLEAN);
+                    } else {
+                        target.setBoolean(column, values[row]);
+                    }
+                }
+            };
+        }
+    }
+
+    /**
+     * Binds values that are objects to begin with, such as strings and timestamps, which the drivers handle nulls for.
+     */
+    private static class ReferenceBinder<T> implements ColumnBinder {
+
+        private final Getter<T> getter;
+        private final Setter<T> setter;
+
+        ReferenceBinder(Getter<T> getter, Setter<T> setter) {
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        @Override
+        public void bind(ResultSet source, PreparedStatement target, int column) throws SQLException {
+            setter.set(target, column, getter.get(source, column));
+        }
+
+        @Override
+        public ColumnBuffer newBuffer(int capacity) {
+            Object[] values = new Object[capacity];
+            return new ColumnBuffer() {
+                @Override
+                public void read(ResultSet source, int column, int row) throws SQLException {
+                    values[row] = getter.get(source, column);
+                }
+
+                @Override
+                @SuppressWarnings("unchecked")
+                public void write(PreparedStatement target, int column, int row) throws SQLException {
+                    setter.set(target, column, (T) values[row]);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.github.cimsbioko.server.sqliteexport;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static java.sql.ResultSet.CONCUR_READ_ONLY;
+import static java.sql.ResultSet.TYPE_FORWARD_ONLY;
+
+/**
+ * A {@link Source} implementation that streams query results using server-side cursors. The postgresql driver only
+ * honors the fetch size when the connection is not in auto-commit mode and results are forward-only. Otherwise, it
+ * reads entire result sets into memory. Using this source, at most fetch size rows per query are held on the heap,
+ * regardless of how large the exported tables grow. The bound is a number of rows, not bytes, so the memory used
+ * depends on the width of the exported rows: the fetch size should be chosen with the widest export query in mind.
+ */
+public class CursorSource implements Source {
+
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
+    private final DataSource ds;
+    private final int fetchSize;
+
+    public CursorSource(DataSource ds) {
+        this(ds, DEFAULT_FETCH_SIZE);
+    }
+
+    public CursorSource(DataSource ds, int fetchSize) {
+        this.ds = ds;
+        this.fetchSize = fetchSize > 0 ? fetchSize : DEFAULT_FETCH_SIZE;
+    }
+
+    @Override
+    public Connection createConnection() throws SQLException {
+        Connection c = ds.getConnection();
+        try {
+            // pooled connections are reset (and rolled back) when returned to the pool
+            c.setAutoCommit(false);
+        } catch (SQLException e) {
+            c.close();
+            throw e;
+        }
+        return c;
+    }
+
+    @Override
+    public Statement createStatement(Connection c) throws SQLException {
+        Statement stmt = c.createStatement(TYPE_FORWARD_ONLY, CONCUR_READ_ONLY);
+        stmt.setFetchSize(fetchSize);
+        return stmt;
+    }
+}
@@ -2,40 +2,193 @@ package com.github.cimsbioko.server.sqliteexport;
 
 import java.io.*;
 import java.sql.*;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.nCopies;
 
 public class Exporter {
 
+    /**
+     * Receives notification as each table of a multi-table export completes.
+     */
+    public interface Listener {
+        void tableExported(String table, long rows, long millis);
+    }
+
+    private static final int CHANGE_CHUNK_SIZE = 500;
+
     private final Source src;
     private final Target dst;
     private final MapperFactory mapperFactory;
+    private final int batchSize;
+    private final int commitSize;
 
 
     public Exporter(Source source, Target target, MapperFactory mapperFactory) {
+        this(source, target, mapperFactory, 1, 0);
+    }
+
+    /**
+     * Creates an exporter. When batch size is greater than one, the exporter operates in bulk load mode: target
+     * connections are tuned for bulk loading and rows are inserted using JDBC batches.
+     *
+     * @param batchSize  the number of rows to insert per JDBC batch, one or less disables bulk load mode
+     * @param commitSize the number of rows to insert per transaction, zero or less commits once per table
+     */
+    public Exporter(Source source, Target target, MapperFactory mapperFactory, int batchSize, int commitSize) {
         this.src = source;
         this.dst = target;
         this.mapperFactory = mapperFactory;
+        this.batchSize = Math.max(batchSize, 1);
+        this.commitSize = Math.max(commitSize, 0);
+    }
+
+    boolean isBulkLoad() {
+        return batchSize > 1;
+    }
+
+    int getBatchSize() {
+        return batchSize;
     }
 
-    public void export(String query, String table, File target) throws SQLException, IOException {
+    int getCommitSize() {
+        return commitSize;
+    }
+
+    Source getSource() {
+        return src;
+    }
+
+    MapperFactory getMapperFactory() {
+        return mapperFactory;
+    }
+
+    Connection createTargetConnection(File target, boolean autoCommit) throws IOException, SQLException {
+        return isBulkLoad() ? dst.createBulkConnection(target, autoCommit) : dst.createConnection(target, autoCommit);
+    }
+
+    /**
+     * Exports the results of the given query to a table in the target database.
+     *
+     * @return the number of rows exported
+     */
+    public long export(String query, String table, File target) throws SQLException, IOException {
         try (Connection src = this.src.createConnection(); Statement s = this.src.createStatement(src);
-             Connection dst = this.dst.createConnection(target, false);
+             Connection dst = createTargetConnection(target, false);
              ResultSet rs = s.executeQuery(query)) {
             ResultSetMetaData md = rs.getMetaData();
             Mapper mapper = mapperFactory.createMapper(md, table, dst);
             try (PreparedStatement d = dst.prepareStatement(mapper.getInsertDml())) {
-                while (rs.next()) {
-                    mapper.bind(rs, d);
-                    d.executeUpdate();
+                return isBulkLoad() ? loadBatched(rs, mapper, d, dst) : load(rs, mapper, d, dst);
+            }
+        }
+    }
+
+    /**
+     * Exports the results of each query to its table in the target database, in iteration order.
+     *
+     * @param tableQueries the queries to export, keyed by target table name
+     * @param target       the target database file
+     * @param listener     notified as each table completes
+     */
+    public void exportAll(Map<String, String> tableQueries, File target, Listener listener) throws SQLException, IOException {
+        for (Map.Entry<String, String> e : tableQueries.entrySet()) {
+            long start = System.currentTimeMillis();
+            long rows = export(e.getValue(), e.getKey(), target);
+            listener.tableExported(e.getKey(), rows, System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * Updates a table in an existing target database with the current results of the given query for a set of keys.
+     * Rows with the given keys are deleted and replaced by the rows the query yields for those keys, so keys the query
+     * no longer yields are removed. The cost of the update depends on the number of keys rather than the table size.
+     *
+     * @param query     the export query for the table
+     * @param table     the table to update in the target database
+     * @param keyColumn the column identifying rows, present in both the query results and the table
+     * @param keys      the keys of the rows to update
+     * @param target    the target database file
+     * @return the number of rows written
+     */
+    public long exportChanges(String query, String table, String keyColumn, List<?> keys, File target)
+            throws SQLException, IOException {
+        long rows = 0;
+        try (Connection src = this.src.createConnection(); Connection dst = createTargetConnection(target, false)) {
+            for (int from = 0; from < keys.size(); from += CHANGE_CHUNK_SIZE) {
+                List<?> chunk = keys.subList(from, Math.min(from + CHANGE_CHUNK_SIZE, keys.size()));
+                try (PreparedStatement s = src.prepareStatement(String.format("select * from (%s) q where q.%s in (%s)",
+                        query, keyColumn, String.join(",", nCopies(chunk.size(), "?"))))) {
+                    bindKeys(s, chunk);
+                    try (ResultSet rs = s.executeQuery()) {
+                        Mapper mapper = mapperFactory.createMapper(rs.getMetaData(), table, dst);
+                        try (PreparedStatement delete = dst.prepareStatement(mapper.getDeleteDml(keyColumn, chunk.size()));
+                             PreparedStatement insert = dst.prepareStatement(mapper.getInsertDml())) {
+                            bindKeys(delete, chunk);
+                            delete.executeUpdate();
+                            while (rs.next()) {
+                                mapper.bind(rs, insert);
+                                insert.addBatch();
+                                rows++;
+                            }
+                            insert.executeBatch();
+                        }
+                    }
+                }
+            }
+            dst.commit();
+        }
+        return rows;
+    }
+
+    private static void bindKeys(PreparedStatement s, List<?> keys) throws SQLException {
+        for (int k = 0; k < keys.size(); k++) {
+            s.setObject(k + 1, keys.get(k));
+        }
+    }
+
+    private long load(ResultSet rs, Mapper mapper, PreparedStatement d, Connection dst) throws SQLException {
+        long rows = 0;
+        while (rs.next()) {
+            mapper.bind(rs, d);
+            d.executeUpdate();
+            rows++;
+        }
+        dst.commit();
+        return rows;
+    }
+
+    private long loadBatched(ResultSet rs, Mapper mapper, PreparedStatement d, Connection dst) throws SQLException {
+        long rows = 0;
+        int batched = 0;
+        while (rs.next()) {
+            mapper.bind(rs, d);
+            d.addBatch();
+            rows++;
+            if (++batched == batchSize) {
+                d.executeBatch();
+                batched = 0;
+            }
+            if (commitSize > 0 && rows % commitSize == 0) {
+                if (batched > 0) {
+                    d.executeBatch();
+                    batched = 0;
                 }
                 dst.commit();
             }
         }
+        if (batched > 0) {
+            d.executeBatch();
+        }
+        dst.commit();
+        return rows;
     }
 
     public void scriptTarget(InputStream script, File target) throws SQLException, IOException {
         if (script != null) {
             try (BufferedReader ddlCmds = new BufferedReader(new InputStreamReader(script));
-                 Connection dst = this.dst.createConnection(target, true);
+                 Connection dst = createTargetConnection(target, true);
                  Statement d = this.dst.createStatement(dst)) {
                 String ddlCmd;
                 while ((ddlCmd = ddlCmds.readLine()) != null && ddlCmd.trim().length() > 0) {
@@ -46,4 +199,3 @@ public class Exporter {
     }
 }
 
-
@@ -32,6 +32,15 @@ interface Mapper {
      */
     String getInsertDml() throws SQLException;
 
+    /**
+     * Yields a statement for deleting rows from the exported table in the target database by key.
+     *
+     * @param keyColumn the name of the column identifying rows
+     * @param keys      the number of key parameters to include in the statement
+     * @return executable DML for deleting rows with the given keys from the table exported by this mapper
+     */
+    String getDeleteDml(String keyColumn, int keys);
+
     /**
      * Binds values from the current record of the source query to the target insert statement. After this method
      * completes, the target insert statement can be executed.
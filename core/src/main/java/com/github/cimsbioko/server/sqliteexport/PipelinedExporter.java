@@ -0,0 +1,268 @@
+package com.github.cimsbioko.server.sqliteexport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.task.AsyncTaskExecutor;
+
+import javax.sql.rowset.RowSetMetaDataImpl;
+import java.io.File;
+import java.io.IOException;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+import static com.github.cimsbioko.server.sqliteexport.ColumnBinders.ColumnBinder;
+import static com.github.cimsbioko.server.sqliteexport.ColumnBinders.ColumnBuffer;
+
+/**
+ * An {@link Exporter} that runs export queries concurrently. Each query is read by a reader task on its own source
+ * connection, which hands rows to the single target writer through a queue bounded by a number of rows. Sqlite only
+ * supports a single writer, so tables are still written one after another, in iteration order, which keeps the
+ * resulting file identical to a sequential export. While the writer works on one table, readers for the following
+ * tables run their queries and fill their queues, so the overall export takes roughly as long as the slower of the
+ * slowest query and writing. Readers run on a shared executor and only start once the writer is within the configured
+ * number of readers of their table, so an export holds at most that many source connections and queues at once.
+ */
+public class PipelinedExporter extends Exporter {
+
+    private static final Logger log = LoggerFactory.getLogger(PipelinedExporter.class);
+
+    private static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private final AsyncTaskExecutor readerExecutor;
+    private final int readers;
+    private final int queueRows;
+
+    /**
+     * @param readerExecutor the executor running reader tasks
+     * @param readers        the maximum number of queries each export runs concurrently
+     * @param queueRows      the maximum number of rows buffered per table
+     */
+    public PipelinedExporter(Source source, Target target, MapperFactory mapperFactory, int batchSize, int commitSize,
+                             AsyncTaskExecutor readerExecutor, int readers, int queueRows) {
+        super(source, target, mapperFactory, batchSize, commitSize);
+        this.readerExecutor = readerExecutor;
+        this.readers = Math.max(readers, 1);
+        this.queueRows = Math.max(queueRows, 1);
+    }
+
+    private int getChunkSize() {
+        return Math.min(isBulkLoad() ? getBatchSize() : DEFAULT_CHUNK_SIZE, queueRows);
+    }
+
+    @Override
+    public void exportAll(Map<String, String> tableQueries, File target, Listener listener) throws SQLException, IOException {
+        List<TableFeed> feeds = new ArrayList<>();
+        for (Map.Entry<String, String> e : tableQueries.entrySet()) {
+            feeds.add(new TableFeed(e.getKey(), e.getValue()));
+        }
+        try {
+            for (int i = 0; i < Math.min(readers, feeds.size()); i++) {
+                feeds.get(i).start();
+            }
+            try (Connection dst = createTargetConnection(target, false)) {
+                long uncommitted = 0;
+                for (int i = 0; i < feeds.size(); i++) {
+                    TableFeed feed = feeds.get(i);
+                    long start = System.currentTimeMillis();
+                    long rows = 0;
+                    Mapper mapper = null;
+                    PreparedStatement stmt = null;
+                    try {
+                        for (Message msg = feed.take(); !(msg instanceof End); msg = feed.take()) {
+                            if (msg instanceof Start) {
+                                mapper = getMapperFactory().createMapper(((Start) msg).metadata, feed.table, dst);
+                                stmt = dst.prepareStatement(mapper.getInsertDml());
+                            } else if (msg instanceof Rows) {
+                                Rows chunk = (Rows) msg;
+                                for (int row = 0; row < chunk.size; row++) {
+                                    chunk.write(row, stmt);
+                                    stmt.addBatch();
+                                }
+                                stmt.executeBatch();
+                                feed.release(chunk.size);
+                                rows += chunk.size;
+                                uncommitted += chunk.size;
+                                if (getCommitSize() > 0 && uncommitted >= getCommitSize()) {
+                                    dst.commit();
+                                    uncommitted = 0;
+                                }
+                            } else if (msg instanceof Failure) {
+                                Exception cause = ((Failure) msg).cause;
+                                if (cause instanceof SQLException) {
+                                    throw (SQLException) cause;
+                                }
+                                throw new SQLException("failed to read rows for table " + feed.table, cause);
+                            }
+                        }
+                    } finally {
+                        if (stmt != null) {
+                            stmt.close();
+                        }
+                    }
+                    listener.tableExported(feed.table, rows, System.currentTimeMillis() - start);
+                    if (i + readers < feeds.size()) {
+                        feeds.get(i + readers).start();
+                    }
+                }
+                dst.commit();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("interrupted while waiting for export rows", e);
+        } finally {
+            // stops readers still running, such as when the writer fails
+            feeds.forEach(TableFeed::cancel);
+        }
+    }
+
+    private interface Message {
+    }
+
+    private static class Start implements Message {
+        final ResultSetMetaData metadata;
+
+        Start(ResultSetMetaData metadata) {
+            this.metadata = metadata;
+        }
+    }
+
+    /**
+     * A chunk of rows, held in typed column buffers so values are not boxed between the reader and the writer.
+     */
+    private static class Rows implements Message {
+        final ColumnBuffer[] columns;
+        int size;
+
+        Rows(ColumnBinder[] binders, int capacity) {
+            this.columns = ColumnBinders.newBuffers(binders, capacity);
+        }
+
+        void read(ResultSet source) throws SQLException {
+            for (int c = 0; c < columns.length; c++) {
+                columns[c].read(source, c + 1, size);
+            }
+            size++;
+        }
+
+        void write(int row, PreparedStatement target) throws SQLException {
+            for (int c = 0; c < columns.length; c++) {
+                columns[c].write(target, c + 1, row);
+            }
+        }
+    }
+
+    private static class Failure implements Message {
+        final Exception cause;
+
+        Failure(Exception cause) {
+            this.cause = cause;
+        }
+    }
+
+    private static class End implements Message {
+    }
+
+    /**
+     * Reads the rows of a single export query into a queue for the writer, bounded by the permits for queued rows.
+     */
+    private class TableFeed implements Runnable {
+
+        final String table;
+        final String query;
+        final BlockingQueue<Message> queue = new LinkedBlockingQueue<>();
+        final Semaphore queuedRows = new Semaphore(queueRows);
+
+        private volatile Future<?> reader;
+
+        TableFeed(String table, String query) {
+            this.table = table;
+            this.query = query;
+        }
+
+        void start() {
+            reader = readerExecutor.submit(this);
+        }
+
+        void cancel() {
+            Future<?> r = reader;
+            if (r != null) {
+                r.cancel(true);
+            }
+        }
+
+        Message take() throws InterruptedException {
+            return queue.take();
+        }
+
+        void release(int rows) {
+            queuedRows.release(rows);
+        }
+
+        private void put(Rows rows) throws InterruptedException {
+            queuedRows.acquire(rows.size);
+            queue.put(rows);
+        }
+
+        @Override
+        public void run() {
+            try {
+                read();
+            } catch (InterruptedException e) {
+                log.debug("export of table {} cancelled", table);
+            } catch (Exception e) {
+                try {
+                    queue.put(new Failure(e));
+                } catch (InterruptedException ie) {
+                    log.debug("export of table {} cancelled after failure", table, e);
+                }
+            }
+        }
+
+        private void read() throws SQLException, InterruptedException {
+            Source src = getSource();
+            int chunkSize = getChunkSize();
+            try (Connection c = src.createConnection(); Statement s = src.createStatement(c);
+                 ResultSet rs = s.executeQuery(query)) {
+                ResultSetMetaData md = rs.getMetaData();
+                ColumnBinder[] binders = ColumnBinders.forColumns(md);
+                queue.put(new Start(detach(md)));
+                Rows chunk = new Rows(binders, chunkSize);
+                while (rs.next()) {
+                    chunk.read(rs);
+                    if (chunk.size == chunkSize) {
+                        put(chunk);
+                        chunk = new Rows(binders, chunkSize);
+                    }
+                }
+                if (chunk.size > 0) {
+                    put(chunk);
+                }
+            }
+            // only signalled once the source connection is closed, as the next reader starts when the writer is done
+            queue.put(new End());
+        }
+    }
+
+    /**
+     * Copies the result set metadata used for mapping, so the writer can use it after the source result is closed.
+     */
+    private static ResultSetMetaData detach(ResultSetMetaData md) throws SQLException {
+        RowSetMetaDataImpl copy = new RowSetMetaDataImpl();
+        int columns = md.getColumnCount();
+        copy.setColumnCount(columns);
+        for (int c = 1; c <= columns; c++) {
+            copy.setColumnName(c, md.getColumnName(c));
+            copy.setColumnLabel(c, md.getColumnLabel(c));
+            copy.setColumnType(c, md.getColumnType(c));
+            copy.setColumnTypeName(c, md.getColumnTypeName(c));
+            copy.setPrecision(c, md.getPrecision(c));
+        }
+        return copy;
+    }
+}
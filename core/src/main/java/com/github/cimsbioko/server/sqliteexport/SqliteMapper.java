@@ -6,10 +6,13 @@ import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.Map;
 
+import static com.github.cimsbioko.server.sqliteexport.ColumnBinders.ColumnBinder;
 import static java.lang.String.format;
+import static java.util.Collections.nCopies;
 
 /**
- * A {@link Mapper} implementation capable for exporting tables to the Sqlite database.
+ * A {@link Mapper} implementation capable for exporting tables to the Sqlite database. Column binders are selected
+ * once, when the mapper is created, so binding records only involves typed gets and sets.
  */
 class SqliteMapper implements Mapper {
 
@@ -18,11 +21,13 @@ class SqliteMapper implements Mapper {
     private final ResultSetMetaData md;
     private final String table;
     private final Map<Integer, String> typeMap;
+    private final ColumnBinder[] binders;
 
-    SqliteMapper(ResultSetMetaData md, String table, Map<Integer, String> typeMap) {
+    SqliteMapper(ResultSetMetaData md, String table, Map<Integer, String> typeMap) throws SQLException {
         this.md = md;
         this.table = table;
         this.typeMap = typeMap;
+        this.binders = ColumnBinders.forColumns(md);
     }
 
     @Override
@@ -69,9 +74,13 @@ class SqliteMapper implements Mapper {
         return b.toString();
     }
 
+    public String getDeleteDml(String keyColumn, int keys) {
+        return format("delete from %s where %s in (%s)", table, keyColumn, String.join(",", nCopies(keys, "?")));
+    }
+
     public void bind(ResultSet source, PreparedStatement target) throws SQLException {
-        for (int c = 1; c <= md.getColumnCount(); c++) {
-            target.setObject(c, source.getObject(c));
+        for (int c = 0; c < binders.length; c++) {
+            binders[c].bind(source, target, c + 1);
         }
     }
 }
@@ -3,21 +3,33 @@ package com.github.cimsbioko.server.sqliteexport;
 import java.sql.Connection;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.util.Map;
 
 /**
- * A {@link MapperFactory} that generates {@link Mapper} objects for exporting to an Sqlite database.
+ * A {@link MapperFactory} that generates {@link Mapper} objects for exporting to an Sqlite database. The type map only
+ * depends on the target driver, so it is extracted once and reused for all subsequent mappers.
  */
 public class SqliteMapperFactory implements MapperFactory {
 
     private final TypeExtractor typeExtractor;
 
+    private volatile Map<Integer, String> typeMap;
+
     public SqliteMapperFactory(TypeExtractor extractor) {
         this.typeExtractor = extractor;
     }
 
     @Override
     public Mapper createMapper(ResultSetMetaData md, String table, Connection dst) throws SQLException {
-        return new SqliteMapper(md, table, typeExtractor.getTypeMap(dst));
+        return new SqliteMapper(md, table, getTypeMap(dst));
+    }
+
+    private Map<Integer, String> getTypeMap(Connection dst) throws SQLException {
+        Map<Integer, String> result = typeMap;
+        if (result == null) {
+            typeMap = result = typeExtractor.getTypeMap(dst);
+        }
+        return result;
     }
 
 }
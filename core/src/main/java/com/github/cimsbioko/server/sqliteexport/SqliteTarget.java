@@ -5,8 +5,10 @@ import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.List;
 
 import static java.sql.DriverManager.getConnection;
+import static java.util.Collections.emptyList;
 
 /**
  * A {@link Target} implementation that generates non-auto-commit connections for export to Sqlite.
@@ -15,6 +17,21 @@ public class SqliteTarget implements Target {
 
     public final String DRIVER_CLASS = "org.sqlite.JDBC";
 
+    private final List<String> bulkLoadPragmas;
+
+    public SqliteTarget() {
+        this(emptyList());
+    }
+
+    /**
+     * Creates a target that applies the given pragmas to bulk load connections.
+     *
+     * @param bulkLoadPragmas pragma statements, such as "journal_mode=OFF", applied to each bulk load connection
+     */
+    public SqliteTarget(List<String> bulkLoadPragmas) {
+        this.bulkLoadPragmas = bulkLoadPragmas;
+    }
+
     public void loadDriver() throws ClassNotFoundException {
         Class.forName(DRIVER_CLASS);
     }
@@ -30,6 +47,22 @@ public class SqliteTarget implements Target {
         return c;
     }
 
+    @Override
+    public Connection createBulkConnection(File target, boolean autoCommit) throws IOException, SQLException {
+        Connection c = getConnection(getUrl(target));
+        // pragmas like journal_mode can not be changed inside a transaction, apply them before disabling auto-commit
+        try (Statement s = c.createStatement()) {
+            for (String pragma : bulkLoadPragmas) {
+                s.execute("pragma " + pragma);
+            }
+        } catch (SQLException e) {
+            c.close();
+            throw e;
+        }
+        c.setAutoCommit(autoCommit);
+        return c;
+    }
+
     @Override
     public Statement createStatement(Connection c) throws SQLException {
         return c.createStatement();
@@ -13,6 +13,16 @@ public interface Target {
 
     Connection createConnection(File target, boolean autoCommit) throws IOException, SQLException;
 
+    /**
+     * Creates a connection tuned for loading large volumes of data into a scratch file. The tuning must not change
+     * the logical contents of the resulting database, only how quickly it is produced.
+     *
+     * @param target     the scratch file to connect to
+     * @param autoCommit whether the resulting connection should auto-commit
+     * @return a connection to the target, tuned for bulk loading
+     */
+    Connection createBulkConnection(File target, boolean autoCommit) throws IOException, SQLException;
+
     Statement createStatement(Connection c) throws SQLException;
 
 }
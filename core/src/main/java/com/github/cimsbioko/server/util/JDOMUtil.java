@@ -34,6 +34,9 @@ public class JDOMUtil {
     }
 
     public static String stringFromDoc(Document value) {
+        if (value instanceof SerializedDocument) {
+            return ((SerializedDocument) value).getSerialized();
+        }
         return value == null ? null : getOutputter().outputString(value);
     }
 
@@ -0,0 +1,23 @@
+package com.github.cimsbioko.server.util;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+
+/**
+ * A document that carries its own serialized form, as produced by {@link JDOMUtil#stringFromDoc(Document)}, so that
+ * storing, comparing and indexing it does not require serializing it again. The serialized form is captured when the
+ * document is created and is not updated, so these documents must not be modified.
+ */
+public class SerializedDocument extends Document {
+
+    private final String serialized;
+
+    public SerializedDocument(Element root, String serialized) {
+        super(root);
+        this.serialized = serialized;
+    }
+
+    public String getSerialized() {
+        return serialized;
+    }
+}
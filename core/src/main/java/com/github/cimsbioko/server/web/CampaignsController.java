@@ -31,6 +31,7 @@ import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
 import static com.github.cimsbioko.server.config.CachingConfig.CAMPAIGN_MEMBERSHIP_CACHE;
+import static com.github.cimsbioko.server.config.CachingConfig.DEFAULT_CAMPAIGN_CACHE;
 import static com.github.cimsbioko.server.config.CachingConfig.MY_CAMPAIGNS_CACHE;
 
 @Controller
@@ -90,7 +91,7 @@ public class CampaignsController {
     @PutMapping("/campaign/{uuid}/default")
     @ResponseBody
     @Transactional
-    @CacheEvict(value = CAMPAIGN_MEMBERSHIP_CACHE, key = "'default'")
+    @CacheEvict(cacheNames = {CAMPAIGN_MEMBERSHIP_CACHE, DEFAULT_CAMPAIGN_CACHE}, allEntries = true)
     public ResponseEntity<AjaxResult> setDefaultCampaign(@PathVariable String uuid, Locale locale) {
         Optional<Campaign> maybeNewDefault = repo.findById(uuid);
         if (!maybeNewDefault.isPresent()) {
@@ -118,6 +119,7 @@ public class CampaignsController {
     @PostMapping("/campaigns")
     @ResponseBody
     @Transactional
+    @CacheEvict(cacheNames = {CAMPAIGN_MEMBERSHIP_CACHE, MY_CAMPAIGNS_CACHE}, allEntries = true)
     public ResponseEntity<AjaxResult> createCampaign(@Valid @RequestPart CampaignForm form,
                                                      @RequestPart("campaign_file") MultipartFile campaignFile,
                                                      Locale locale) throws IOException {
@@ -181,7 +183,7 @@ public class CampaignsController {
     @PutMapping("/campaign/{uuid}")
     @ResponseBody
     @Transactional
-    @CacheEvict(cacheNames = {CAMPAIGN_MEMBERSHIP_CACHE, MY_CAMPAIGNS_CACHE}, allEntries = true)
+    @CacheEvict(cacheNames = {CAMPAIGN_MEMBERSHIP_CACHE, MY_CAMPAIGNS_CACHE, DEFAULT_CAMPAIGN_CACHE}, allEntries = true)
     public ResponseEntity<?> updateCampaign(@PathVariable String uuid, @Valid @RequestPart CampaignForm form,
                                             @RequestPart(value = "campaign_file", required = false) MultipartFile campaignFile,
                                             Locale locale) throws IOException {
@@ -248,7 +250,7 @@ public class CampaignsController {
     @PreAuthorize("hasAuthority('DELETE_CAMPAIGNS')")
     @DeleteMapping("/campaign/{uuid}")
     @ResponseBody
-    @CacheEvict(cacheNames = {CAMPAIGN_MEMBERSHIP_CACHE, MY_CAMPAIGNS_CACHE}, allEntries = true)
+    @CacheEvict(cacheNames = {CAMPAIGN_MEMBERSHIP_CACHE, MY_CAMPAIGNS_CACHE, DEFAULT_CAMPAIGN_CACHE}, allEntries = true)
     public ResponseEntity<?> deleteCampaign(@PathVariable("uuid") String uuid, Locale locale) {
 
         // FIXME: Use optional rather than null
@@ -275,7 +277,7 @@ public class CampaignsController {
     @PreAuthorize("hasAuthority('RESTORE_CAMPAIGNS')")
     @PutMapping("/campaign/restore/{uuid}")
     @ResponseBody
-    @CacheEvict(cacheNames = {CAMPAIGN_MEMBERSHIP_CACHE, MY_CAMPAIGNS_CACHE}, allEntries = true)
+    @CacheEvict(cacheNames = {CAMPAIGN_MEMBERSHIP_CACHE, MY_CAMPAIGNS_CACHE, DEFAULT_CAMPAIGN_CACHE}, allEntries = true)
     public ResponseEntity<?> restoreCampaign(@PathVariable("uuid") String uuid, Locale locale) {
 
         // FIXME: Use optional rather than null
@@ -3,6 +3,7 @@ package com.github.cimsbioko.server.web;
 import com.github.cimsbioko.server.dao.FormRepository;
 import com.github.cimsbioko.server.domain.Form;
 import com.github.cimsbioko.server.service.FormService;
+import com.github.cimsbioko.server.service.LastSubmissionService;
 import org.jdom2.JDOMException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.MessageSource;
@@ -31,12 +32,15 @@ public class FormsController {
     private final FormRepository repo;
     private final FormService service;
     private final MessageSource messages;
+    private final LastSubmissionService lastSubmissions;
 
     @Autowired
-    public FormsController(FormRepository repo, FormService service, MessageSource messages) {
+    public FormsController(FormRepository repo, FormService service, MessageSource messages,
+                           LastSubmissionService lastSubmissions) {
         this.repo = repo;
         this.service = service;
         this.messages = messages;
+        this.lastSubmissions = lastSubmissions;
     }
 
     @PreAuthorize("hasAuthority('VIEW_FORMS')")
@@ -45,7 +49,10 @@ public class FormsController {
     public Page<Form> forms(@RequestParam(name = "p", defaultValue = "0") Integer page,
                             @RequestParam(name = "q", defaultValue = "") String query) {
         PageRequest pageObj = PageRequest.of(page, 10, Sort.by("formId"));
-        return query.isEmpty() ? repo.findAll(pageObj) : repo.findBySearch(query, pageObj);
+        Page<Form> forms = query.isEmpty() ? repo.findAll(pageObj) : repo.findBySearch(query, pageObj);
+        // include submissions not yet written to the forms, the forms are detached so this isn't persisted
+        forms.forEach(form -> form.setLastSubmission(lastSubmissions.getLastSubmission(form)));
+        return forms;
     }
 
     @PreAuthorize("hasAuthority('FORM_UPLOAD')")
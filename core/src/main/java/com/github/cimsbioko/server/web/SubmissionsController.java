@@ -2,7 +2,7 @@ package com.github.cimsbioko.server.web;
 
 import com.github.cimsbioko.server.dao.ErrorRepository;
 import com.github.cimsbioko.server.dao.FormSubmissionRepository;
-import com.github.cimsbioko.server.domain.FormSubmission;
+import com.github.cimsbioko.server.dao.SubmissionSummary;
 import com.github.cimsbioko.server.service.EnketoService;
 import org.springframework.context.MessageSource;
 import org.springframework.data.domain.Page;
@@ -39,13 +39,13 @@ public class SubmissionsController {
     @PreAuthorize("hasAuthority('VIEW_SUBMISSIONS')")
     @GetMapping("/submissions")
     @ResponseBody
-    public Page<FormSubmission> submissions(
+    public Page<SubmissionSummary> submissions(
             @RequestParam(name = "p", defaultValue = "0") Integer page,
             @RequestParam(name = "q", defaultValue = "") String query) {
         if (!query.isEmpty()) {
             return submissionsRepo.findBySearch(query, PageRequest.of(page, 10));
         } else {
-            return submissionsRepo.findAll(PageRequest.of(page, 10, Sort.Direction.DESC, "submitted"));
+            return submissionsRepo.findSummaries(PageRequest.of(page, 10, Sort.Direction.DESC, "submitted"));
         }
     }
 
@@ -16,7 +16,10 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.ResponseBody;
 
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
@@ -24,6 +27,7 @@ import java.util.Optional;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
+import static com.github.cimsbioko.server.config.WebConfig.CACHED_FILES_PATH;
 import static org.springframework.transaction.annotation.Propagation.REQUIRES_NEW;
 
 @Controller
@@ -97,14 +101,31 @@ public class SyncController {
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    @PreAuthorize("hasAuthority('MANAGE_SYNC')")
+    @GetMapping("/sync/{campaign}/cancel")
+    @ResponseBody
+    public ResponseEntity<?> cancel(@PathVariable("campaign") String campaign) {
+        service.cancelExport(campaign);
+        return getSyncData(campaign)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
     @PreAuthorize("hasAuthority('EXPORT_SYNC')")
     @GetMapping("/sync/{campaign}/export")
-    public void downloadDb(@PathVariable("campaign") String campaign, HttpServletResponse response) throws IOException {
+    public void downloadDb(@PathVariable("campaign") String campaign, HttpServletRequest request,
+                           HttpServletResponse response) throws IOException, ServletException {
         String filename = "cims.db";
-        FileSystemResource dbFileRes = new FileSystemResource(service.getOutput(campaign));
+        File dbFile = service.getOutput(campaign);
+        File zipFile = new File(dbFile.getParentFile(), dbFile.getName() + ".zip");
+        FileSystemResource dbFileRes = new FileSystemResource(dbFile);
         if (!dbFileRes.isReadable()) {
             response.sendError(HttpServletResponse.SC_NOT_FOUND,
                     "Unable to find mobiledb file. Try generating it from the tasks menu.");
+        } else if (zipFile.canRead()) {
+            // serve the zip created at export time
+            response.setHeader("Content-Disposition", "attachment; filename=\"" + filename + ".zip\"");
+            request.getRequestDispatcher(CACHED_FILES_PATH + "/" + zipFile.getName()).forward(request, response);
         } else {
             response.setContentType("application/zip");
             response.setHeader("Content-Disposition", "attachment; filename=\"" + filename + ".zip\"");
@@ -3,6 +3,8 @@ package com.github.cimsbioko.server.webapi.odk;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -24,4 +26,16 @@ public class DefaultFileHasher implements FileHasher {
             return Constants.MD5_SCHEME + encodeHexString(in.getMessageDigest().digest());
         }
     }
+
+    @Override
+    public String copyAndHash(InputStream in, OutputStream out) throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance(MD5);
+        byte[] buf = new byte[BLOCK_SIZE];
+        int read;
+        while ((read = in.read(buf)) >= 0) {
+            digest.update(buf, 0, read);
+            out.write(buf, 0, read);
+        }
+        return Constants.MD5_SCHEME + encodeHexString(digest.digest());
+    }
 }
@@ -0,0 +1,78 @@
+package com.github.cimsbioko.server.webapi.odk;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * A {@link SubmissionMediaIndex} kept as a file in each submission directory, with a line per file listing its hash,
+ * size and name. The index is only a cache of the files' contents, so it is replaced without syncing it to disk.
+ */
+public class DefaultSubmissionMediaIndex implements SubmissionMediaIndex {
+
+    private static final String INDEX_FILE = ".media";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int LOCK_STRIPES = 64;
+
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    public DefaultSubmissionMediaIndex() {
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    private Object lockFor(File submissionDir) {
+        return locks[Math.floorMod(submissionDir.hashCode(), locks.length)];
+    }
+
+    @Override
+    public void put(File submissionDir, Collection<Entry> entries) throws IOException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        synchronized (lockFor(submissionDir)) {
+            Map<String, Entry> index = new LinkedHashMap<>(get(submissionDir));
+            entries.forEach(entry -> index.put(entry.getName(), entry));
+            Path temp = Files.createTempFile(submissionDir.toPath(), INDEX_FILE, TEMP_SUFFIX);
+            try (Writer out = Files.newBufferedWriter(temp, UTF_8)) {
+                for (Entry entry : index.values()) {
+                    out.write(entry.getHash() + " " + entry.getSize() + " " + entry.getName() + "\n");
+                }
+            }
+            Files.move(temp, new File(submissionDir, INDEX_FILE).toPath(), ATOMIC_MOVE, REPLACE_EXISTING);
+        }
+    }
+
+    @Override
+    public Map<String, Entry> get(File submissionDir) throws IOException {
+        File file = new File(submissionDir, INDEX_FILE);
+        if (!file.exists()) {
+            return Collections.emptyMap();
+        }
+        Map<String, Entry> index = new LinkedHashMap<>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split(" ", 3);
+                if (fields.length == 3) {
+                    index.put(fields[2], new Entry(fields[2], fields[0], Long.parseLong(fields[1])));
+                }
+            }
+        }
+        return index;
+    }
+
+    @Override
+    public boolean isIndex(Path path) {
+        return path.getFileName().toString().startsWith(INDEX_FILE);
+    }
+}
@@ -0,0 +1,537 @@
+package com.github.cimsbioko.server.webapi.odk;
+
+import com.github.cimsbioko.server.domain.FormId;
+import com.github.cimsbioko.server.service.FormMetadataService;
+import com.github.cimsbioko.server.util.SerializedDocument;
+import org.jdom2.*;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.XML;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static com.github.cimsbioko.server.webapi.odk.Constants.*;
+import static java.time.Instant.now;
+import static javax.xml.stream.XMLStreamConstants.*;
+
+/**
+ * Reads submissions in a single pass using a pull parser. While reading, it fills in missing meta fields, builds the
+ * json representation, with arrays for the form's repeats, and builds the xml document along with its serialized form.
+ * The results are identical to building the document, serializing it with {@link com.github.cimsbioko.server.util.JDOMUtil}
+ * and converting the result with {@link org.json.XML}, without serializing and re-parsing it in between.
+ */
+public class DefaultSubmissionParser implements SubmissionParser {
+
+    private static final String JR_URI = "http://openrosa.org/xforms";
+    private static final Namespace JR = Namespace.getNamespace("jr", JR_URI);
+
+    // matches the output of jdom's raw format, which serializes line feeds in text as the platform-neutral separator
+    private static final String EOL = "\r\n";
+    private static final String DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + EOL;
+
+    // the key org.json uses for text content of elements with attributes or children
+    private static final String CONTENT = "content";
+
+    private static final String REPORT_CDATA = "http://java.sun.com/xml/stream/properties/report-cdata-event";
+
+    private static final Map<String, String> INITIAL_SCOPE;
+
+    static {
+        Map<String, String> scope = new HashMap<>();
+        scope.put(Namespace.NO_NAMESPACE.getPrefix(), Namespace.NO_NAMESPACE.getURI());
+        scope.put(Namespace.XML_NAMESPACE.getPrefix(), Namespace.XML_NAMESPACE.getURI());
+        INITIAL_SCOPE = Collections.unmodifiableMap(scope);
+    }
+
+    private enum Role {
+        NONE, META, INSTANCE_ID, DEPRECATED_ID, COLLECTION_TIME
+    }
+
+    private final XMLInputFactory inputFactory;
+    private final FormMetadataService metadataService;
+    private final SubmissionIdGenerator idGenerator;
+    private final DateFormatter dateFormatter;
+
+    public DefaultSubmissionParser(FormMetadataService metadataService, SubmissionIdGenerator idGenerator,
+                                   DateFormatter dateFormatter) {
+        this.metadataService = metadataService;
+        this.idGenerator = idGenerator;
+        this.dateFormatter = dateFormatter;
+        inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        // the jdk's parser reports cdata as text unless asked otherwise, jdom keeps it as cdata
+        if (inputFactory.isPropertySupported(REPORT_CDATA)) {
+            inputFactory.setProperty(REPORT_CDATA, true);
+        }
+    }
+
+    @Override
+    public ParsedSubmission parse(InputStream in) throws XMLStreamException {
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+        try {
+            return new Pass().read(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static class Node {
+
+        final Node parent;
+        final Element element;
+        final String name;
+        final String path;
+        final Role role;
+        final JSONObject json = new JSONObject();
+        final StringBuilder value;
+        Map<String, String> scope;
+        boolean startTagOpen = true;
+
+        Node(Node parent, Element element, String path, Role role) {
+            this.parent = parent;
+            this.element = element;
+            this.name = element.getQualifiedName();
+            this.path = path;
+            this.role = role;
+            this.value = role == Role.NONE ? null : new StringBuilder();
+        }
+    }
+
+    /**
+     * The state of reading a single submission.
+     */
+    private class Pass {
+
+        private final StringBuilder out = new StringBuilder(DECLARATION);
+        private final StringBuilder text = new StringBuilder();
+        private final Deque<Node> open = new ArrayDeque<>();
+        private final JSONObject json = new JSONObject();
+        private final List<Content> prolog = new ArrayList<>(), epilog = new ArrayList<>();
+
+        private Node root, meta;
+        private Set<String> repeats = Collections.emptySet();
+        private String formId, formVersion, rootInstanceId, binding, campaign, submissionDate;
+        private String instanceId, deprecatedId;
+        private Timestamp collected;
+        private boolean instanceIdSeen, deprecatedIdSeen, collectionTimeSeen;
+
+        ParsedSubmission read(XMLStreamReader reader) throws XMLStreamException {
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case START_ELEMENT:
+                        flushText();
+                        startElement(reader);
+                        break;
+                    case END_ELEMENT:
+                        flushText();
+                        endElement();
+                        break;
+                    case CHARACTERS:
+                    case SPACE:
+                        // text outside of the root element is insignificant
+                        if (!open.isEmpty()) {
+                            text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        }
+                        break;
+                    case CDATA:
+                        flushText();
+                        cdata(reader.getText());
+                        break;
+                    case COMMENT:
+                        flushText();
+                        comment(reader.getText());
+                        break;
+                    case PROCESSING_INSTRUCTION:
+                        flushText();
+                        processingInstruction(reader.getPITarget(), reader.getPIData());
+                        break;
+                }
+            }
+            if (root == null) {
+                throw new XMLStreamException("submission has no root element");
+            }
+            out.append(EOL);
+            SerializedDocument doc = new SerializedDocument(root.element, out.toString());
+            for (int i = 0; i < prolog.size(); i++) {
+                doc.addContent(i, prolog.get(i));
+            }
+            doc.addContent(epilog);
+            return new ParsedSubmission(doc, json, formId, formVersion,
+                    rootInstanceId != null ? rootInstanceId : instanceId, deprecatedId, binding, campaign,
+                    submissionDate, collected);
+        }
+
+        private void startElement(XMLStreamReader reader) {
+            Element element = new Element(reader.getLocalName(), namespace(reader.getPrefix(), reader.getNamespaceURI()));
+            for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                Namespace ns = namespace(reader.getNamespacePrefix(i), reader.getNamespaceURI(i));
+                if (!isSame(ns, element.getNamespace())) {
+                    element.addNamespaceDeclaration(ns);
+                }
+            }
+            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                element.setAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i),
+                        namespace(reader.getAttributePrefix(i), reader.getAttributeNamespace(i)));
+            }
+            startElement(element);
+        }
+
+        private void startElement(Element element) {
+            Node parent = open.peek();
+            Role role = Role.NONE;
+            String path = null;
+            if (parent == null) {
+                readRootAttributes(element);
+                path = element.getQualifiedName();
+            } else {
+                parent.element.addContent(element);
+                role = roleOf(parent, element);
+                if (parent.path != null) {
+                    path = parent.path + "/" + element.getQualifiedName();
+                }
+            }
+            writeStartTag(parent, element);
+            Node node = new Node(parent, element, path, role);
+            node.scope = declareNamespaces(node);
+            for (Attribute attr : element.getAttributes()) {
+                out.append(' ').append(attr.getQualifiedName()).append("=\"");
+                escapeAttribute(attr.getValue());
+                out.append('"');
+                node.json.accumulate(attr.getQualifiedName(), XML.stringToValue(attr.getValue()));
+            }
+            if (parent == null) {
+                root = node;
+            } else if (role == Role.META) {
+                meta = node;
+            }
+            open.push(node);
+        }
+
+        private void readRootAttributes(Element rootElem) {
+            formId = rootElem.getAttributeValue(ID);
+            formVersion = rootElem.getAttributeValue(VERSION);
+            if (formVersion == null) {
+                formVersion = DEFAULT_VERSION;
+                rootElem.setAttribute(VERSION, formVersion);
+            }
+            rootInstanceId = rootElem.getAttributeValue(INSTANCE_ID);
+            binding = rootElem.getAttributeValue(CIMS_BINDING);
+            campaign = rootElem.getAttributeValue(CIMS_CAMPAIGN);
+            submissionDate = rootElem.getAttributeValue(SUBMISSION_DATE);
+            if (formId != null) {
+                repeats = metadataService.getRepeats(new FormId(formId, formVersion))
+                        .stream()
+                        .map(p -> String.join("/", p))
+                        .collect(Collectors.toSet());
+            }
+        }
+
+        /**
+         * Identifies the elements holding meta fields, the first meta element under the root, in the root's or the
+         * openrosa namespace, its instance and deprecated id and the first collection time element under the root.
+         */
+        private Role roleOf(Node parent, Element element) {
+            String name = element.getName(), uri = element.getNamespaceURI();
+            if (parent == root) {
+                String rootUri = root.element.getNamespaceURI();
+                if (meta == null && META.equals(name) && (rootUri.equals(uri) || JR_URI.equals(uri))) {
+                    return Role.META;
+                } else if (!collectionTimeSeen && COLLECTION_DATE_TIME.equals(name) && rootUri.equals(uri)) {
+                    collectionTimeSeen = true;
+                    return Role.COLLECTION_TIME;
+                }
+            } else if (parent == meta && parent.element.getNamespaceURI().equals(uri)) {
+                if (rootInstanceId == null && !instanceIdSeen && INSTANCE_ID.equals(name)) {
+                    instanceIdSeen = true;
+                    return Role.INSTANCE_ID;
+                } else if (!deprecatedIdSeen && DEPRECATED_ID.equals(name)) {
+                    deprecatedIdSeen = true;
+                    return Role.DEPRECATED_ID;
+                }
+            }
+            return Role.NONE;
+        }
+
+        private void endElement() {
+            Node node = open.element();
+            fillMissing(node);
+            open.pop();
+            if (node.startTagOpen) {
+                out.append(" />");
+            } else {
+                out.append("</").append(node.name).append('>');
+            }
+            // mirrors how org.json collapses elements
+            Object value;
+            if (node.json.length() == 0) {
+                value = "";
+            } else if (node.json.length() == 1 && node.json.opt(CONTENT) != null) {
+                value = node.json.opt(CONTENT);
+            } else {
+                value = node.json;
+            }
+            JSONObject target = node.parent == null ? json : node.parent.json;
+            if (node.path != null && repeats.contains(node.path) && !target.has(node.name)) {
+                target.put(node.name, new JSONArray().put(value));
+            } else {
+                target.accumulate(node.name, value);
+            }
+        }
+
+        /**
+         * Extracts the meta fields as their elements end, adding any that are missing or empty.
+         */
+        private void fillMissing(Node node) {
+            switch (node.role) {
+                case INSTANCE_ID:
+                    if (node.value.length() == 0) {
+                        instanceId = idGenerator.generateId();
+                        characters(instanceId);
+                    } else {
+                        instanceId = node.value.toString();
+                    }
+                    break;
+                case DEPRECATED_ID:
+                    deprecatedId = node.value.toString();
+                    break;
+                case COLLECTION_TIME:
+                    if (node.value.length() == 0) {
+                        collected = Timestamp.from(now());
+                        characters(dateFormatter.formatCollectionDate(collected));
+                    } else {
+                        collected = Timestamp.valueOf(node.value.toString());
+                    }
+                    break;
+                case META:
+                    if (rootInstanceId == null && !instanceIdSeen) {
+                        addElement(node.element.getNamespace(), INSTANCE_ID);
+                    }
+                    break;
+                default:
+                    if (node == root) {
+                        if (meta == null) {
+                            addElement(JR, META);
+                        }
+                        if (!collectionTimeSeen) {
+                            addElement(root.element.getNamespace(), COLLECTION_DATE_TIME);
+                        }
+                    }
+            }
+        }
+
+        /**
+         * Adds an empty element to the current element, which is then filled in when it ends.
+         */
+        private void addElement(Namespace ns, String name) {
+            startElement(new Element(name, ns));
+            endElement();
+        }
+
+        private void flushText() {
+            if (text.length() > 0) {
+                characters(text.toString());
+                text.setLength(0);
+            }
+        }
+
+        private void characters(String s) {
+            Node node = open.element();
+            closeStartTag(node);
+            node.element.addContent(new Text(s));
+            escapeText(s);
+            if (node.value != null) {
+                node.value.append(s);
+            }
+            // as org.json reads the serialized text
+            String content = toSerializedLineEnds(s).trim();
+            if (!content.isEmpty()) {
+                node.json.accumulate(CONTENT, XML.stringToValue(content));
+            }
+        }
+
+        private void cdata(String s) {
+            Node node = open.element();
+            closeStartTag(node);
+            node.element.addContent(new CDATA(s));
+            out.append("<![CDATA[").append(s).append("]]>");
+            if (node.value != null) {
+                node.value.append(s);
+            }
+            if (!s.isEmpty()) {
+                node.json.accumulate(CONTENT, s);
+            }
+        }
+
+        private void comment(String s) {
+            Comment comment = new Comment(s);
+            addContent(comment);
+            out.append("<!--").append(s).append("-->");
+        }
+
+        private void processingInstruction(String target, String data) {
+            ProcessingInstruction pi = new ProcessingInstruction(target, data == null ? "" : data);
+            addContent(pi);
+            out.append("<?").append(target);
+            if (data != null && !data.isEmpty()) {
+                out.append(' ').append(data);
+            }
+            out.append("?>");
+        }
+
+        private void addContent(Content content) {
+            Node node = open.peek();
+            if (node != null) {
+                closeStartTag(node);
+                node.element.addContent(content);
+            } else if (root == null) {
+                prolog.add(content);
+            } else {
+                epilog.add(content);
+            }
+        }
+
+        private void writeStartTag(Node parent, Element element) {
+            if (parent != null) {
+                closeStartTag(parent);
+            }
+            out.append('<').append(element.getQualifiedName());
+        }
+
+        private void closeStartTag(Node node) {
+            if (node.startTagOpen) {
+                out.append('>');
+                node.startTagOpen = false;
+            }
+        }
+
+        /**
+         * Writes the namespace declarations an element requires, the same way jdom does: the element's own namespace
+         * first, followed by its other namespaces ordered by prefix, omitting those already in scope.
+         *
+         * @return the namespaces in scope for the element's content
+         */
+        private Map<String, String> declareNamespaces(Node node) {
+            Element element = node.element;
+            Map<String, String> scope = node.parent == null ? INITIAL_SCOPE : node.parent.scope;
+            Namespace own = element.getNamespace();
+            List<Namespace> added = new ArrayList<>();
+            if (!own.getURI().equals(scope.get(own.getPrefix()))) {
+                added.add(own);
+            }
+            SortedMap<String, Namespace> others = new TreeMap<>();
+            for (Namespace ns : element.getAdditionalNamespaces()) {
+                others.put(ns.getPrefix(), ns);
+            }
+            for (Attribute attr : element.getAttributes()) {
+                Namespace ns = attr.getNamespace();
+                if (ns != Namespace.NO_NAMESPACE) {
+                    others.putIfAbsent(ns.getPrefix(), ns);
+                }
+            }
+            for (Namespace ns : others.values()) {
+                if (!ns.getPrefix().equals(own.getPrefix()) && !ns.getURI().equals(scope.get(ns.getPrefix()))) {
+                    added.add(ns);
+                }
+            }
+            if (added.isEmpty()) {
+                return scope;
+            }
+            Map<String, String> newScope = new HashMap<>(scope);
+            for (Namespace ns : added) {
+                String attrName = ns.getPrefix().isEmpty() ? "xmlns" : "xmlns:" + ns.getPrefix();
+                out.append(' ').append(attrName).append("=\"");
+                escapeAttribute(ns.getURI());
+                out.append('"');
+                newScope.put(ns.getPrefix(), ns.getURI());
+                node.json.accumulate(attrName, XML.stringToValue(ns.getURI()));
+            }
+            return newScope;
+        }
+
+        private void escapeText(String s) {
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                switch (c) {
+                    case '&':
+                        out.append("&amp;");
+                        break;
+                    case '<':
+                        out.append("&lt;");
+                        break;
+                    case '>':
+                        out.append("&gt;");
+                        break;
+                    case '\r':
+                        out.append("&#xD;");
+                        break;
+                    case '\n':
+                        out.append(EOL);
+                        break;
+                    default:
+                        out.append(c);
+                }
+            }
+        }
+
+        private void escapeAttribute(String s) {
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                switch (c) {
+                    case '&':
+                        out.append("&amp;");
+                        break;
+                    case '<':
+                        out.append("&lt;");
+                        break;
+                    case '>':
+                        out.append("&gt;");
+                        break;
+                    case '"':
+                        out.append("&quot;");
+                        break;
+                    case '\t':
+                        out.append("&#x9;");
+                        break;
+                    case '\n':
+                        out.append("&#xA;");
+                        break;
+                    case '\r':
+                        out.append("&#xD;");
+                        break;
+                    default:
+                        out.append(c);
+                }
+            }
+        }
+    }
+
+    private static Namespace namespace(String prefix, String uri) {
+        return Namespace.getNamespace(prefix == null ? "" : prefix, uri == null ? "" : uri);
+    }
+
+    private static boolean isSame(Namespace a, Namespace b) {
+        return a.getPrefix().equals(b.getPrefix()) && a.getURI().equals(b.getURI());
+    }
+
+    private static String toSerializedLineEnds(String s) {
+        int lf = s.indexOf('\n');
+        if (lf < 0) {
+            return s;
+        }
+        StringBuilder b = new StringBuilder(s.length() + 16);
+        int start = 0;
+        for (; lf >= 0; lf = s.indexOf('\n', start)) {
+            b.append(s, start, lf).append(EOL);
+            start = lf + 1;
+        }
+        return b.append(s, start, s.length()).toString();
+    }
+}
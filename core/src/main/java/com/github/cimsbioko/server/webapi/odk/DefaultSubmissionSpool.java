@@ -0,0 +1,373 @@
+package com.github.cimsbioko.server.webapi.odk;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * A {@link SubmissionSpool} stored as append-only segment files in a local directory. Each record is prefixed with its
+ * length and checksum. Appends are fsync'd before returning, with appends arriving during an fsync sharing the next
+ * one. The position of the last acknowledged submission is kept in a checkpoint file, so that on startup, submissions
+ * appended after it are taken again. A record torn by a crash can only be at the end of the last segment, which is
+ * truncated to its last complete record on startup.
+ */
+public class DefaultSubmissionSpool implements SubmissionSpool, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(DefaultSubmissionSpool.class);
+
+    private static final String SEGMENT_SUFFIX = ".spool";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final String CHECKPOINT_TEMP_FILE = "checkpoint.tmp";
+    private static final int HEADER_SIZE = 8;
+    private static final byte FORMAT = 1;
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    private final File dir;
+    private final long segmentSize;
+
+    // guards the segment being appended to
+    private final Object appendLock = new Object();
+    private FileChannel appendChannel;
+    private long appendSegment, appendOffset;
+
+    // held while syncing, so appends waiting to sync can share an fsync
+    private final Object syncLock = new Object();
+
+    // guarded by this, the end of the durable records
+    private long syncedSegment, syncedOffset;
+
+    // only used by the consumer
+    private FileChannel readChannel;
+    private long readSegment, readOffset, oldestSegment;
+
+    public DefaultSubmissionSpool(File dir, long segmentSize) throws IOException {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        recover();
+    }
+
+    private void recover() throws IOException {
+        dir.mkdirs();
+        long[] checkpoint = readCheckpoint();
+        TreeSet<Long> segments = new TreeSet<>();
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                long segment = Long.parseLong(file.getName().substring(0, file.getName().length() - SEGMENT_SUFFIX.length()));
+                if (segment < checkpoint[0] || file.length() == 0) {
+                    Files.delete(file.toPath());
+                } else {
+                    segments.add(segment);
+                }
+            }
+        }
+        long last = segments.isEmpty() ? checkpoint[0] : segments.last();
+        if (!segments.isEmpty()) {
+            truncateTornRecord(last);
+        }
+        oldestSegment = segments.isEmpty() ? last + 1 : segments.first();
+        readSegment = checkpoint[0];
+        readOffset = checkpoint[1];
+        openSegment(last + 1);
+        syncedSegment = appendSegment;
+        syncedOffset = 0;
+        if (!segments.isEmpty()) {
+            log.info("replaying spooled submissions from segment {}, offset {}", readSegment, readOffset);
+        }
+    }
+
+    private File segmentFile(long segment) {
+        return new File(dir, String.format("%020d%s", segment, SEGMENT_SUFFIX));
+    }
+
+    private long[] readCheckpoint() throws IOException {
+        File file = new File(dir, CHECKPOINT_FILE);
+        if (!file.exists()) {
+            return new long[]{0, 0};
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return new long[]{in.readLong(), in.readLong()};
+        }
+    }
+
+    private void writeCheckpoint(long segment, long offset) throws IOException {
+        Path temp = new File(dir, CHECKPOINT_TEMP_FILE).toPath();
+        try (FileChannel channel = FileChannel.open(temp, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.allocate(16).putLong(segment).putLong(offset);
+            buf.flip();
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            channel.force(false);
+        }
+        Files.move(temp, new File(dir, CHECKPOINT_FILE).toPath(), ATOMIC_MOVE, REPLACE_EXISTING);
+        syncDirectory();
+    }
+
+    private void truncateTornRecord(long segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentFile(segment).toPath(), READ, WRITE)) {
+            long size = channel.size(), offset = 0;
+            byte[] payload;
+            while (offset < size && (payload = readPayload(channel, offset, size)) != null) {
+                offset += HEADER_SIZE + payload.length;
+            }
+            if (offset < size) {
+                log.warn("truncating spool segment {} from {} to {} bytes, discarding incomplete record", segment, size, offset);
+                channel.truncate(offset);
+                channel.force(false);
+            }
+        }
+    }
+
+    private void openSegment(long segment) throws IOException {
+        appendChannel = FileChannel.open(segmentFile(segment).toPath(), CREATE_NEW, WRITE);
+        appendSegment = segment;
+        appendOffset = 0;
+        syncDirectory();
+    }
+
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(dir.toPath(), READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // not supported on all platforms, the segments themselves are still synced
+            log.debug("failed to sync spool directory", e);
+        }
+    }
+
+    @Override
+    public void append(SpooledSubmission submission) throws IOException {
+        ByteBuffer record = ByteBuffer.wrap(encode(submission));
+        long segment, offset;
+        synchronized (appendLock) {
+            if (appendChannel == null) {
+                throw new ClosedChannelException();
+            }
+            if (appendOffset > 0 && appendOffset + record.remaining() > segmentSize) {
+                appendChannel.force(false);
+                appendChannel.close();
+                openSegment(appendSegment + 1);
+            }
+            try {
+                while (record.hasRemaining()) {
+                    appendChannel.write(record);
+                }
+            } catch (IOException e) {
+                // drop the partial record, so it doesn't corrupt those appended after it
+                appendChannel.truncate(appendOffset);
+                appendChannel.position(appendOffset);
+                throw e;
+            }
+            appendOffset = appendChannel.position();
+            segment = appendSegment;
+            offset = appendOffset;
+        }
+        sync(segment, offset);
+    }
+
+    private void sync(long segment, long offset) throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                if (segment < syncedSegment || segment == syncedSegment && offset <= syncedOffset) {
+                    return; // synced with another append
+                }
+            }
+            FileChannel channel;
+            long targetSegment, targetOffset;
+            synchronized (appendLock) {
+                channel = appendChannel;
+                targetSegment = appendSegment;
+                targetOffset = appendOffset;
+            }
+            try {
+                channel.force(false);
+            } catch (ClosedChannelException e) {
+                // segments are synced before they are closed
+            }
+            synchronized (this) {
+                syncedSegment = targetSegment;
+                syncedOffset = targetOffset;
+                notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public List<SpooledSubmission> take(int max, long timeout, TimeUnit unit) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            long limitSegment, limitOffset;
+            synchronized (this) {
+                limitSegment = syncedSegment;
+                limitOffset = syncedOffset;
+            }
+            List<SpooledSubmission> taken = read(max, limitSegment, limitOffset);
+            if (!taken.isEmpty()) {
+                return taken;
+            }
+            synchronized (this) {
+                if (syncedSegment == limitSegment && syncedOffset == limitOffset) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return Collections.emptyList();
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+            }
+        }
+    }
+
+    private List<SpooledSubmission> read(int max, long limitSegment, long limitOffset) throws IOException {
+        List<SpooledSubmission> taken = new ArrayList<>();
+        while (taken.size() < max) {
+            FileChannel channel = readChannel();
+            long end = channel == null ? 0 : readSegment < limitSegment ? channel.size() : limitOffset;
+            if (readOffset >= end) {
+                if (readSegment >= limitSegment) {
+                    break;
+                }
+                closeReadChannel();
+                readSegment++;
+                readOffset = 0;
+                continue;
+            }
+            byte[] payload = readPayload(channel, readOffset, end);
+            if (payload == null) {
+                log.error("corrupt record in spool segment {} at offset {}, skipping rest of segment", readSegment, readOffset);
+                readOffset = end;
+                continue;
+            }
+            readOffset += HEADER_SIZE + payload.length;
+            taken.add(decode(payload, readSegment, readOffset));
+        }
+        return taken;
+    }
+
+    private FileChannel readChannel() throws IOException {
+        if (readChannel == null) {
+            File file = segmentFile(readSegment);
+            if (file.exists()) {
+                readChannel = FileChannel.open(file.toPath(), READ);
+            }
+        }
+        return readChannel;
+    }
+
+    private void closeReadChannel() throws IOException {
+        if (readChannel != null) {
+            readChannel.close();
+            readChannel = null;
+        }
+    }
+
+    /**
+     * Reads the payload of the record at the given offset, returning null if it is incomplete or corrupt.
+     */
+    private static byte[] readPayload(FileChannel channel, long offset, long end) throws IOException {
+        if (end - offset < HEADER_SIZE) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(channel, header, offset);
+        int length = header.getInt(0), checksum = header.getInt(4);
+        if (length < 0 || length > end - offset - HEADER_SIZE) {
+            return null;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(channel, payload, offset + HEADER_SIZE);
+        CRC32 crc = new CRC32();
+        crc.update(payload.array());
+        return (int) crc.getValue() == checksum ? payload.array() : null;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buf, long offset) throws IOException {
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, offset + buf.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    @Override
+    public void acknowledge(SpooledSubmission submission) throws IOException {
+        writeCheckpoint(submission.segment, submission.offset);
+        for (; oldestSegment < submission.segment; oldestSegment++) {
+            Files.deleteIfExists(segmentFile(oldestSegment).toPath());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (appendLock) {
+            if (appendChannel != null) {
+                appendChannel.force(false);
+                appendChannel.close();
+                appendChannel = null;
+            }
+        }
+        closeReadChannel();
+    }
+
+    private static byte[] encode(SpooledSubmission s) throws IOException {
+        byte[] xml = s.getXml().getBytes(UTF_8);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(xml.length + 256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(0); // header, filled in below
+        out.writeByte(FORMAT);
+        writeString(out, s.getInstanceId());
+        writeString(out, s.getDeviceId());
+        writeString(out, s.getBinding());
+        writeString(out, s.getCampaign());
+        out.writeLong(s.getSubmitted() == null ? NO_DATE : s.getSubmitted().getTime());
+        out.writeInt(xml.length);
+        out.write(xml);
+        byte[] record = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(record, HEADER_SIZE, record.length - HEADER_SIZE);
+        ByteBuffer.wrap(record).putInt(record.length - HEADER_SIZE).putInt((int) crc.getValue());
+        return record;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static SpooledSubmission decode(byte[] payload, long segment, long offset) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte format = in.readByte();
+        if (format != FORMAT) {
+            throw new IOException("unsupported spool record format " + format);
+        }
+        String instanceId = readString(in), deviceId = readString(in), binding = readString(in), campaign = readString(in);
+        long submitted = in.readLong();
+        byte[] xml = new byte[in.readInt()];
+        in.readFully(xml);
+        return new SpooledSubmission(instanceId, deviceId, binding, campaign,
+                submitted == NO_DATE ? null : new Timestamp(submitted), new String(xml, UTF_8), segment, offset);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -2,8 +2,15 @@ package com.github.cimsbioko.server.webapi.odk;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.security.NoSuchAlgorithmException;
 
 public interface FileHasher {
     String hashFile(File file) throws IOException, NoSuchAlgorithmException;
+
+    /**
+     * Copies the stream to the output, returning the hash of the copied content.
+     */
+    String copyAndHash(InputStream in, OutputStream out) throws IOException, NoSuchAlgorithmException;
 }
@@ -1,8 +1,14 @@
 package com.github.cimsbioko.server.webapi.odk;
 
 import com.github.cimsbioko.server.service.FormMetadataService;
+import com.github.cimsbioko.server.service.FormSubmissionService;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.io.File;
+import java.io.IOException;
 
 @Configuration
 public class ODKConfig {
@@ -22,6 +28,11 @@ public class ODKConfig {
         return new DefaultSubmissionFileSystem();
     }
 
+    @Bean
+    SubmissionMediaIndex submissionMediaIndex() {
+        return new DefaultSubmissionMediaIndex();
+    }
+
     @Bean
     EndpointHelper odkEndpointHelper() {
         return new DefaultEndpointHelper();
@@ -43,7 +54,25 @@ public class ODKConfig {
     }
 
     @Bean
-    SubmissionJSONConverter submissionJSONConverter(FormMetadataService metadataService) {
-        return new DefaultSubmissionJSONConverter(metadataService);
+    SubmissionParser submissionParser(FormMetadataService metadataService, SubmissionIdGenerator idGenerator,
+                                      DateFormatter dateFormatter) {
+        return new DefaultSubmissionParser(metadataService, idGenerator, dateFormatter);
+    }
+
+    /**
+     * The spool is always opened, so submissions left in it are recorded even if spooling has since been disabled.
+     */
+    @Bean
+    SubmissionSpool submissionSpool(@Value("${app.submissions.spool.dir}") File spoolDir,
+                                    @Value("${app.submissions.spool.segmentsize:64MB}") String segmentSize)
+            throws IOException {
+        return new DefaultSubmissionSpool(spoolDir, DataSize.parse(segmentSize).toBytes());
+    }
+
+    @Bean
+    SubmissionSpoolWriter submissionSpoolWriter(SubmissionSpool spool, FormSubmissionService submissionService,
+                                                SubmissionParser parser,
+                                                @Value("${app.submissions.spool.batchsize:100}") int batchSize) {
+        return new SubmissionSpoolWriter(spool, submissionService, parser, batchSize);
     }
 }
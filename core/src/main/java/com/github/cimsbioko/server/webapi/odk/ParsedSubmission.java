@@ -0,0 +1,81 @@
+package com.github.cimsbioko.server.webapi.odk;
+
+import com.github.cimsbioko.server.util.SerializedDocument;
+import org.json.JSONObject;
+
+import java.sql.Timestamp;
+
+/**
+ * The result of reading a submission: its xml, with missing meta fields filled in, its json equivalent and the values
+ * required to record it.
+ */
+public class ParsedSubmission {
+
+    private final SerializedDocument xml;
+    private final JSONObject json;
+    private final String formId, formVersion, instanceId, deprecatedId, binding, campaign, submissionDate;
+    private final Timestamp collected;
+
+    ParsedSubmission(SerializedDocument xml, JSONObject json, String formId, String formVersion, String instanceId,
+                     String deprecatedId, String binding, String campaign, String submissionDate, Timestamp collected) {
+        this.xml = xml;
+        this.json = json;
+        this.formId = formId;
+        this.formVersion = formVersion;
+        this.instanceId = instanceId;
+        this.deprecatedId = deprecatedId;
+        this.binding = binding;
+        this.campaign = campaign;
+        this.submissionDate = submissionDate;
+        this.collected = collected;
+    }
+
+    public SerializedDocument getXml() {
+        return xml;
+    }
+
+    public JSONObject getJson() {
+        return json;
+    }
+
+    public String getFormId() {
+        return formId;
+    }
+
+    public String getFormVersion() {
+        return formVersion;
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    public String getDeprecatedId() {
+        return deprecatedId;
+    }
+
+    /**
+     * The value of the cims-binding attribute, or null if not specified.
+     */
+    public String getBinding() {
+        return binding;
+    }
+
+    /**
+     * The value of the cims-campaign attribute, or null if not specified.
+     */
+    public String getCampaign() {
+        return campaign;
+    }
+
+    /**
+     * The value of the submissionDate attribute, only present for previously submitted forms.
+     */
+    public String getSubmissionDate() {
+        return submissionDate;
+    }
+
+    public Timestamp getCollected() {
+        return collected;
+    }
+}
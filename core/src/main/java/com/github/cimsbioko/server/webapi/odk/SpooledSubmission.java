@@ -0,0 +1,60 @@
+package com.github.cimsbioko.server.webapi.odk;
+
+import java.sql.Timestamp;
+
+/**
+ * A received submission waiting in the {@link SubmissionSpool}: its serialized xml, with missing meta fields filled in,
+ * and the values resolved when it was received that can not be derived from the xml again.
+ */
+public class SpooledSubmission {
+
+    private final String instanceId, deviceId, binding, campaign, xml;
+    private final Timestamp submitted;
+
+    // the end of the submission in the spool, only set for taken submissions
+    final long segment, offset;
+
+    public SpooledSubmission(String instanceId, String deviceId, String binding, String campaign, Timestamp submitted,
+                             String xml) {
+        this(instanceId, deviceId, binding, campaign, submitted, xml, -1, -1);
+    }
+
+    SpooledSubmission(String instanceId, String deviceId, String binding, String campaign, Timestamp submitted,
+                      String xml, long segment, long offset) {
+        this.instanceId = instanceId;
+        this.deviceId = deviceId;
+        this.binding = binding;
+        this.campaign = campaign;
+        this.submitted = submitted;
+        this.xml = xml;
+        this.segment = segment;
+        this.offset = offset;
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public String getBinding() {
+        return binding;
+    }
+
+    public String getCampaign() {
+        return campaign;
+    }
+
+    /**
+     * The submission date supplied with the submission, or null if it was not previously submitted.
+     */
+    public Timestamp getSubmitted() {
+        return submitted;
+    }
+
+    public String getXml() {
+        return xml;
+    }
+}
@@ -0,0 +1,58 @@
+package com.github.cimsbioko.server.webapi.odk;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Base64;
+
+/**
+ * A position in a form's submissions, which are ordered by submission time, then instance id, so that submissions
+ * sharing a submission time are neither skipped nor repeated. It is exchanged with clients as an opaque resumption
+ * cursor.
+ */
+public class SubmissionCursor {
+
+    public static final SubmissionCursor START = new SubmissionCursor(new Timestamp(0), "");
+
+    private final Timestamp submitted;
+    private final String instanceId;
+
+    public SubmissionCursor(Timestamp submitted, String instanceId) {
+        this.submitted = submitted;
+        this.instanceId = instanceId;
+    }
+
+    public Timestamp getSubmitted() {
+        return submitted;
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    public String encode() {
+        String position = submitted.getTime() + ":" + submitted.getNanos() + ":" + instanceId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor, returning {@link #START} if empty. Cursors issued before cursors were opaque, which held only a
+     * submission time, resume from the first submission at that time.
+     *
+     * @throws IllegalArgumentException if the cursor is not valid
+     */
+    public static SubmissionCursor decode(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return START;
+        }
+        if (cursor.contains(" ")) {
+            return new SubmissionCursor(Timestamp.valueOf(cursor), "");
+        }
+        String[] position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":", 3);
+        if (position.length != 3) {
+            throw new IllegalArgumentException("invalid cursor: " + cursor);
+        }
+        Timestamp submitted = new Timestamp(Long.parseLong(position[0]));
+        submitted.setNanos(Integer.parseInt(position[1]));
+        return new SubmissionCursor(submitted, position[2]);
+    }
+}
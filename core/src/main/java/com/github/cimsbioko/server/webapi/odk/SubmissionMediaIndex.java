@@ -0,0 +1,57 @@
+package com.github.cimsbioko.server.webapi.odk;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Records the hash and size of the files uploaded with a submission, so they don't need to be read again to describe
+ * the submission.
+ */
+public interface SubmissionMediaIndex {
+
+    /**
+     * Adds or replaces the entries of files in the submission directory. The index is replaced atomically, so
+     * concurrent readers see either the previous or the updated index, never a partially written one.
+     */
+    void put(File submissionDir, Collection<Entry> entries) throws IOException;
+
+    /**
+     * Returns the recorded entries of files in the submission directory, keyed by file name.
+     */
+    Map<String, Entry> get(File submissionDir) throws IOException;
+
+    /**
+     * Whether the path is the index itself, rather than an uploaded file.
+     */
+    boolean isIndex(Path path);
+
+    class Entry {
+
+        private final String name, hash;
+        private final long size;
+
+        public Entry(String name, String hash, long size) {
+            this.name = name;
+            this.hash = hash;
+            this.size = size;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * The file's hash, prefixed with its scheme, as returned by {@link FileHasher}.
+         */
+        public String getHash() {
+            return hash;
+        }
+
+        public long getSize() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.github.cimsbioko.server.webapi.odk;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.InputStream;
+
+public interface SubmissionParser {
+    ParsedSubmission parse(InputStream in) throws XMLStreamException;
+}
@@ -1,31 +1,27 @@
 package com.github.cimsbioko.server.webapi.odk;
 
-import com.github.cimsbioko.server.dao.CampaignRepository;
-import com.github.cimsbioko.server.dao.FormRepository;
 import com.github.cimsbioko.server.dao.FormSubmissionRepository;
-import com.github.cimsbioko.server.domain.Campaign;
-import com.github.cimsbioko.server.domain.Form;
+import com.github.cimsbioko.server.dao.SubmissionKey;
 import com.github.cimsbioko.server.domain.FormId;
 import com.github.cimsbioko.server.domain.FormSubmission;
 import com.github.cimsbioko.server.exception.ExistingSubmissionException;
 import com.github.cimsbioko.server.service.CampaignService;
 import com.github.cimsbioko.server.service.FormSubmissionService;
-import org.jdom2.Document;
+import com.github.cimsbioko.server.service.IntakePolicyService;
+import com.github.cimsbioko.server.service.IntakePolicyService.FormIntake;
 import org.jdom2.Element;
-import org.jdom2.JDOMException;
-import org.jdom2.Namespace;
 import org.jdom2.output.Format;
 import org.jdom2.output.XMLOutputter;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.dao.DataAccessException;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -38,28 +34,33 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.multipart.MultipartHttpServletRequest;
 
+import javax.persistence.EntityManager;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.stream.XMLStreamException;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.security.NoSuchAlgorithmException;
 import java.sql.Timestamp;
 import java.text.ParseException;
-import java.util.List;
-import java.util.Map;
-import java.util.Optional;
+import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 import static com.github.cimsbioko.server.util.JDOMUtil.*;
 import static com.github.cimsbioko.server.webapi.odk.Constants.*;
-import static java.time.Instant.now;
 import static org.springframework.http.HttpHeaders.LOCATION;
 import static org.springframework.http.HttpStatus.OK;
 import static org.springframework.http.MediaType.*;
 import static org.springframework.security.web.util.UrlUtils.buildFullRequestUrl;
-import static org.springframework.util.StringUtils.isEmpty;
 
 @Controller
 @RequestMapping(ODK_API_PATH)
@@ -67,6 +68,8 @@ public class SubmissionResource {
 
     private static final Logger log = LoggerFactory.getLogger(SubmissionResource.class);
 
+    private static final int DEFAULT_ENTRIES = 100;
+
     @Autowired
     SubmissionFileSystem submissionFileSystem;
 
@@ -77,10 +80,7 @@ public class SubmissionResource {
     private FormSubmissionRepository submissionDao;
 
     @Autowired
-    private FormRepository formDao;
-
-    @Autowired
-    private CampaignRepository campaignRepo;
+    private IntakePolicyService intakePolicy;
 
     @Autowired
     private CampaignService campaignService;
@@ -101,7 +101,22 @@ public class SubmissionResource {
     private DateFormatter dateFormatter;
 
     @Autowired
-    private SubmissionJSONConverter jsonConverter;
+    private SubmissionParser submissionParser;
+
+    @Autowired
+    private SubmissionSpool submissionSpool;
+
+    @Autowired
+    private SubmissionMediaIndex mediaIndex;
+
+    @Value("${app.submissions.spool.enabled:false}")
+    private boolean spoolSubmissions;
+
+    @Value("${app.odk.submissions.maxentries:1000}")
+    private int maxEntries;
+
+    @Autowired
+    private EntityManager entityManager;
 
     @RequestMapping(value = {"/submission"}, method = RequestMethod.HEAD)
     public ResponseEntity<?> submissionPreAuth(HttpServletRequest req) {
@@ -148,9 +163,14 @@ public class SubmissionResource {
                                                                  @PathVariable String fileName, @PathVariable String extension) throws IOException {
         String filePath = submissionFileSystem.getSubmissionFilePath(idScheme, instanceId, fileName, extension);
         org.springframework.core.io.Resource submissionResource = new FileSystemResource(filePath);
-        return ResponseEntity
-                .ok()
-                .contentLength(submissionResource.contentLength())
+        File submissionDir = new File(submissionFileSystem.getSubmissionPath(idScheme, instanceId));
+        SubmissionMediaIndex.Entry indexed = mediaIndex.get(submissionDir).get(fileName + "." + extension);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (indexed != null) {
+            response.eTag(indexed.getHash());
+        }
+        return response
+                .contentLength(indexed != null ? indexed.getSize() : submissionResource.contentLength())
                 .contentType(APPLICATION_OCTET_STREAM)
                 .body(new InputStreamResource(submissionResource.getInputStream()));
     }
@@ -161,14 +181,15 @@ public class SubmissionResource {
     public ResponseEntity<ByteArrayResource> submissionList(@RequestParam("formId") String form,
                                                             @RequestParam(value = "cursor", required = false) String cursor,
                                                             @RequestParam(value = "numEntries", required = false) Integer limit) {
-        limit = limit == null || limit > 100 || limit <= 0 ? 100 : limit;
-        PageRequest page = PageRequest.of(0, limit, Sort.by(Sort.Direction.ASC, "submitted"));
-        List<FormSubmission> chunk;
-        if (isEmpty(cursor)) {
-            chunk = submissionDao.findByFormId(form, page);
-        } else {
-            chunk = submissionDao.findByFormIdAndSubmittedAfter(form, Timestamp.valueOf(cursor), page);
+        limit = limit == null || limit <= 0 ? DEFAULT_ENTRIES : Math.min(limit, maxEntries);
+        SubmissionCursor position;
+        try {
+            position = SubmissionCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
         }
+        List<SubmissionKey> chunk = submissionDao.findKeysByFormIdAfter(
+                form, position.getSubmitted(), position.getInstanceId(), PageRequest.of(0, limit));
         String chunkList = buildSubmissionChunk(chunk, cursor);
         return ResponseEntity
                 .ok()
@@ -176,9 +197,9 @@ public class SubmissionResource {
                 .body(new ByteArrayResource(chunkList.getBytes()));
     }
 
-    private String buildSubmissionChunk(List<FormSubmission> submissions, String cursor) {
+    private String buildSubmissionChunk(List<SubmissionKey> submissions, String cursor) {
         StringBuilder b = new StringBuilder("<idChunk xmlns=\"http://opendatakit.org/submissions\"><idList>");
-        for (FormSubmission s : submissions) {
+        for (SubmissionKey s : submissions) {
             b.append("<id>");
             b.append(s.getInstanceId());
             b.append("</id>");
@@ -186,9 +207,9 @@ public class SubmissionResource {
         b.append("</idList>");
         b.append("<resumptionCursor>");
         if (submissions.size() > 0) {
-            FormSubmission lastSubmission = submissions.get(submissions.size() - 1);
-            b.append(lastSubmission.getSubmitted());
-        } else {
+            SubmissionKey lastSubmission = submissions.get(submissions.size() - 1);
+            b.append(new SubmissionCursor(lastSubmission.getSubmitted(), lastSubmission.getInstanceId()).encode());
+        } else if (cursor != null) {
             b.append(cursor);
         }
         b.append("</resumptionCursor>");
@@ -196,6 +217,48 @@ public class SubmissionResource {
         return b.toString();
     }
 
+    /**
+     * Downloads the descriptors of many of a form's submissions at once, as returned by downloadSubmission, in the
+     * order and with the cursor used by submissionList. Submissions are read with a forward-only cursor and written as
+     * they are read, so the response is streamed rather than built in memory.
+     */
+    @GetMapping("/view/downloadSubmissions")
+    @Transactional(readOnly = true)
+    @PreAuthorize("hasAuthority('ODK_SUBMISSION_DOWNLOAD')")
+    public void downloadSubmissions(@RequestParam("formId") String form,
+                                    @RequestParam(value = "cursor", required = false) String cursor,
+                                    @RequestParam(value = "numEntries", required = false) Integer limit,
+                                    HttpServletRequest req, HttpServletResponse response) throws IOException {
+        limit = limit == null || limit <= 0 ? maxEntries : Math.min(limit, maxEntries);
+        SubmissionCursor position;
+        try {
+            position = SubmissionCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpStatus.BAD_REQUEST.value());
+            return;
+        }
+        String submissionBaseUrl = String.format("%s/submission",
+                buildFullRequestUrl(req).split("/view/downloadSubmissions")[0]);
+        response.setContentType(TEXT_XML_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        Writer out = response.getWriter();
+        out.write("<submissions xmlns=\"http://opendatakit.org/submissions\">");
+        try (Stream<FormSubmission> submissions = submissionDao.streamByFormIdAfter(
+                form, position.getSubmitted(), position.getInstanceId(), PageRequest.of(0, limit))) {
+            Iterator<FormSubmission> iterator = submissions.iterator();
+            while (iterator.hasNext()) {
+                FormSubmission submission = iterator.next();
+                out.write(buildSubmissionDescriptor(submission, submissionBaseUrl));
+                position = new SubmissionCursor(submission.getSubmitted(), submission.getInstanceId());
+                entityManager.detach(submission);
+            }
+        }
+        out.write("<resumptionCursor>");
+        out.write(position == SubmissionCursor.START ? "" : position.encode());
+        out.write("</resumptionCursor>");
+        out.write("</submissions>");
+    }
+
     @GetMapping("/view/downloadSubmission")
     @Transactional(readOnly = true)
     @PreAuthorize("hasAuthority('ODK_SUBMISSION_DOWNLOAD')")
@@ -219,8 +282,8 @@ public class SubmissionResource {
         StringBuilder b = new StringBuilder(
                 "<submission xmlns=\"http://opendatakit.org/submissions\" " +
                         "xmlns:orx=\"http://openrosa.org/xforms\" ><data>");
-        Document doc = submission.getXml();
-        Element root = doc.getRootElement();
+        // changes to the submission's document would be stored with it, attributes go on a copy
+        Element root = submission.getXml().getRootElement().clone();
         String instanceId = submission.getInstanceId();
         if (root.getAttribute(ID) == null) {
             root.setAttribute(ID, submission.getFormId());
@@ -234,25 +297,33 @@ public class SubmissionResource {
         if (root.getAttribute(SUBMISSION_DATE) == null) {
             root.setAttribute(SUBMISSION_DATE, dateFormatter.formatSubmitDate(submission.getSubmitted()));
         }
-        b.append(new XMLOutputter(Format.getRawFormat().setOmitDeclaration(true)).outputString(doc));
+        b.append(new XMLOutputter(Format.getRawFormat()).outputString(root));
         b.append("</data>");
         File submissionDir = submissionFileSystem.getSubmissionDir(instanceId);
         if (submissionDir.exists()) {
             log.debug("scanning {} for media files", submissionDir);
+            Map<String, SubmissionMediaIndex.Entry> index = mediaIndex.get(submissionDir);
+            List<SubmissionMediaIndex.Entry> unindexed = new ArrayList<>();
             Files.walk(submissionDir.toPath())
-                    .filter(path -> !(path.toFile().isDirectory() || path.toString().endsWith(".xml")))
+                    .filter(path -> !(path.toFile().isDirectory() || path.toString().endsWith(".xml") || mediaIndex.isIndex(path)))
                     .forEach(path -> {
                         try {
+                            String fileName = path.getFileName().toString();
+                            SubmissionMediaIndex.Entry entry = index.get(fileName);
+                            if (entry == null || entry.getSize() != path.toFile().length()) {
+                                // uploaded before files were indexed, or replaced since
+                                entry = new SubmissionMediaIndex.Entry(fileName, hasher.hashFile(path.toFile()), path.toFile().length());
+                                unindexed.add(entry);
+                            }
                             b.append("<mediaFile>");
                             b.append("<fileName>");
-                            b.append(path.getFileName());
+                            b.append(fileName);
                             b.append("</fileName>");
                             b.append("<hash>");
-                            b.append(MD5_SCHEME);
-                            b.append(hasher.hashFile(path.toFile()));
+                            b.append(entry.getHash());
                             b.append("</hash>");
                             String downloadUrl = String.format("%s/%s/%s",
-                                    submissionBaseUrl, instanceId, path.getFileName());
+                                    submissionBaseUrl, instanceId, fileName);
                             b.append("<downloadUrl>");
                             b.append(downloadUrl);
                             b.append("</downloadUrl>");
@@ -262,6 +333,10 @@ public class SubmissionResource {
                             log.error("failed to handle media file: " + path, e);
                         }
                     });
+            if (!unindexed.isEmpty()) {
+                // the index is only written when files had to be hashed, most descriptors leave it untouched
+                mediaIndex.put(submissionDir, unindexed);
+            }
         }
         b.append("</submission>");
         return b.toString();
@@ -282,73 +357,27 @@ public class SubmissionResource {
     public ResponseEntity<ByteArrayResource> handleSubmission(@RequestParam(value = DEVICE_ID, defaultValue = "unknown") String deviceId,
                                                               @RequestParam(XML_SUBMISSION_FILE) MultipartFile xmlFile,
                                                               MultipartHttpServletRequest req, Authentication auth)
-            throws IOException, URISyntaxException, JDOMException {
+            throws IOException, URISyntaxException, XMLStreamException, NoSuchAlgorithmException {
 
         log.info("received submission from device '{}'", deviceId);
 
-        Document xmlDoc = getBuilder().build(xmlFile.getInputStream());
-
-        if (log.isDebugEnabled()) {
-            log.debug("submitted form:\n{}", getOutputter().outputString(xmlDoc));
-        }
-
-        // retrieve or add meta element if it doesn't exist
-        Element rootElem = xmlDoc.getRootElement();
-
-        Namespace rootNs = rootElem.getNamespace(),
-                metaNs = Namespace.getNamespace("jr", "http://openrosa.org/xforms");
-
-        Element metaElem = getChild(rootElem, META, rootNs, metaNs);
-        if (metaElem == null) {
-            metaElem = new Element(META, metaNs);
-            rootElem.addContent(metaElem);
-        }
-
-        Namespace metaElemNs = metaElem.getNamespace();
-
-        // retrieve or add collection date/time if it doesn't exist
-        Timestamp collected;
-        Element collectionTimeElem = rootElem.getChild(COLLECTION_DATE_TIME, rootNs);
-        if (collectionTimeElem == null || collectionTimeElem.getText().isEmpty()) {
-            collected = Timestamp.from(now());
-            collectionTimeElem = new Element(COLLECTION_DATE_TIME, rootNs);
-            collectionTimeElem.setText(dateFormatter.formatCollectionDate(collected));
-            rootElem.addContent(collectionTimeElem);
-        } else {
-            collected = Timestamp.valueOf(collectionTimeElem.getText());
+        ParsedSubmission parsed;
+        try (InputStream in = xmlFile.getInputStream()) {
+            parsed = submissionParser.parse(in);
         }
 
-        // retrieve or add instance id
-        String instanceId = rootElem.getAttributeValue(INSTANCE_ID);
-        if (instanceId == null) {
-            Element instanceIdElem = metaElem.getChild(INSTANCE_ID, metaElemNs);
-            if (instanceIdElem == null) {
-                instanceId = idGenerator.generateId();
-                instanceIdElem = new Element(INSTANCE_ID, metaElemNs);
-                instanceIdElem.setText(instanceId);
-                metaElem.addContent(instanceIdElem);
-            } else if (instanceIdElem.getText().isEmpty()) {
-                instanceId = idGenerator.generateId();
-                instanceIdElem.setText(instanceId);
-            } else {
-                instanceId = instanceIdElem.getText();
-            }
+        if (log.isDebugEnabled()) {
+            log.debug("submitted form:\n{}", parsed.getXml().getSerialized());
         }
 
-        // Get required instance values
-        String id = rootElem.getAttributeValue(ID), version = rootElem.getAttributeValue(VERSION);
-
-        if (version == null) {
-            version = Constants.DEFAULT_VERSION;
-            rootElem.setAttribute(VERSION, version);
-        }
+        // Get required instance values, missing meta fields were added while parsing
+        String instanceId = parsed.getInstanceId(), id = parsed.getFormId(), version = parsed.getFormVersion();
 
         FormId formId = new FormId(id, version);
 
-        // FIXME: Use optional rather than null
-        Form form = formDao.findById(formId).orElse(null);
+        FormIntake intake = intakePolicy.getFormIntake(formId);
 
-        if (form == null) {
+        if (intake == FormIntake.UNKNOWN) {
             log.warn("rejected {}, unknown form id={}, version={}", instanceId, id, version);
             return ResponseEntity
                     .status(HttpStatus.NOT_FOUND)
@@ -356,7 +385,7 @@ public class SubmissionResource {
                     .contentType(MediaType.TEXT_XML)
                     .body(new ByteArrayResource(
                             responseBuilder.response(String.format("form %s version %s doesn't exist", id, version)).getBytes()));
-        } else if (!form.isSubmissions()) {
+        } else if (intake == FormIntake.DISABLED) {
             log.warn("rejected {}, submissions disabled for form id={}, version={}", instanceId, id, version);
             return ResponseEntity
                     .status(HttpStatus.FORBIDDEN)
@@ -367,13 +396,13 @@ public class SubmissionResource {
         } else {
 
             // Get CIMS-specific binding or fall back on form id
-            String binding = rootElem.getAttributeValue(CIMS_BINDING);
+            String binding = parsed.getBinding();
             if (binding == null) {
                 binding = id;
             }
 
-            String campaign = Optional.ofNullable(rootElem.getAttributeValue(CIMS_CAMPAIGN))
-                    .orElseGet(() -> campaignRepo.findDefault().map(Campaign::getUuid).orElse(null));
+            String campaign = Optional.ofNullable(parsed.getCampaign())
+                    .orElseGet(() -> intakePolicy.getDefaultCampaign().orElse(null));
 
             if (!campaignService.isMember(campaign, auth)) {
                 log.warn("rejected {}, no suitable campaign", instanceId);
@@ -391,44 +420,38 @@ public class SubmissionResource {
              */
             Timestamp submitted = null, processed = null;
             try {
-                processed = submitted = dateFormatter.parseSubmitDate(rootElem.getAttributeValue(SUBMISSION_DATE));
+                processed = submitted = dateFormatter.parseSubmitDate(parsed.getSubmissionDate());
             } catch (ParseException e) {
                 log.warn("failed to parse submission date", e);
             }
 
-            JSONObject json = jsonConverter.convert(xmlDoc, formId);
+            JSONObject json = parsed.getJson();
             log.debug("converted json:\n{}", json);
 
             // Create a database record for the submission
-            FormSubmission submission = new FormSubmission(instanceId, xmlDoc, json, id, version, binding, campaign,
-                    deviceId, collected, submitted, processed, null, null);
-            boolean isDuplicateSubmission = false;
-            try {
-                String deprecatedId = metaElem.getChildText(DEPRECATED_ID, metaElemNs);
-                submission = submissionService.recordSubmission(submission, deprecatedId);
-            } catch (ExistingSubmissionException e) {
-                log.debug("duplicate submission, only uploading attachments");
-                isDuplicateSubmission = true;
-            }
+            FormSubmission submission = new FormSubmission(instanceId, parsed.getXml(), json, id, version, binding,
+                    campaign, deviceId, parsed.getCollected(), submitted, processed, null, null);
 
             // Create directory to store submission
             File instanceDir = submissionFileSystem.getSubmissionDir(instanceId);
             instanceDir.mkdirs();
 
-            // Save uploaded files to the submission directory
-            for (Map.Entry<String, List<MultipartFile>> fileEntry : req.getMultiFileMap().entrySet()) {
-                if (isDuplicateSubmission && XML_SUBMISSION_FILE.equalsIgnoreCase(fileEntry.getKey())) {
-                    log.debug("skipping multipart file {}", XML_SUBMISSION_FILE);
-                } else {
-                    List<MultipartFile> files = fileEntry.getValue();
-                    if (files.size() == 1) {
-                        MultipartFile file = files.get(0);
-                        File dest = new File(instanceDir, file.getOriginalFilename());
-                        file.transferTo(dest);
-                    } else {
-                        log.warn("skipped multipart entry {}, had {} files", fileEntry.getKey(), files.size());
-                    }
+            if (spoolSubmissions) {
+                // Attachments are stored durably before spooling, the record is created in the background
+                String xmlFileName = xmlFile.getOriginalFilename();
+                boolean isDuplicateSubmission = xmlFileName != null && new File(instanceDir, xmlFileName).exists();
+                saveAttachments(req, instanceDir, isDuplicateSubmission, true);
+                submissionSpool.append(new SpooledSubmission(instanceId, deviceId, binding, campaign, submitted,
+                        parsed.getXml().getSerialized()));
+            } else {
+                boolean isDuplicateSubmission = false;
+                try {
+                    submission = submissionService.recordSubmission(submission, parsed.getDeprecatedId());
+                } catch (ExistingSubmissionException e) {
+                    log.debug("duplicate submission, only uploading attachments");
+                    isDuplicateSubmission = true;
                 }
+                saveAttachments(req, instanceDir, isDuplicateSubmission, false);
             }
 
             URI submissionUri = new URI(helper.contextRelativeUrl(req, "submission"));
@@ -441,13 +464,36 @@ public class SubmissionResource {
         }
     }
 
-    private Element getChild(Element parent, String cname, Namespace... nses) {
-        for (Namespace ns : nses) {
-            Element child = parent.getChild(cname, ns);
-            if (child != null) {
-                return child;
+    /**
+     * Saves the uploaded files to the submission directory, recording them in its media index.
+     *
+     * @param isDuplicateSubmission whether the submission was uploaded before, in which case its xml isn't overwritten
+     * @param sync                  whether to sync the files to disk before returning
+     */
+    private void saveAttachments(MultipartHttpServletRequest req, File instanceDir, boolean isDuplicateSubmission,
+                                 boolean sync) throws IOException, NoSuchAlgorithmException {
+        List<SubmissionMediaIndex.Entry> saved = new ArrayList<>();
+        for (Map.Entry<String, List<MultipartFile>> fileEntry : req.getMultiFileMap().entrySet()) {
+            if (isDuplicateSubmission && XML_SUBMISSION_FILE.equalsIgnoreCase(fileEntry.getKey())) {
+                log.debug("skipping multipart file {}", XML_SUBMISSION_FILE);
+            } else {
+                List<MultipartFile> files = fileEntry.getValue();
+                if (files.size() == 1) {
+                    MultipartFile file = files.get(0);
+                    File dest = new File(instanceDir, file.getOriginalFilename());
+                    // hashed while copying, so describing the submission doesn't need to read the file again
+                    try (InputStream in = file.getInputStream(); FileOutputStream out = new FileOutputStream(dest)) {
+                        String hash = hasher.copyAndHash(in, out);
+                        if (sync) {
+                            out.getChannel().force(true);
+                        }
+                        saved.add(new SubmissionMediaIndex.Entry(dest.getName(), hash, out.getChannel().position()));
+                    }
+                } else {
+                    log.warn("skipped multipart entry {}, had {} files", fileEntry.getKey(), files.size());
+                }
             }
         }
-        return null;
+        mediaIndex.put(instanceDir, saved);
     }
-}
\ No newline at end of file
+}
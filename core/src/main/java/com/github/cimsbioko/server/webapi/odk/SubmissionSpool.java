@@ -0,0 +1,30 @@
+package com.github.cimsbioko.server.webapi.odk;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A durable queue of received submissions waiting to be recorded. Submissions can be appended concurrently, but are
+ * taken and acknowledged by a single consumer.
+ */
+public interface SubmissionSpool {
+
+    /**
+     * Appends a submission, returning only once it is durably stored.
+     */
+    void append(SpooledSubmission submission) throws IOException;
+
+    /**
+     * Takes the next submissions, in the order they were appended, waiting up to the given time for one to arrive.
+     * Taken submissions are returned again after a restart, unless they are acknowledged.
+     *
+     * @return up to max submissions, empty if none arrived in time
+     */
+    List<SpooledSubmission> take(int max, long timeout, TimeUnit unit) throws IOException, InterruptedException;
+
+    /**
+     * Acknowledges the given submission and all those taken before it as recorded.
+     */
+    void acknowledge(SpooledSubmission submission) throws IOException;
+}
@@ -0,0 +1,145 @@
+package com.github.cimsbioko.server.webapi.odk;
+
+import com.github.cimsbioko.server.domain.FormSubmission;
+import com.github.cimsbioko.server.service.FormSubmissionService;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Drains the {@link SubmissionSpool} into the database. Submissions are recorded in batches, one transaction per batch,
+ * and acknowledged once their batch commits. It starts once the application is ready, so submissions left in the spool
+ * by a crash or shutdown are recorded before new ones. Recording skips submissions that already exist, so replaying
+ * submissions recorded but not acknowledged before a crash is harmless.
+ */
+public class SubmissionSpoolWriter implements ApplicationListener<ApplicationReadyEvent>, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(SubmissionSpoolWriter.class);
+
+    private static final long POLL_SECONDS = 1;
+    private static final Duration MAX_BACKOFF = Duration.ofMinutes(1);
+
+    private final SubmissionSpool spool;
+    private final FormSubmissionService submissionService;
+    private final SubmissionParser parser;
+    private final int batchSize;
+
+    private volatile boolean running;
+    private Thread thread;
+
+    public SubmissionSpoolWriter(SubmissionSpool spool, FormSubmissionService submissionService, SubmissionParser parser,
+                                 int batchSize) {
+        this.spool = spool;
+        this.submissionService = submissionService;
+        this.parser = parser;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public synchronized void onApplicationEvent(@NotNull ApplicationReadyEvent event) {
+        if (thread == null) {
+            running = true;
+            thread = new Thread(this::drain, "submission-spool");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        Thread toStop;
+        synchronized (this) {
+            running = false;
+            notifyAll();
+            toStop = thread;
+        }
+        if (toStop != null) {
+            // not interrupted, so a batch being recorded completes rather than abandoning its connection
+            toStop.join(TimeUnit.SECONDS.toMillis(30));
+        }
+    }
+
+    private void drain() {
+        long backoff = 0;
+        while (running) {
+            try {
+                List<SpooledSubmission> batch = spool.take(batchSize, POLL_SECONDS, TimeUnit.SECONDS);
+                if (!batch.isEmpty()) {
+                    record(batch);
+                    spool.acknowledge(batch.get(batch.size() - 1));
+                }
+                backoff = 0;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                backoff = Math.min(Math.max(backoff * 2, 1000), MAX_BACKOFF.toMillis());
+                log.warn("failed to record spooled submissions, retrying in {}ms", backoff, e);
+                pause(backoff);
+            }
+        }
+    }
+
+    private synchronized void pause(long millis) {
+        try {
+            if (running) {
+                wait(millis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    /**
+     * Records a batch, retrying its submissions one at a time if the batch violates a constraint, so that a single
+     * unrecordable submission doesn't hold up the rest. Other failures are thrown, to retry the batch later.
+     */
+    private void record(List<SpooledSubmission> batch) {
+        List<FormSubmission> submissions = new ArrayList<>(batch.size());
+        Map<String, String> deprecatedIds = new HashMap<>();
+        for (SpooledSubmission spooled : batch) {
+            try {
+                ParsedSubmission parsed = parser.parse(new ByteArrayInputStream(spooled.getXml().getBytes(UTF_8)));
+                submissions.add(new FormSubmission(parsed.getInstanceId(), parsed.getXml(), parsed.getJson(),
+                        parsed.getFormId(), parsed.getFormVersion(), spooled.getBinding(), spooled.getCampaign(),
+                        spooled.getDeviceId(), parsed.getCollected(), spooled.getSubmitted(), spooled.getSubmitted(),
+                        null, null));
+                if (parsed.getDeprecatedId() != null) {
+                    deprecatedIds.put(parsed.getInstanceId(), parsed.getDeprecatedId());
+                }
+            } catch (XMLStreamException e) {
+                // the uploaded xml remains in the submission directory
+                log.error("failed to parse spooled submission {}, skipping", spooled.getInstanceId(), e);
+            }
+        }
+        if (submissions.isEmpty()) {
+            return;
+        }
+        try {
+            log.debug("recorded {} of {} spooled submissions", submissionService.recordSubmissions(submissions,
+                    deprecatedIds).size(), submissions.size());
+        } catch (DataIntegrityViolationException e) {
+            log.warn("failed to record batch of spooled submissions, recording individually", e);
+            for (FormSubmission submission : submissions) {
+                try {
+                    submissionService.recordSubmissions(Collections.singletonList(submission), deprecatedIds);
+                } catch (DataIntegrityViolationException ie) {
+                    log.error("failed to record spooled submission {}, skipping", submission.getInstanceId(), ie);
+                }
+            }
+        }
+    }
+}
@@ -12,6 +12,7 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.context.request.WebRequest;
 
 import java.io.File;
+import java.util.Optional;
 
 import static com.github.cimsbioko.server.config.WebConfig.CACHED_FILES_PATH;
 
@@ -21,6 +22,7 @@ import static com.github.cimsbioko.server.config.WebConfig.CACHED_FILES_PATH;
  * tablets optimize bandwidth consumption:
  * <p>
  * <li>skip syncing when its local content is identical</li>
+ * <li>download a precomputed patch when its local content is a recently exported version</li>
  * <li>use zsync to efficiently synchronize with existing content</li>
  * <li>perform a full-download if zsync is not possible</li>
  */
@@ -28,7 +30,9 @@ import static com.github.cimsbioko.server.config.WebConfig.CACHED_FILES_PATH;
 public class MobileDatabaseResource {
 
     private static final String ACCEPT = "Accept";
+    private static final String IF_NONE_MATCH = "If-None-Match";
     static final String SQLITE_MIME_TYPE = "application/x-sqlite3";
+    static final String PATCH_MIME_TYPE = "application/vnd.cims.dbpatch";
 
     private final SyncService service;
     private final CampaignRepository campaignRepo;
@@ -38,13 +42,13 @@ public class MobileDatabaseResource {
         this.campaignRepo = campaignRepo;
     }
 
-    @GetMapping(value = "/api/rest/mobiledb", produces = {SQLITE_MIME_TYPE, Metadata.MIME_TYPE})
+    @GetMapping(value = "/api/rest/mobiledb", produces = {SQLITE_MIME_TYPE, Metadata.MIME_TYPE, PATCH_MIME_TYPE})
     @PreAuthorize("hasAuthority('MOBILE_SYNC') and @campaignService.isMember('default', #auth)")
     public String mobileDB(WebRequest request, Authentication auth) {
         return mobileDb(request, "default");
     }
 
-    @GetMapping(value = "/api/rest/mobiledb/{uuid}", produces = {SQLITE_MIME_TYPE, Metadata.MIME_TYPE})
+    @GetMapping(value = "/api/rest/mobiledb/{uuid}", produces = {SQLITE_MIME_TYPE, Metadata.MIME_TYPE, PATCH_MIME_TYPE})
     @PreAuthorize("hasAuthority('MOBILE_SYNC') and @campaignService.isMember(#uuid, #auth)")
     public String mobileDB(WebRequest request, @PathVariable String uuid, Authentication auth) {
         return mobileDb(request, uuid);
@@ -67,9 +71,29 @@ public class MobileDatabaseResource {
             return null;
         }
 
+        if (accept != null && accept.contains(PATCH_MIME_TYPE)) {
+            String campaign = uuid;
+            Optional<File> patch = getClientHash(request).flatMap(hash -> service.getPatch(campaign, hash));
+            if (patch.isPresent()) {
+                File patchFile = patch.get();
+                return "forward:" + CACHED_FILES_PATH + "/" + patchFile.getParentFile().getName() + "/" + patchFile.getName();
+            }
+        }
+
         if (accept != null && accept.contains(Metadata.MIME_TYPE) && metadataFile.exists()) {
             return "forward:" + CACHED_FILES_PATH + "/" + metadataFile.getName();
         }
         return "forward:" + CACHED_FILES_PATH + "/" + cacheFile.getName();
     }
+
+    /**
+     * Extracts the content hash of the client's current version from the entity tag it sent.
+     */
+    private static Optional<String> getClientHash(WebRequest request) {
+        return Optional.ofNullable(request.getHeader(IF_NONE_MATCH))
+                .map(value -> value.split(",")[0].trim())
+                .map(tag -> tag.startsWith("W/") ? tag.substring(2) : tag)
+                .map(tag -> tag.replace("\"", ""))
+                .filter(hash -> hash.matches("[0-9a-fA-F]+"));
+    }
 }
@@ -0,0 +1,49 @@
+-- add table to track changes to exported entities, used for incremental mobile db exports
+create table sync_change (
+  id bigserial primary key,
+  table_name varchar(255) not null,
+  row_uuid varchar(32) not null,
+  txid bigint not null default txid_current(),
+  changed timestamp not null default current_timestamp
+);
+
+create index sync_change_txid_idx on sync_change (table_name, txid);
+create index sync_change_changed_idx on sync_change (changed);
+
+-- add single-row table controlling whether changes are recorded, set by the application when incremental exports are
+-- enabled, and the change position from which the recorded changes are complete
+create table sync_change_tracking (
+  id boolean primary key default true check (id),
+  enabled boolean not null default false,
+  tracked_since bigint
+);
+
+insert into sync_change_tracking default values;
+
+-- create function to record changes to a row, while tracking is enabled
+create or replace function record_sync_change() returns trigger as $$
+begin
+  if not (select enabled from sync_change_tracking) then
+    return null;
+  end if;
+  if (TG_OP = 'DELETE') then
+    insert into sync_change (table_name, row_uuid) values (TG_TABLE_NAME, OLD.uuid);
+    return OLD;
+  end if;
+  insert into sync_change (table_name, row_uuid) values (TG_TABLE_NAME, NEW.uuid);
+  return NEW;
+end;
+$$ language plpgsql;
+
+-- record changes to the core entities
+create trigger location_sync_change after insert or update or delete on location
+  for each row execute procedure record_sync_change();
+
+create trigger individual_sync_change after insert or update or delete on individual
+  for each row execute procedure record_sync_change();
+
+create trigger locationhierarchy_sync_change after insert or update or delete on locationhierarchy
+  for each row execute procedure record_sync_change();
+
+create trigger fieldworker_sync_change after insert or update or delete on fieldworker
+  for each row execute procedure record_sync_change();
@@ -0,0 +1,11 @@
+-- add table to coordinate mobile db exports between application nodes
+create table sync_export (
+  campaign varchar(32) primary key references campaign(uuid) on delete cascade,
+  owner varchar(255),
+  lease_expires timestamp,
+  started timestamp,
+  finished timestamp,
+  progress integer not null default 0,
+  content_hash varchar(255),
+  paused boolean not null default false
+);
@@ -0,0 +1,2 @@
+-- allow cancelling an export from any application node
+alter table sync_export add column cancel_requested boolean not null default false;
@@ -0,0 +1 @@
+create index on form_submission (form_id, submitted, instanceid);
@@ -0,0 +1,72 @@
+package com.github.cimsbioko.server.hibernate;
+
+import com.github.cimsbioko.server.domain.FormSubmission;
+import org.hibernate.event.spi.FlushEntityEvent;
+import org.jdom2.Element;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SubmissionContentsListenerTest {
+
+    private static final String XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<data id=\"form\"><name>first</name></data>";
+    private static final String JSON = "{\"data\": {\"name\": \"first\"}}";
+
+    private FormSubmission submission;
+    private FlushEntityEvent event;
+    private SubmissionContentsListener listener;
+
+    @Before
+    public void setup() {
+        // as loaded, with contents only as text
+        submission = new FormSubmission();
+        ReflectionTestUtils.setField(submission, "xmlText", XML);
+        ReflectionTestUtils.setField(submission, "jsonText", JSON);
+        event = mock(FlushEntityEvent.class);
+        when(event.getEntity()).thenReturn(submission);
+        listener = new SubmissionContentsListener();
+    }
+
+    private Object stored(String field) {
+        return ReflectionTestUtils.getField(submission, field);
+    }
+
+    @Test
+    public void storesContentsChangedInPlace() {
+        submission.getJson().getJSONObject("data").put("name", "second");
+        submission.getXml().getRootElement().getChild("name").setText("second");
+        listener.onFlushEntity(event);
+        assertEquals("second", new JSONObject((String) stored("jsonText")).getJSONObject("data").get("name"));
+        assertTrue(((String) stored("xmlText")).contains("<name>second</name>"));
+    }
+
+    @Test
+    public void leavesUnchangedContentsAsLoaded() {
+        submission.getJson();
+        submission.getXml();
+        listener.onFlushEntity(event);
+        assertSame(JSON, stored("jsonText"));
+        assertSame(XML, stored("xmlText"));
+    }
+
+    @Test
+    public void storesChangesToContentsSetOnSubmission() {
+        JSONObject json = new JSONObject(JSON);
+        submission.setJson(json);
+        json.put("added", true);
+        listener.onFlushEntity(event);
+        assertTrue(new JSONObject((String) stored("jsonText")).getBoolean("added"));
+    }
+
+    @Test
+    public void ignoresOtherEntities() {
+        when(event.getEntity()).thenReturn(new Element("other"));
+        listener.onFlushEntity(event);
+        assertSame(JSON, stored("jsonText"));
+    }
+}
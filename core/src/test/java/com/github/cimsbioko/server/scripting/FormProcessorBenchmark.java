@@ -0,0 +1,110 @@
+package com.github.cimsbioko.server.scripting;
+
+import com.github.cimsbioko.server.domain.FormSubmission;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.ApplicationContext;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Compares running a campaign's form processor in interpreted and compiled script modes. The processor is
+ * representative of campaign scripts: it reads the submission's json, walks its repeats and builds values from its
+ * fields. Run with the test classpath using the main method. Since the context factory can only be registered once per
+ * jvm, each mode needs its own fork.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FormProcessorBenchmark {
+
+    private static final int FIELDS = 50;
+    private static final int REPEATS = 10;
+
+    private static final String INIT_MODULE = "var util = require('./util');\n" +
+            "exports.formProcessors = {\n" +
+            "  bench: new FormProcessor({\n" +
+            "    process: function(submission) {\n" +
+            "      var data = JSON.parse(submission.json.toString()).data, names = [], total = 0;\n" +
+            "      data.member.forEach(function(m) {\n" +
+            "        names.push(util.titleCase(m.name));\n" +
+            "        total += parseInt(m.age, 10);\n" +
+            "      });\n" +
+            "      var fields = Object.keys(data).filter(function(k) { return k.indexOf('field') === 0; });\n" +
+            "      util.result = names.join(', ') + ' ' + total + ' ' + fields.map(function(f) {\n" +
+            "        return data[f].toUpperCase();\n" +
+            "      }).join('|');\n" +
+            "    }\n" +
+            "  })\n" +
+            "};\n";
+
+    private static final String UTIL_MODULE = "exports.titleCase = function(s) {\n" +
+            "  return s.split(' ').map(function(w) { return w.charAt(0).toUpperCase() + w.substring(1); }).join(' ');\n" +
+            "};\n";
+
+    @Param({ContextFactory.INTERPRETED_MODE, ContextFactory.COMPILED_MODE})
+    public String mode;
+
+    private File campaign;
+    private JsConfig config;
+    private FormProcessor processor;
+    private FormSubmission submission;
+
+    @Setup
+    public void setUp() throws IOException, URISyntaxException {
+        ContextFactory.register(false, mode);
+        campaign = File.createTempFile("campaign", ".zip");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(campaign))) {
+            putEntry(out, "server/init.js", INIT_MODULE);
+            putEntry(out, "server/util.js", UTIL_MODULE);
+        }
+        config = new JsConfig(campaign, mock(ApplicationContext.class)).load();
+        processor = config.getFormProcessors().get("bench");
+        JSONObject data = new JSONObject();
+        for (int i = 0; i < FIELDS; i++) {
+            data.put("field" + i, "value " + i);
+        }
+        for (int r = 0; r < REPEATS; r++) {
+            data.append("member", new JSONObject().put("name", "member number " + r).put("age", String.valueOf(r)));
+        }
+        submission = new FormSubmission();
+        submission.setJson(new JSONObject().put("data", data));
+    }
+
+    private static void putEntry(ZipOutputStream out, String name, String content) throws IOException {
+        out.putNextEntry(new ZipEntry(name));
+        out.write(content.getBytes(StandardCharsets.UTF_8));
+        out.closeEntry();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        config.close();
+        campaign.delete();
+    }
+
+    @Benchmark
+    public FormSubmission process() {
+        processor.process(submission);
+        return submission;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(FormProcessorBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,128 @@
+package com.github.cimsbioko.server.service.impl;
+
+import com.github.cimsbioko.server.dao.FieldWorkerRepository;
+import com.github.cimsbioko.server.dao.IndividualRepository;
+import com.github.cimsbioko.server.dao.LocationHierarchyRepository;
+import com.github.cimsbioko.server.dao.LocationRepository;
+import com.github.cimsbioko.server.domain.Location;
+import com.github.cimsbioko.server.service.EntityResolver;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+import java.util.Calendar;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+public class EntityResolverImplTest {
+
+    private EntityManager em;
+    private LocationRepository locationRepo;
+    private EntityResolver resolver;
+
+    @Before
+    public void setup() {
+        em = mock(EntityManager.class);
+        when(em.contains(any())).thenReturn(true);
+        locationRepo = mock(LocationRepository.class);
+        when(locationRepo.save(any(Location.class))).then(invocation -> invocation.getArgument(0));
+        resolver = new EntityResolverImpl(em, locationRepo, mock(IndividualRepository.class),
+                mock(LocationHierarchyRepository.class), mock(FieldWorkerRepository.class));
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @After
+    public void teardown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertTrue(TransactionSynchronizationManager.getResourceMap().isEmpty());
+    }
+
+    private static Location location(String uuid, String extId) {
+        Location location = new Location();
+        location.setUuid(uuid);
+        location.setExtId(extId);
+        return location;
+    }
+
+    @Test
+    public void cachesLookupsWithinTransaction() {
+        Location location = location("1", "M1");
+        when(locationRepo.findByExtIdAndDeletedIsNull("M1")).thenReturn(singletonList(location));
+        assertEquals(singletonList(location), resolver.findLocations("M1"));
+        assertEquals(singletonList(location), resolver.findLocations("M1"));
+        verify(locationRepo, times(1)).findByExtIdAndDeletedIsNull("M1");
+    }
+
+    @Test
+    public void prefetchesInSingleQuery() {
+        Location m1 = location("1", "M1"), m2 = location("2", "M2");
+        when(locationRepo.findByExtIdInAndDeletedIsNull(anyCollection())).thenReturn(asList(m1, m2));
+        resolver.prefetchLocations(asList("M1", "M2", "M3"));
+        assertEquals(singletonList(m1), resolver.findLocations("M1"));
+        assertEquals(singletonList(m2), resolver.findLocations("M2"));
+        verify(locationRepo, times(1)).findByExtIdInAndDeletedIsNull(anyCollection());
+        verify(locationRepo, never()).findByExtIdAndDeletedIsNull(any());
+        // ids not found aren't cached
+        when(locationRepo.findByExtIdAndDeletedIsNull("M3")).thenReturn(emptyList());
+        assertTrue(resolver.findLocations("M3").isEmpty());
+        verify(locationRepo, times(1)).findByExtIdAndDeletedIsNull("M3");
+    }
+
+    @Test
+    public void reflectsCreatedAndVoidedEntities() {
+        Location existing = location("1", "M1");
+        when(locationRepo.findByExtIdAndDeletedIsNull("M1")).thenReturn(singletonList(existing));
+        assertEquals(singletonList(existing), resolver.findLocations("M1"));
+        Location created = resolver.save(location("2", "M1"));
+        assertEquals(asList(existing, created), resolver.findLocations("M1"));
+        created.setDeleted(Calendar.getInstance());
+        resolver.save(created);
+        assertEquals(singletonList(existing), resolver.findLocations("M1"));
+        verify(locationRepo, times(1)).findByExtIdAndDeletedIsNull("M1");
+    }
+
+    @Test
+    public void findsEntitiesCreatedAfterEmptyLookups() {
+        when(locationRepo.findByExtIdAndDeletedIsNull("M1")).thenReturn(emptyList());
+        assertTrue(resolver.findLocations("M1").isEmpty());
+        // created through the repository, and visible to queries once flushed
+        Location created = location("1", "M1");
+        when(locationRepo.findByExtIdAndDeletedIsNull("M1")).thenReturn(singletonList(created));
+        assertEquals(singletonList(created), resolver.findLocations("M1"));
+        assertEquals(singletonList(created), resolver.findLocations("M1"));
+        verify(locationRepo, times(2)).findByExtIdAndDeletedIsNull("M1");
+    }
+
+    @Test
+    public void queriesAgainWhenEntitiesAreNoLongerManaged() {
+        Location location = location("1", "M1");
+        when(locationRepo.findByExtIdAndDeletedIsNull("M1")).thenReturn(singletonList(location));
+        resolver.findLocations("M1");
+        when(em.contains(location)).thenReturn(false);
+        resolver.findLocations("M1");
+        verify(locationRepo, times(2)).findByExtIdAndDeletedIsNull("M1");
+    }
+
+    @Test
+    public void doesNotCacheOutsideTransactions() {
+        TransactionSynchronizationManager.clearSynchronization();
+        when(locationRepo.findByExtIdAndDeletedIsNull("M1")).thenReturn(emptyList());
+        resolver.findLocations("M1");
+        resolver.findLocations("M1");
+        verify(locationRepo, times(2)).findByExtIdAndDeletedIsNull("M1");
+    }
+}
@@ -0,0 +1,48 @@
+package com.github.cimsbioko.server.service.impl;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.time.Duration;
+import java.util.Date;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class FormProcessingTriggerTest {
+
+    private ScheduledFormProcessing processing;
+    private TaskScheduler scheduler;
+
+    @Before
+    public void setup() {
+        processing = mock(ScheduledFormProcessing.class);
+        scheduler = mock(TaskScheduler.class);
+    }
+
+    @Test
+    public void coalescesEventsWithinDebounceWindow() {
+        FormProcessingTrigger trigger = new FormProcessingTrigger(processing, scheduler, Duration.ofSeconds(5), true);
+        trigger.onSubmissionsRecorded(new SubmissionsRecordedEvent(1));
+        trigger.onSubmissionsRecorded(new SubmissionsRecordedEvent(3));
+
+        ArgumentCaptor<Runnable> scheduled = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler, times(1)).schedule(scheduled.capture(), any(Date.class));
+        verify(processing, never()).processForms();
+
+        scheduled.getValue().run();
+        verify(processing, times(1)).processForms();
+
+        trigger.onSubmissionsRecorded(new SubmissionsRecordedEvent(1));
+        verify(scheduler, times(2)).schedule(any(Runnable.class), any(Date.class));
+    }
+
+    @Test
+    public void ignoresEventsWhenDisabled() {
+        FormProcessingTrigger trigger = new FormProcessingTrigger(processing, scheduler, Duration.ofSeconds(5), false);
+        trigger.onSubmissionsRecorded(new SubmissionsRecordedEvent(1));
+        verifyZeroInteractions(scheduler, processing);
+    }
+}
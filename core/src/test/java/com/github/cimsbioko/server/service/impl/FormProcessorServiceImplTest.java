@@ -0,0 +1,235 @@
+package com.github.cimsbioko.server.service.impl;
+
+import com.github.cimsbioko.server.dao.CampaignRepository;
+import com.github.cimsbioko.server.dao.FormSubmissionRepository;
+import com.github.cimsbioko.server.domain.Campaign;
+import com.github.cimsbioko.server.domain.FormSubmission;
+import com.github.cimsbioko.server.domain.Individual;
+import com.github.cimsbioko.server.domain.Location;
+import com.github.cimsbioko.server.scripting.FormProcessor;
+import com.github.cimsbioko.server.scripting.JsConfig;
+import com.github.cimsbioko.server.service.FormProcessorService;
+import com.github.cimsbioko.server.service.impl.campaign.CampaignLoadedEvent;
+import org.hibernate.Session;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.search.SearchFactory;
+import org.hibernate.search.jpa.FullTextEntityManager;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.springframework.context.ApplicationContext;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.interceptor.TransactionInterceptor;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Savepoint;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.*;
+
+public class FormProcessorServiceImplTest {
+
+    private static final String CAMPAIGN = "campaign";
+    private static final String BINDING = "binding";
+
+    private static final String SCRIPTED_CAMPAIGN = "scripted";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FullTextEntityManager em;
+    private IndexedChangeTracker tracker;
+    private FormProcessor processor;
+    private FormProcessorServiceImpl impl;
+    private FormProcessorService service;
+
+    @Before
+    public void setup() {
+        em = mock(FullTextEntityManager.class);
+        Session session = mock(Session.class);
+        when(em.unwrap(Session.class)).thenReturn(session);
+        when(session.doReturningWork(any())).thenReturn(mock(Savepoint.class));
+        SearchFactory searchFactory = mock(SearchFactory.class);
+        when(searchFactory.getIndexedTypes()).thenReturn(new HashSet<>(Arrays.asList(Individual.class, Location.class)));
+        when(em.getSearchFactory()).thenReturn(searchFactory);
+
+        Campaign campaign = new Campaign();
+        campaign.setUuid(CAMPAIGN);
+        CampaignRepository campaignRepo = mock(CampaignRepository.class);
+        when(campaignRepo.findActiveByUuid(CAMPAIGN)).thenReturn(Optional.of(campaign));
+        Campaign scripted = new Campaign();
+        scripted.setUuid(SCRIPTED_CAMPAIGN);
+        when(campaignRepo.findActiveByUuid(SCRIPTED_CAMPAIGN)).thenReturn(Optional.of(scripted));
+
+        tracker = new IndexedChangeTracker();
+        impl = new FormProcessorServiceImpl(campaignRepo, em,
+                new FormProcessingMetrics(mock(FormSubmissionRepository.class)), tracker);
+        processor = mock(FormProcessor.class);
+        JsConfig config = mock(JsConfig.class);
+        when(config.getFormProcessors()).thenReturn(Collections.singletonMap(BINDING, processor));
+        CampaignLoadedEvent loaded = mock(CampaignLoadedEvent.class);
+        when(loaded.getUuid()).thenReturn(CAMPAIGN);
+        when(loaded.getConfig()).thenReturn(config);
+        impl.onCampaignLoaded(loaded);
+
+        // processAll requires the transaction it joins
+        PlatformTransactionManager txManager = mock(PlatformTransactionManager.class);
+        when(txManager.getTransaction(any())).thenAnswer(i -> new SimpleTransactionStatus());
+        ProxyFactory proxyFactory = new ProxyFactory(impl);
+        proxyFactory.addAdvice(new TransactionInterceptor(txManager, new AnnotationTransactionAttributeSource()));
+        service = (FormProcessorService) proxyFactory.getProxy();
+    }
+
+    /**
+     * Receives a processor from js, which converts functions passed as single-method interfaces.
+     */
+    public static class ProcessorHolder {
+
+        private FormProcessor processor;
+
+        public void setProcessor(FormProcessor processor) {
+            this.processor = processor;
+        }
+    }
+
+    private void loadScriptedCampaign(String init) throws IOException, URISyntaxException {
+        File campaign = folder.newFile("campaign.zip");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(campaign))) {
+            out.putNextEntry(new ZipEntry("server/init.js"));
+            out.write(init.getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+        JsConfig config = new JsConfig(campaign, mock(ApplicationContext.class)).load();
+        CampaignLoadedEvent loaded = mock(CampaignLoadedEvent.class);
+        when(loaded.getUuid()).thenReturn(SCRIPTED_CAMPAIGN);
+        when(loaded.getConfig()).thenReturn(config);
+        impl.onCampaignLoaded(loaded);
+    }
+
+    private static FormSubmission submission(String instanceId) {
+        FormSubmission submission = new FormSubmission();
+        submission.setInstanceId(instanceId);
+        submission.setCampaignId(CAMPAIGN);
+        submission.setFormBinding(BINDING);
+        return submission;
+    }
+
+    private static <T> T entity(T entity, String uuid) {
+        if (entity instanceof Individual) {
+            ((Individual) entity).setUuid(uuid);
+        } else {
+            ((Location) entity).setUuid(uuid);
+        }
+        return entity;
+    }
+
+    @Test
+    public void restoresIndexForRolledBackSubmission() {
+        FormSubmission first = submission("uuid:1"), second = submission("uuid:2");
+        Individual rolledBack = entity(new Individual(), "individual"), current = entity(new Individual(), "individual");
+        doAnswer(i -> {
+            FormSubmission submission = i.getArgument(0);
+            if (submission == first) {
+                tracker.onPostUpdate(new PostUpdateEvent(entity(new Location(), "kept"), "kept", null, null, null,
+                        null, null));
+            } else {
+                // flushed changes, queueing index updates, before failing
+                tracker.onPostUpdate(new PostUpdateEvent(rolledBack, "individual", null, null, null, null, null));
+                tracker.onPostInsert(new PostInsertEvent(entity(new Location(), "created"), "created", null, null,
+                        null));
+                throw new IllegalStateException("processing failed");
+            }
+            return null;
+        }).when(processor).process(any());
+        when(em.find(Individual.class, "individual")).thenReturn(current);
+
+        Map<FormSubmission, RuntimeException> failures = service.processAll(Arrays.asList(first, second));
+
+        assertEquals(Collections.singleton(second), failures.keySet());
+        verify(em).clear();
+        verify(em).index(same(current));
+        verify(em).purge(Location.class, "created");
+        verify(em, never()).find(Location.class, "kept");
+        verify(em, never()).index(same(rolledBack));
+    }
+
+    @Test
+    public void leavesIndexUpdatesOfSuccessfulSubmissions() {
+        doAnswer(i -> {
+            tracker.onPostUpdate(new PostUpdateEvent(entity(new Individual(), "individual"), "individual", null, null,
+                    null, null, null));
+            return null;
+        }).when(processor).process(any());
+
+        Map<FormSubmission, RuntimeException> failures = service.processAll(Collections.singletonList(submission("uuid:1")));
+
+        assertEquals(Collections.emptyMap(), failures);
+        verify(em, never()).clear();
+        verify(em, never()).index(any());
+        verify(em, never()).purge(any(), any());
+    }
+
+    @Test
+    public void convertsFunctionsToProcessorsWithDefaultOrdering() {
+        ProcessorHolder holder = new ProcessorHolder();
+        Context cx = Context.enter();
+        try {
+            Scriptable scope = cx.initSafeStandardObjects();
+            ScriptableObject.putProperty(scope, "holder", Context.javaToJS(holder, scope));
+            cx.evaluateString(scope, "holder.setProcessor(function(submission) {\n" +
+                    "  submission.deviceId = submission.deviceId + '+processed';\n" +
+                    "});", "processor", 1, null);
+        } finally {
+            Context.exit();
+        }
+        JsConfig config = mock(JsConfig.class);
+        when(config.getFormProcessors()).thenReturn(Collections.singletonMap(BINDING, holder.processor));
+        CampaignLoadedEvent loaded = mock(CampaignLoadedEvent.class);
+        when(loaded.getUuid()).thenReturn(SCRIPTED_CAMPAIGN);
+        when(loaded.getConfig()).thenReturn(config);
+        impl.onCampaignLoaded(loaded);
+        FormSubmission submission = submission("uuid:1");
+        submission.setCampaignId(SCRIPTED_CAMPAIGN);
+        submission.setDeviceId("device");
+
+        assertEquals(SCRIPTED_CAMPAIGN + "/", service.getOrderingKey(submission));
+        assertEquals("device", submission.getDeviceId());
+
+        service.process(submission);
+        assertEquals("device+processed", submission.getDeviceId());
+    }
+
+    @Test
+    public void usesOrderingKeysOfOrderedProcessors() throws IOException, URISyntaxException {
+        loadScriptedCampaign("exports.formProcessors = {\n" +
+                "  binding: new OrderedFormProcessor({\n" +
+                "    process: function(submission) {},\n" +
+                "    orderingKey: function(submission) { return submission.deviceId || null; }\n" +
+                "  })\n" +
+                "};\n");
+        FormSubmission keyed = submission("uuid:1"), unkeyed = submission("uuid:2");
+        keyed.setCampaignId(SCRIPTED_CAMPAIGN);
+        keyed.setDeviceId("device");
+        unkeyed.setCampaignId(SCRIPTED_CAMPAIGN);
+
+        assertEquals(SCRIPTED_CAMPAIGN + "/device", service.getOrderingKey(keyed));
+        assertEquals(SCRIPTED_CAMPAIGN + "/", service.getOrderingKey(unkeyed));
+    }
+}
@@ -0,0 +1,92 @@
+package com.github.cimsbioko.server.service.impl;
+
+import com.github.cimsbioko.server.domain.Form;
+import com.github.cimsbioko.server.domain.FormId;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class LastSubmissionServiceImplTest {
+
+    private static final FormId FORM = new FormId("form", "1");
+
+    private JdbcTemplate jdbcTemplate;
+    private LastSubmissionServiceImpl service;
+
+    @Before
+    public void setup() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        service = new LastSubmissionServiceImpl(jdbcTemplate);
+    }
+
+    /**
+     * Runs a flush, returning the statements it bound for each of the forms it wrote.
+     */
+    @SuppressWarnings("unchecked")
+    private List<PreparedStatement> flushed(Runnable flush) throws SQLException {
+        ArgumentCaptor<Collection<Object>> entries = ArgumentCaptor.forClass(Collection.class);
+        ArgumentCaptor<ParameterizedPreparedStatementSetter<Object>> setter =
+                ArgumentCaptor.forClass(ParameterizedPreparedStatementSetter.class);
+        flush.run();
+        verify(jdbcTemplate).batchUpdate(anyString(), entries.capture(), anyInt(), setter.capture());
+        List<PreparedStatement> statements = new ArrayList<>();
+        for (Object entry : entries.getValue()) {
+            PreparedStatement ps = mock(PreparedStatement.class);
+            setter.getValue().setValues(ps, entry);
+            statements.add(ps);
+        }
+        return statements;
+    }
+
+    @Test
+    public void coalescesSubmissionsIntoLatestTime() throws SQLException {
+        service.submitted(FORM, new Timestamp(1000));
+        service.submitted(FORM, new Timestamp(3000));
+        service.submitted(FORM, new Timestamp(2000));
+        assertEquals(new Timestamp(3000), service.getLastSubmission(new Form(FORM, null)));
+
+        List<PreparedStatement> statements = flushed(service::flush);
+        assertEquals(1, statements.size());
+        verify(statements.get(0), times(2)).setTimestamp(anyInt(), eq(new Timestamp(3000)));
+        verify(statements.get(0)).setString(3, "form");
+        verify(statements.get(0)).setString(4, "1");
+
+        // nothing left to write
+        service.flush();
+        verifyNoMoreInteractions(jdbcTemplate);
+    }
+
+    @Test
+    public void drainsOnShutdown() throws SQLException {
+        service.submitted(FORM, new Timestamp(1000));
+        assertEquals(1, flushed(service::destroy).size());
+        assertNull(service.getLastSubmission(new Form(FORM, null)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void keepsTimesRecordedWhileFlushing() {
+        service.submitted(FORM, new Timestamp(1000));
+        when(jdbcTemplate.batchUpdate(anyString(), any(Collection.class), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class))).thenAnswer(i -> {
+            service.submitted(FORM, new Timestamp(2000));
+            return new int[0][];
+        });
+        service.flush();
+        assertEquals(new Timestamp(2000), service.getLastSubmission(new Form(FORM, null)));
+    }
+}
@@ -0,0 +1,156 @@
+package com.github.cimsbioko.server.service.impl;
+
+import com.github.cimsbioko.server.dao.FormSubmissionRepository;
+import com.github.cimsbioko.server.domain.FormSubmission;
+import com.github.cimsbioko.server.service.ErrorService;
+import com.github.cimsbioko.server.service.FormProcessorService;
+import com.github.cimsbioko.server.service.FormSubmissionService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManager;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class ScheduledFormProcessingTest {
+
+    private static final int SUBMISSIONS = 200;
+    private static final String[] BINDINGS = {"a", "b", "c", "d"};
+
+    private FormSubmissionService formsService;
+    private FormProcessorService processorService;
+    private ErrorService errorService;
+    private MeterRegistry registry;
+    private ScheduledFormProcessing processing;
+
+    private List<FormSubmission> submissions;
+    private Map<String, List<String>> processedByKey;
+    private Set<String> threads;
+
+    @Before
+    public void setup() {
+        formsService = mock(FormSubmissionService.class);
+        processorService = mock(FormProcessorService.class);
+        errorService = mock(ErrorService.class);
+        registry = new SimpleMeterRegistry();
+        FormProcessingMetrics metrics = new FormProcessingMetrics(mock(FormSubmissionRepository.class));
+        metrics.bindTo(registry);
+        processing = new ScheduledFormProcessing(mock(EntityManager.class), formsService, processorService, errorService,
+                mock(PlatformTransactionManager.class), metrics);
+
+        submissions = new ArrayList<>();
+        for (int i = 0; i < SUBMISSIONS; i++) {
+            FormSubmission submission = new FormSubmission();
+            submission.setInstanceId(String.format("uuid:%03d", i));
+            submission.setFormBinding(BINDINGS[i % BINDINGS.length]);
+            submissions.add(submission);
+        }
+        when(formsService.getUnprocessed(anyInt())).thenAnswer(invocation -> submissions.stream());
+        when(processorService.getOrderingKey(any())).thenAnswer(invocation -> {
+            FormSubmission submission = invocation.getArgument(0);
+            return "campaign/" + submission.getFormBinding();
+        });
+
+        processedByKey = new ConcurrentHashMap<>();
+        threads = ConcurrentHashMap.newKeySet();
+        doAnswer(invocation -> {
+            FormSubmission submission = invocation.getArgument(0);
+            threads.add(Thread.currentThread().getName());
+            processedByKey.computeIfAbsent(submission.getFormBinding(), k -> new CopyOnWriteArrayList<>())
+                    .add(submission.getInstanceId());
+            if ("uuid:007".equals(submission.getInstanceId())) {
+                throw new IllegalStateException("processing failed");
+            }
+            return null;
+        }).when(processorService).process(any());
+        when(processorService.processAll(any())).thenAnswer(invocation -> {
+            List<FormSubmission> chunk = invocation.getArgument(0);
+            Map<FormSubmission, RuntimeException> failures = new LinkedHashMap<>();
+            for (FormSubmission submission : chunk) {
+                try {
+                    processorService.process(submission);
+                } catch (RuntimeException e) {
+                    failures.put(submission, e);
+                }
+            }
+            return failures;
+        });
+    }
+
+    @Test
+    public void processesInOrderByDefault() {
+        processing.processForms();
+        assertOrderedByKey();
+        assertEquals(1, threads.size());
+    }
+
+    @Test
+    public void processesKeysConcurrentlyAndInOrder() {
+        processing.setWorkers(4);
+        processing.processForms();
+        assertOrderedByKey();
+        assertTrue(threads.stream().allMatch(name -> name.startsWith("formproc-worker-")));
+        verify(errorService).logError(eq(submissions.get(7)), any());
+        verify(formsService).markProcessed(submissions.get(7), false);
+    }
+
+    @Test
+    public void processesChunksInSingleTransactions() {
+        processing.setWorkers(4);
+        processing.setChunkSize(10);
+        processing.processForms();
+        assertOrderedByKey(0);
+        verify(processorService, times(SUBMISSIONS / 10)).processAll(any());
+        verify(formsService, times(SUBMISSIONS / 10)).markProcessed(anyCollection(), anyCollection());
+        verify(formsService).markProcessed(anyCollection(), eq(Collections.singleton(submissions.get(7))));
+        verify(errorService).logErrors(argThat(messages -> messages.containsKey(submissions.get(7))));
+        verify(errorService, never()).logError(any(), any());
+    }
+
+    @Test
+    public void processesIndividuallyWhenChunkFails() {
+        processing.setChunkSize(10);
+        doThrow(new IllegalStateException("transaction marked rollback only")).when(processorService).processAll(any());
+        processing.processForms();
+        assertOrderedByKey();
+        verify(processorService, times(SUBMISSIONS / 10)).processAll(any());
+        verify(formsService, never()).markProcessed(anyCollection(), anyCollection());
+    }
+
+    private void assertOrderedByKey() {
+        assertOrderedByKey(SUBMISSIONS);
+    }
+
+    private void assertOrderedByKey(int individuallyMarked) {
+        verify(formsService, times(individuallyMarked)).markProcessed(any(FormSubmission.class), any());
+        for (String binding : BINDINGS) {
+            List<String> expected = new ArrayList<>();
+            submissions.stream()
+                    .filter(s -> binding.equals(s.getFormBinding()))
+                    .forEach(s -> expected.add(s.getInstanceId()));
+            assertEquals(expected, processedByKey.get(binding));
+        }
+        assertEquals(SUBMISSIONS - 1, countOutcomes("success"));
+        assertEquals(1, countOutcomes("failure"));
+    }
+
+    private long countOutcomes(String outcome) {
+        return (long) registry.find("formproc.submissions").tag("outcome", outcome).counters().stream()
+                .mapToDouble(Counter::count)
+                .sum();
+    }
+}
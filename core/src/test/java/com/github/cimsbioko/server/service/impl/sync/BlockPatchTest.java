@@ -0,0 +1,68 @@
+package com.github.cimsbioko.server.service.impl.sync;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BlockPatchTest {
+
+    private static final int BLOCK_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Random random = new Random(42);
+
+    @Test
+    public void patchesChangedBlocks() throws IOException, NoSuchAlgorithmException {
+        byte[] source = randomBytes(BLOCK_SIZE * 64);
+        byte[] target = Arrays.copyOf(source, source.length + BLOCK_SIZE / 2);
+        System.arraycopy(randomBytes(BLOCK_SIZE), 0, target, BLOCK_SIZE * 10, BLOCK_SIZE);
+        System.arraycopy(source, 0, target, BLOCK_SIZE * 20, BLOCK_SIZE);
+        System.arraycopy(randomBytes(BLOCK_SIZE / 2), 0, target, source.length, BLOCK_SIZE / 2);
+        File patch = assertRoundTrip(source, target);
+        assertTrue("patch should be much smaller than target", patch.length() < BLOCK_SIZE * 3);
+    }
+
+    @Test
+    public void patchesUnrelatedContent() throws IOException, NoSuchAlgorithmException {
+        assertRoundTrip(randomBytes(BLOCK_SIZE * 3 + 7), randomBytes(BLOCK_SIZE * 5 + 11));
+    }
+
+    @Test
+    public void patchesEmptyFiles() throws IOException, NoSuchAlgorithmException {
+        assertRoundTrip(new byte[0], randomBytes(100));
+        assertRoundTrip(randomBytes(100), new byte[0]);
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private File assertRoundTrip(byte[] sourceContent, byte[] targetContent) throws IOException, NoSuchAlgorithmException {
+        File source = folder.newFile(), target = folder.newFile(), patch = folder.newFile(), result = folder.newFile();
+        Files.write(source.toPath(), sourceContent);
+        Files.write(target.toPath(), targetContent);
+        BlockPatch.create(source, target, "abc123", BLOCK_SIZE, patch);
+        try (InputStream in = new FileInputStream(patch)) {
+            assertEquals("abc123", BlockPatch.apply(source, in, result));
+        }
+        assertArrayEquals(targetContent, Files.readAllBytes(result.toPath()));
+        return patch;
+    }
+}
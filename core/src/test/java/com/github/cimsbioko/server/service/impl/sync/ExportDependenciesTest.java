@@ -0,0 +1,33 @@
+package com.github.cimsbioko.server.service.impl.sync;
+
+import org.json.JSONArray;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class ExportDependenciesTest {
+
+    @Test
+    public void collectsTablesFromNestedPlans() {
+        String plan = "[{\"Plan\": {\"Node Type\": \"Hash Join\", \"Plans\": [" +
+                "{\"Node Type\": \"Seq Scan\", \"Relation Name\": \"individual\", \"Alias\": \"i\"}," +
+                "{\"Node Type\": \"Hash\", \"Plans\": [" +
+                "{\"Node Type\": \"Index Scan\", \"Relation Name\": \"location\", \"Alias\": \"l\"}]}]}}]";
+        Optional<Set<String>> tables = ExportDependencies.getTables(new JSONArray(plan));
+        assertEquals(Optional.of(new HashSet<>(Arrays.asList("individual", "location"))), tables);
+    }
+
+    @Test
+    public void unknownWhenReadingFromFunctions() {
+        String plan = "[{\"Plan\": {\"Node Type\": \"Nested Loop\", \"Plans\": [" +
+                "{\"Node Type\": \"Seq Scan\", \"Relation Name\": \"individual\"}," +
+                "{\"Node Type\": \"Function Scan\", \"Function Name\": \"jsonb_each\"}]}}]";
+        assertFalse(ExportDependencies.getTables(new JSONArray(plan)).isPresent());
+    }
+}
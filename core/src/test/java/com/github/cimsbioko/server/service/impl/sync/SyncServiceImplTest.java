@@ -0,0 +1,166 @@
+package com.github.cimsbioko.server.service.impl.sync;
+
+import com.github.cimsbioko.server.dao.CampaignRepository;
+import com.github.cimsbioko.server.domain.Campaign;
+import com.github.cimsbioko.server.scripting.DatabaseExport;
+import com.github.cimsbioko.server.scripting.JsConfig;
+import com.github.cimsbioko.server.service.SyncService;
+import com.github.cimsbioko.server.service.impl.campaign.CampaignLoadedEvent;
+import com.github.cimsbioko.server.sqliteexport.Exporter;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.Trigger;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ScheduledFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class SyncServiceImplTest {
+
+    private static final String CAMPAIGN = "campaign-uuid";
+
+    private static final String PLAN = "[{\"Plan\": {\"Node Type\": \"Seq Scan\", \"Relation Name\": \"individual\"}}]";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // modification counters, as reported by pg_stat_user_tables
+    private final Map<String, Long> modifications = new HashMap<>();
+
+    private JdbcTemplate jdbcTemplate;
+
+    private ExportLeases leases;
+
+    private Exporter exporter;
+
+    private SyncServiceImpl service;
+
+    private Runnable scheduledExport;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception {
+
+        jdbcTemplate = mock(JdbcTemplate.class, this::queryStats);
+
+        TaskScheduler scheduler = mock(TaskScheduler.class);
+        ArgumentCaptor<Runnable> scheduled = ArgumentCaptor.forClass(Runnable.class);
+        when(scheduler.schedule(scheduled.capture(), any(Trigger.class))).thenReturn(mock(ScheduledFuture.class));
+        when(scheduler.scheduleAtFixedRate(any(Runnable.class), any(Instant.class), any(Duration.class)))
+                .thenReturn(mock(ScheduledFuture.class));
+
+        Campaign campaign = new Campaign();
+        campaign.setUuid(CAMPAIGN);
+        campaign.setName("test");
+        CampaignRepository repo = mock(CampaignRepository.class);
+        when(repo.findActiveByUuid(CAMPAIGN)).thenReturn(Optional.of(campaign));
+
+        // leases are recorded in sync_export, so every export modifies it
+        leases = mock(ExportLeases.class);
+        when(leases.getLeaseDuration()).thenReturn(Duration.ofMinutes(30));
+        when(leases.acquire(CAMPAIGN)).thenAnswer(i -> {
+            modifications.merge("sync_export", 1L, Long::sum);
+            return true;
+        });
+
+        exporter = mock(Exporter.class);
+        doAnswer(i -> {
+            Files.write(i.<File>getArgument(1).toPath(), new byte[]{1, 2, 3});
+            return null;
+        }).when(exporter).exportAll(anyMap(), any(File.class), any(Exporter.Listener.class));
+
+        DatabaseExport export = mock(DatabaseExport.class);
+        when(export.exportQueries()).thenReturn(Collections.singletonMap("individual", "select * from individual"));
+        when(export.initScripts()).thenReturn(new String[0]);
+        when(export.postScripts()).thenReturn(new String[0]);
+        when(export.exportSchedule()).thenReturn("0 0 * * * *");
+        JsConfig config = mock(JsConfig.class);
+        when(config.getDatabaseExport()).thenReturn(export);
+        CampaignLoadedEvent loaded = mock(CampaignLoadedEvent.class);
+        when(loaded.getUuid()).thenReturn(CAMPAIGN);
+        when(loaded.getName()).thenReturn("test");
+        when(loaded.getConfig()).thenReturn(config);
+
+        service = new SyncServiceImpl(scheduler, repo, folder.newFolder(), exporter,
+                mock(ApplicationEventPublisher.class), jdbcTemplate, mock(VersionHistory.class), leases, Runnable::run,
+                false, 24, Duration.ofDays(14), Duration.ofSeconds(5));
+        service.onCampaignLoad(loaded);
+        scheduledExport = scheduled.getValue();
+    }
+
+    private Object queryStats(InvocationOnMock invocation) throws Throwable {
+        String method = invocation.getMethod().getName();
+        Object[] args = invocation.getArguments();
+        if ("queryForList".equals(method) && ((String) args[0]).startsWith("explain")) {
+            return Collections.singletonList(PLAN);
+        } else if ("queryForObject".equals(method) && ((String) args[0]).contains("pg_stat_user_tables")) {
+            String sql = (String) args[0];
+            List<Object> tables = new ArrayList<>();
+            if (sql.contains("relname in")) {
+                tables.addAll(Arrays.asList(args).subList(2, args.length));
+            } else {
+                // schema-wide counts, less tables excluded by name
+                modifications.keySet().stream().filter(t -> !sql.contains("'" + t + "'")).forEach(tables::add);
+            }
+            return String.valueOf(tables.stream().mapToLong(t -> modifications.getOrDefault(t, 0L)).sum());
+        } else if ("queryForObject".equals(method)) {
+            return 1L;
+        }
+        return RETURNS_DEFAULTS.answer(invocation);
+    }
+
+    @Test
+    public void skipsExportWhenOnlyBookkeepingChanged() throws Exception {
+        modifications.put("individual", 10L);
+        scheduledExport.run();
+        modifications.merge("form", 1L, Long::sum);
+        scheduledExport.run();
+        verify(exporter, times(1)).exportAll(anyMap(), any(File.class), any(Exporter.Listener.class));
+    }
+
+    @Test
+    public void exportsWhenExportedTablesChanged() throws Exception {
+        modifications.put("individual", 10L);
+        scheduledExport.run();
+        modifications.merge("individual", 1L, Long::sum);
+        scheduledExport.run();
+        verify(exporter, times(2)).exportAll(anyMap(), any(File.class), any(Exporter.Listener.class));
+    }
+
+    @Test
+    public void discardsChangesWhenIncrementalExportsAreDisabled() {
+        service.onApplicationReady(mock(ApplicationReadyEvent.class));
+        verify(jdbcTemplate).update(startsWith("update sync_change_tracking set enabled = false"));
+        verify(jdbcTemplate).update("delete from sync_change");
+        verify(jdbcTemplate, never()).update(startsWith("update sync_change_tracking set enabled = true"));
+    }
+
+    @Test
+    public void reportsExportStateWithoutQueryingLeases() {
+        when(leases.get(CAMPAIGN)).thenReturn(Optional.of(new ExportLeases.ExportState(false, null, null, 0, "hash",
+                false)));
+        modifications.put("individual", 10L);
+        scheduledExport.run();
+        clearInvocations(leases);
+        for (int i = 0; i < 3; i++) {
+            assertEquals("hash", service.getTask(CAMPAIGN).map(SyncService.Task::getContentHash).orElse(null));
+            assertEquals(SyncService.Status.SCHEDULED, service.getStatus(CAMPAIGN));
+        }
+        verify(leases, never()).get(any());
+    }
+}
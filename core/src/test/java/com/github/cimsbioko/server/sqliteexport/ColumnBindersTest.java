@@ -0,0 +1,45 @@
+package com.github.cimsbioko.server.sqliteexport;
+
+import org.junit.Test;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import static com.github.cimsbioko.server.sqliteexport.ColumnBinders.ColumnBuffer;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.*;
+
+public class ColumnBindersTest {
+
+    @Test
+    public void bindsOnlySingleBitsAsBooleans() throws SQLException {
+        ResultSetMetaData md = mock(ResultSetMetaData.class);
+        when(md.getColumnCount()).thenReturn(2);
+        when(md.getColumnType(anyInt())).thenReturn(Types.BIT);
+        when(md.getPrecision(1)).thenReturn(1);
+        when(md.getPrecision(2)).thenReturn(8);
+        ColumnBinders.ColumnBinder[] binders = ColumnBinders.forColumns(md);
+        assertSame(ColumnBinders.BOOLEAN, binders[0]);
+        assertSame(ColumnBinders.OBJECT, binders[1]);
+    }
+
+    @Test
+    public void buffersPrimitiveValuesAndNulls() throws SQLException {
+        ResultSet source = mock(ResultSet.class);
+        when(source.getLong(1)).thenReturn(42L, 0L);
+        when(source.wasNull()).thenReturn(false, true);
+        ColumnBuffer buffer = ColumnBinders.LONG.newBuffer(2);
+        buffer.read(source, 1, 0);
+        buffer.read(source, 1, 1);
+
+        PreparedStatement target = mock(PreparedStatement.class);
+        buffer.write(target, 1, 0);
+        buffer.write(target, 1, 1);
+        verify(target).setLong(1, 42L);
+        verify(target).setNull(1, Types.BIGINT);
+        verify(source, never()).getObject(anyInt());
+    }
+}
@@ -0,0 +1,61 @@
+package com.github.cimsbioko.server.sqliteexport;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static java.sql.ResultSet.CONCUR_READ_ONLY;
+import static java.sql.ResultSet.TYPE_FORWARD_ONLY;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+public class CursorSourceTest {
+
+    private DataSource ds;
+    private Connection connection;
+    private Statement statement;
+
+    @Before
+    public void setup() throws SQLException {
+        ds = mock(DataSource.class);
+        connection = mock(Connection.class);
+        statement = mock(Statement.class);
+        when(ds.getConnection()).thenReturn(connection);
+        when(connection.createStatement(anyInt(), anyInt())).thenReturn(statement);
+    }
+
+    @Test
+    public void createsForwardOnlyReadOnlyCursors() throws SQLException {
+        Source source = new CursorSource(ds, 250);
+        Connection c = source.createConnection();
+        assertSame(connection, c);
+        verify(connection).setAutoCommit(false);
+        assertSame(statement, source.createStatement(c));
+        verify(connection).createStatement(TYPE_FORWARD_ONLY, CONCUR_READ_ONLY);
+        verify(statement).setFetchSize(250);
+    }
+
+    @Test
+    public void usesDefaultFetchSizeWhenUnset() throws SQLException {
+        Source source = new CursorSource(ds, 0);
+        source.createStatement(source.createConnection());
+        verify(statement).setFetchSize(CursorSource.DEFAULT_FETCH_SIZE);
+    }
+
+    @Test
+    public void closesConnectionWhenAutoCommitCannotBeDisabled() throws SQLException {
+        doThrow(new SQLException("unsupported")).when(connection).setAutoCommit(false);
+        try {
+            new CursorSource(ds).createConnection();
+            fail("expected exception");
+        } catch (SQLException expected) {
+            verify(connection).close();
+        }
+    }
+}
@@ -5,6 +5,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringRunner;
 
@@ -12,7 +13,12 @@ import javax.sql.DataSource;
 import java.io.File;
 import java.io.IOException;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
+import static java.util.Arrays.asList;
 import static org.junit.Assert.*;
 
 @RunWith(SpringRunner.class)
@@ -28,6 +34,12 @@ public class ExporterTest {
     @Autowired
     private SqliteTarget target;
 
+    @Autowired
+    private Source source;
+
+    @Autowired
+    private MapperFactory mapperFactory;
+
     private File file = new File("exported.db");
 
     private String destTable = "dest_table";
@@ -60,6 +72,60 @@ public class ExporterTest {
         assertDatabase(file, destTable);
     }
 
+    @Test
+    public void testBulkLoadExporter() throws SQLException, IOException {
+        SqliteTarget bulkTarget = new SqliteTarget(asList("journal_mode=OFF", "synchronous=OFF", "temp_store=MEMORY"));
+        Exporter bulkExporter = new Exporter(source, bulkTarget, mapperFactory, 2, 1);
+        assertEquals(2, bulkExporter.export("select * from source_table", destTable, file));
+        assertDatabase(file, destTable);
+    }
+
+    @Test
+    public void testPipelinedExporter() throws SQLException, IOException {
+        String otherTable = "other_table";
+        try (Connection c = target.createConnection(file, true); Statement s = c.createStatement()) {
+            s.executeUpdate(String.format("create table %s (f1 INT, f2 BOOLEAN, f3 VARCHAR, f4 DATE, f5 TIMESTAMP)", otherTable));
+        }
+        Map<String, String> queries = new LinkedHashMap<>();
+        queries.put(destTable, "select * from source_table");
+        queries.put(otherTable, "select * from source_table");
+        List<String> exported = new ArrayList<>();
+        ThreadPoolTaskExecutor readerExecutor = new ThreadPoolTaskExecutor();
+        readerExecutor.setCorePoolSize(1);
+        readerExecutor.initialize();
+        try {
+            // a single reader with room for a single row, so the writer must drain each table for its reader to finish
+            Exporter pipelined = new PipelinedExporter(source, target, mapperFactory, 1, 0, readerExecutor, 1, 1);
+            pipelined.exportAll(queries, file, (table, rows, millis) -> exported.add(table));
+        } finally {
+            readerExecutor.shutdown();
+        }
+        assertEquals(asList(destTable, otherTable), exported);
+        assertDatabase(file, destTable);
+        assertDatabase(file, otherTable);
+    }
+
+    @Test
+    public void testExportChanges() throws SQLException, IOException {
+        exporter.export("select * from source_table", destTable, file);
+        try (Connection c = ds.getConnection(); Statement s = c.createStatement()) {
+            s.executeUpdate("update source_table set f3 = 'Hello again' where f1 = 1");
+            s.executeUpdate("delete from source_table where f1 = 2");
+            s.executeUpdate("insert into source_table VALUES ('3', 'true', 'New', current_date(), current_timestamp())");
+            s.executeUpdate("insert into source_table VALUES ('2', 'true', 'Back', current_date(), current_timestamp())");
+        }
+        assertEquals(2, exporter.exportChanges("select * from source_table", destTable, "f1", asList(1, 3), file));
+        try (Connection c = target.createConnection(file, true); Statement s = target.createStatement(c);
+             ResultSet results = s.executeQuery("select f1, f3 from " + destTable + " order by f1")) {
+            List<String> rows = new ArrayList<>();
+            while (results.next()) {
+                rows.add(results.getInt(1) + ":" + results.getString(2));
+            }
+            // key 2 was not part of the changes, so its previously exported row remains
+            assertEquals(asList("1:Hello again", "2:Goodbye", "3:New"), rows);
+        }
+    }
+
     private void assertDatabase(File file, String destTable) throws IOException, SQLException {
         try (Connection c = target.createConnection(file, true); Statement s = target.createStatement(c);
              ResultSet results = s.executeQuery("select * from " + destTable)) {
@@ -0,0 +1,111 @@
+package com.github.cimsbioko.server.sqliteexport;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.sql.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares generic object binding, as done prior to compiled column binders, against {@link SqliteMapper}.
+ * Run with the test classpath using the main method, or through the jmh runner.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SqliteMapperBenchmark {
+
+    private static final String QUERY = "select * from bench_source";
+    private static final String TABLE = "bench_target";
+    private static final int ROWS = 10000;
+
+    private Connection src, dst;
+    private Mapper mapper;
+    private String insertDml;
+
+    @Setup
+    public void setUp() throws SQLException, ClassNotFoundException {
+        Class.forName("org.h2.Driver");
+        Class.forName("org.sqlite.JDBC");
+        src = DriverManager.getConnection("jdbc:h2:mem:bench");
+        try (Statement s = src.createStatement()) {
+            s.executeUpdate("create table bench_source (f1 INT, f2 BIGINT, f3 DOUBLE, f4 VARCHAR, f5 BOOLEAN, f6 TIMESTAMP)");
+        }
+        try (PreparedStatement p = src.prepareStatement("insert into bench_source values (?, ?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < ROWS; i++) {
+                p.setInt(1, i);
+                p.setLong(2, i * 1000L);
+                p.setDouble(3, i / 3.0);
+                p.setString(4, "value " + i);
+                p.setBoolean(5, i % 2 == 0);
+                p.setTimestamp(6, new Timestamp(System.currentTimeMillis()));
+                p.addBatch();
+            }
+            p.executeBatch();
+        }
+        dst = DriverManager.getConnection("jdbc:sqlite::memory:");
+        try (Statement s = dst.createStatement()) {
+            s.executeUpdate("create table " + TABLE + " (f1 INTEGER, f2 INTEGER, f3 REAL, f4 TEXT, f5 BOOLEAN, f6 TIMESTAMP)");
+        }
+        dst.setAutoCommit(false);
+        try (Statement s = src.createStatement(); ResultSet rs = s.executeQuery(QUERY)) {
+            mapper = new SqliteMapperFactory(new DBTypeExtractor()).createMapper(rs.getMetaData(), TABLE, dst);
+            insertDml = mapper.getInsertDml();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        dst.close();
+        try (Statement s = src.createStatement()) {
+            s.executeUpdate("drop table bench_source");
+        }
+        src.close();
+    }
+
+    @Benchmark
+    public int genericBinding() throws SQLException {
+        int rows = 0;
+        try (Statement s = src.createStatement(); ResultSet rs = s.executeQuery(QUERY);
+             PreparedStatement d = dst.prepareStatement(insertDml)) {
+            ResultSetMetaData md = rs.getMetaData();
+            while (rs.next()) {
+                for (int c = 1; c <= md.getColumnCount(); c++) {
+                    d.setObject(c, rs.getObject(c));
+                }
+                d.addBatch();
+                rows++;
+            }
+            d.executeBatch();
+        } finally {
+            dst.rollback();
+        }
+        return rows;
+    }
+
+    @Benchmark
+    public int compiledBinding() throws SQLException {
+        int rows = 0;
+        try (Statement s = src.createStatement(); ResultSet rs = s.executeQuery(QUERY);
+             PreparedStatement d = dst.prepareStatement(insertDml)) {
+            while (rs.next()) {
+                mapper.bind(rs, d);
+                d.addBatch();
+                rows++;
+            }
+            d.executeBatch();
+        } finally {
+            dst.rollback();
+        }
+        return rows;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SqliteMapperBenchmark.class.getSimpleName()).build()).run();
+    }
+}
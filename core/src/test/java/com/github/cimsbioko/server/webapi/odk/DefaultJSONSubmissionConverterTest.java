@@ -28,7 +28,7 @@ public class DefaultJSONSubmissionConverterTest {
 
     private static final FormId DEFAULT_FORM_ID = new FormId("default", "1");
 
-    private SubmissionJSONConverter converter;
+    private DefaultSubmissionJSONConverter converter;
 
     @Mock
     private FormMetadataService metadataService;
@@ -11,16 +11,20 @@ import java.util.Arrays;
 
 import static com.github.cimsbioko.server.util.JDOMUtil.stringFromDoc;
 
-public class DefaultSubmissionJSONConverter implements SubmissionJSONConverter {
+/**
+ * Converts submission documents to json by serializing them and converting the result with org.json. This was how
+ * submissions were converted before {@link DefaultSubmissionParser}, and serves as the reference its output is
+ * verified against.
+ */
+class DefaultSubmissionJSONConverter {
 
     private final FormMetadataService metadataService;
 
-    public DefaultSubmissionJSONConverter(FormMetadataService metadataService) {
+    DefaultSubmissionJSONConverter(FormMetadataService metadataService) {
         this.metadataService = metadataService;
     }
 
-    @Override
-    public JSONObject convert(Document xmlDoc, FormId formId) {
+    JSONObject convert(Document xmlDoc, FormId formId) {
         JSONObject converted = XML.toJSONObject(stringFromDoc(xmlDoc));
         for (String[] path : metadataService.getRepeats(formId)) {
             fixRepeats(converted, path);
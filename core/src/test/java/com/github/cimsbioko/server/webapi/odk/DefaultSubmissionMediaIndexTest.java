@@ -0,0 +1,78 @@
+package com.github.cimsbioko.server.webapi.odk;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.*;
+
+public class DefaultSubmissionMediaIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File dir;
+    private SubmissionMediaIndex index;
+
+    @Before
+    public void setup() throws Exception {
+        dir = folder.newFolder();
+        index = new DefaultSubmissionMediaIndex();
+    }
+
+    @Test
+    public void emptyWithoutIndex() throws Exception {
+        assertTrue(index.get(dir).isEmpty());
+    }
+
+    @Test
+    public void putMergesEntries() throws Exception {
+        index.put(dir, asList(new SubmissionMediaIndex.Entry("a.jpg", "md5:1", 10),
+                new SubmissionMediaIndex.Entry("b c.jpg", "md5:2", 20)));
+        index.put(dir, singletonList(new SubmissionMediaIndex.Entry("a.jpg", "md5:3", 30)));
+        Map<String, SubmissionMediaIndex.Entry> entries = index.get(dir);
+        assertEquals(2, entries.size());
+        assertEquals("md5:3", entries.get("a.jpg").getHash());
+        assertEquals(30, entries.get("a.jpg").getSize());
+        assertEquals("md5:2", entries.get("b c.jpg").getHash());
+        assertEquals(20, entries.get("b c.jpg").getSize());
+        File[] files = dir.listFiles();
+        assertNotNull(files);
+        assertEquals(1, files.length);
+        assertTrue(index.isIndex(files[0].toPath()));
+    }
+
+    @Test
+    public void putWithoutEntriesLeavesDirectoryUntouched() throws Exception {
+        index.put(dir, Collections.emptyList());
+        String[] files = dir.list();
+        assertNotNull(files);
+        assertEquals(0, files.length);
+    }
+
+    @Test
+    public void copyAndHashMatchesFileHash() throws Exception {
+        FileHasher hasher = new DefaultFileHasher();
+        File file = new File(dir, "photo.jpg");
+        byte[] content = "not really a photo".getBytes(StandardCharsets.UTF_8);
+        String hash;
+        try (OutputStream out = new FileOutputStream(file)) {
+            hash = hasher.copyAndHash(new ByteArrayInputStream(content), out);
+        }
+        assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+        assertEquals(hasher.hashFile(file), hash);
+        assertFalse(index.isIndex(file.toPath()));
+    }
+}
@@ -0,0 +1,168 @@
+package com.github.cimsbioko.server.webapi.odk;
+
+import com.github.cimsbioko.server.domain.FormId;
+import com.github.cimsbioko.server.service.FormMetadataService;
+import org.jdom2.Document;
+import org.jdom2.JDOMException;
+import org.jdom2.output.XMLOutputter;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+
+import static com.github.cimsbioko.server.util.JDOMUtil.docFromObj;
+import static com.github.cimsbioko.server.util.JDOMUtil.stringFromDoc;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class DefaultSubmissionParserTest {
+
+    private static final FormId FORM_ID = new FormId("form", "1");
+    private static final String GENERATED_ID = "uuid:generated";
+
+    @Mock
+    private FormMetadataService metadataService;
+
+    @Mock
+    private SubmissionIdGenerator idGenerator;
+
+    private SubmissionParser parser;
+
+    private DefaultSubmissionJSONConverter converter;
+
+    @Before
+    public void setup() {
+        when(metadataService.getRepeats(any())).thenReturn(emptyList());
+        when(idGenerator.generateId()).thenReturn(GENERATED_ID);
+        parser = new DefaultSubmissionParser(metadataService, idGenerator, new DefaultDateFormatter());
+        converter = new DefaultSubmissionJSONConverter(metadataService);
+    }
+
+    private ParsedSubmission parse(String xml) throws XMLStreamException {
+        return parser.parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Verifies the parsed submission matches building, serializing and converting the document the previous way.
+     */
+    private ParsedSubmission assertEquivalent(String xml) throws XMLStreamException, JDOMException, IOException, SQLException {
+        ParsedSubmission parsed = parse(xml);
+        Document expected = docFromObj(xml);
+        assertEquals(stringFromDoc(expected), parsed.getXml().getSerialized());
+        assertEquals(parsed.getXml().getSerialized(), new XMLOutputter().outputString(parsed.getXml()));
+        JSONObject expectedJson = converter.convert(expected, FORM_ID);
+        assertTrue(expectedJson + " != " + parsed.getJson(), expectedJson.similar(parsed.getJson()));
+        return parsed;
+    }
+
+    /**
+     * Verifies the serialized form and json of a parsed submission match its document.
+     */
+    private void assertConsistent(ParsedSubmission parsed) {
+        assertEquals(new XMLOutputter().outputString(parsed.getXml()), parsed.getXml().getSerialized());
+        JSONObject expectedJson = converter.convert(parsed.getXml(), FORM_ID);
+        assertTrue(expectedJson + " != " + parsed.getJson(), expectedJson.similar(parsed.getJson()));
+    }
+
+    private static String complete(String content) {
+        return "<data id=\"form\" version=\"1\" xmlns:jr=\"http://openrosa.org/xforms\">" + content +
+                "<collectionDateTime>2020-01-02 03:04:05</collectionDateTime>" +
+                "<meta><instanceID>uuid:1</instanceID></meta></data>";
+    }
+
+    @Test
+    public void extractsMetaFields() throws Exception {
+        ParsedSubmission parsed = assertEquivalent("<data id=\"form\" version=\"2\" cims-binding=\"b\" cims-campaign=\"c\"" +
+                " submissionDate=\"2020-01-02T03:04:05.000Z\"><collectionDateTime>2020-01-02 03:04:05</collectionDateTime>" +
+                "<meta><instanceID>uuid:1</instanceID><deprecatedID>uuid:0</deprecatedID></meta></data>");
+        assertEquals("form", parsed.getFormId());
+        assertEquals("2", parsed.getFormVersion());
+        assertEquals("uuid:1", parsed.getInstanceId());
+        assertEquals("uuid:0", parsed.getDeprecatedId());
+        assertEquals("b", parsed.getBinding());
+        assertEquals("c", parsed.getCampaign());
+        assertEquals("2020-01-02T03:04:05.000Z", parsed.getSubmissionDate());
+        assertEquals(java.sql.Timestamp.valueOf("2020-01-02 03:04:05"), parsed.getCollected());
+    }
+
+    @Test
+    public void textAndAttributes() throws Exception {
+        assertEquivalent(complete("<a>line1\nline2\r\nx &amp; &lt; &gt; \" '</a><b/><c></c>" +
+                "<d at=\"v&#10;w\tz&quot;&lt;&amp;&gt;&#9;&#13;\"> </d><e>  12  </e><f>true</f><g>a<h/>b</g>" +
+                "<i>x&#xD;y</i><b>2</b><j k=\"1\">text</j>"));
+    }
+
+    @Test
+    public void namespaces() throws Exception {
+        assertEquivalent("<p:data xmlns:z=\"urn:z\" xmlns:a=\"urn:a\" xmlns:p=\"urn:p\" z:q=\"1\" a:r=\"2\" id=\"form\"" +
+                " version=\"1\" instanceID=\"uuid:1\"><p:collectionDateTime>2020-01-02 03:04:05</p:collectionDateTime>" +
+                "<p:meta/><x xmlns=\"urn:d\"><y xmlns=\"\"><z:w xmlns:z=\"urn:z\" xmlns:b=\"urn:b\"/></y></x></p:data>");
+    }
+
+    @Test
+    public void cdataCommentsAndInstructions() throws Exception {
+        assertEquivalent("<!--pre--><?pi x?>" + complete("<e><![CDATA[cd<>\nline]]></e><!--c--><?p d?>" +
+                "<f>a<!--c-->b</f>") + "<!--post-->");
+    }
+
+    @Test
+    public void repeats() throws Exception {
+        when(metadataService.getRepeats(FORM_ID)).thenReturn(asList(
+                new String[]{"data", "house", "person"}, new String[]{"data", "house"}, new String[]{"data", "single"}));
+        assertEquivalent(complete("<house><person>1</person><person>2</person></house><house><person>3</person></house>" +
+                "<single><v>x</v></single>"));
+    }
+
+    @Test
+    public void addsMissingMeta() throws Exception {
+        ParsedSubmission parsed = parse("<data id=\"form\"><a>1</a></data>");
+        assertConsistent(parsed);
+        assertEquals(GENERATED_ID, parsed.getInstanceId());
+        assertEquals("1", parsed.getFormVersion());
+        assertNotNull(parsed.getCollected());
+        String xml = parsed.getXml().getSerialized();
+        assertTrue(xml, xml.contains("<data id=\"form\" version=\"1\"><a>1</a><jr:meta xmlns:jr=\"http://openrosa.org/xforms\">" +
+                "<jr:instanceID>" + GENERATED_ID + "</jr:instanceID></jr:meta><collectionDateTime>"));
+    }
+
+    @Test
+    public void fillsEmptyMeta() throws Exception {
+        ParsedSubmission parsed = parse("<data id=\"form\" version=\"1\"><collectionDateTime/><meta><instanceID/></meta></data>");
+        assertConsistent(parsed);
+        assertEquals(GENERATED_ID, parsed.getInstanceId());
+        assertNotNull(parsed.getCollected());
+        assertTrue(parsed.getXml().getSerialized().contains("<meta><instanceID>" + GENERATED_ID + "</instanceID></meta>"));
+    }
+
+    @Test
+    public void addsMissingInstanceId() throws Exception {
+        ParsedSubmission parsed = parse("<data id=\"form\" version=\"1\" xmlns:jr=\"http://openrosa.org/xforms\">" +
+                "<collectionDateTime>2020-01-02 03:04:05</collectionDateTime><jr:meta><jr:deprecatedID>uuid:0</jr:deprecatedID></jr:meta></data>");
+        assertConsistent(parsed);
+        assertEquals(GENERATED_ID, parsed.getInstanceId());
+        assertEquals("uuid:0", parsed.getDeprecatedId());
+        assertTrue(parsed.getXml().getSerialized().contains(
+                "<jr:meta><jr:deprecatedID>uuid:0</jr:deprecatedID><jr:instanceID>" + GENERATED_ID + "</jr:instanceID></jr:meta>"));
+    }
+
+    @Test
+    public void rootInstanceIdTakesPrecedence() throws Exception {
+        ParsedSubmission parsed = parse("<data id=\"form\" version=\"1\" instanceID=\"uuid:root\">" +
+                "<collectionDateTime>2020-01-02 03:04:05</collectionDateTime><meta><instanceID/></meta></data>");
+        assertConsistent(parsed);
+        assertEquals("uuid:root", parsed.getInstanceId());
+        assertTrue(parsed.getXml().getSerialized().contains("<meta><instanceID /></meta>"));
+    }
+}
@@ -0,0 +1,158 @@
+package com.github.cimsbioko.server.webapi.odk;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.*;
+
+public class DefaultSubmissionSpoolTest {
+
+    private static final long SEGMENT_SIZE = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File dir;
+    private DefaultSubmissionSpool spool;
+
+    @Before
+    public void setup() throws IOException {
+        dir = folder.newFolder();
+        spool = new DefaultSubmissionSpool(dir, SEGMENT_SIZE);
+    }
+
+    @After
+    public void teardown() throws IOException {
+        spool.close();
+    }
+
+    private void reopen(long segmentSize) throws IOException {
+        spool.close();
+        spool = new DefaultSubmissionSpool(dir, segmentSize);
+    }
+
+    private static SpooledSubmission submission(String instanceId) {
+        return new SpooledSubmission(instanceId, "device", "binding", null, null, "<data>" + instanceId + "</data>");
+    }
+
+    private List<String> take(int max) throws IOException, InterruptedException {
+        return spool.take(max, 10, MILLISECONDS).stream().map(SpooledSubmission::getInstanceId).collect(toList());
+    }
+
+    private File[] segments() {
+        return dir.listFiles((d, name) -> name.endsWith(".spool"));
+    }
+
+    @Test
+    public void takesInOrder() throws Exception {
+        assertTrue(take(10).isEmpty());
+        Timestamp submitted = new Timestamp(1000);
+        spool.append(new SpooledSubmission("uuid:1", "device", "binding", "campaign", submitted, "<data>é</data>"));
+        spool.append(submission("uuid:2"));
+        spool.append(submission("uuid:3"));
+        List<SpooledSubmission> taken = spool.take(2, 10, MILLISECONDS);
+        assertEquals(2, taken.size());
+        SpooledSubmission first = taken.get(0);
+        assertEquals("uuid:1", first.getInstanceId());
+        assertEquals("device", first.getDeviceId());
+        assertEquals("binding", first.getBinding());
+        assertEquals("campaign", first.getCampaign());
+        assertEquals(submitted, first.getSubmitted());
+        assertEquals("<data>é</data>", first.getXml());
+        assertNull(taken.get(1).getCampaign());
+        assertNull(taken.get(1).getSubmitted());
+        assertEquals(Collections.singletonList("uuid:3"), take(10));
+        assertTrue(take(10).isEmpty());
+    }
+
+    @Test
+    public void replaysUnacknowledgedAfterRestart() throws Exception {
+        spool.append(submission("uuid:1"));
+        spool.append(submission("uuid:2"));
+        spool.append(submission("uuid:3"));
+        List<SpooledSubmission> taken = spool.take(10, 10, MILLISECONDS);
+        spool.acknowledge(taken.get(0));
+        reopen(SEGMENT_SIZE);
+        assertEquals(Arrays.asList("uuid:2", "uuid:3"), take(10));
+        spool.append(submission("uuid:4"));
+        assertEquals(Collections.singletonList("uuid:4"), take(10));
+    }
+
+    @Test
+    public void discardsTornRecord() throws Exception {
+        spool.append(submission("uuid:1"));
+        spool.append(submission("uuid:2"));
+        spool.close();
+        File segment = segments()[0];
+        try (FileOutputStream out = new FileOutputStream(segment, true)) {
+            out.write(new byte[]{0, 0, 1, 0, 42, 42});
+        }
+        long written = segment.length();
+        reopen(SEGMENT_SIZE);
+        assertEquals(written - 6, segment.length());
+        assertEquals(Arrays.asList("uuid:1", "uuid:2"), take(10));
+        spool.append(submission("uuid:3"));
+        assertEquals(Collections.singletonList("uuid:3"), take(10));
+    }
+
+    @Test
+    public void deletesAcknowledgedSegments() throws Exception {
+        reopen(1);
+        for (int i = 1; i <= 3; i++) {
+            spool.append(submission("uuid:" + i));
+        }
+        assertEquals(3, segments().length);
+        List<SpooledSubmission> taken = spool.take(10, 10, MILLISECONDS);
+        assertEquals(3, taken.size());
+        spool.acknowledge(taken.get(2));
+        assertEquals(1, segments().length);
+        reopen(1);
+        assertTrue(take(10).isEmpty());
+    }
+
+    @Test
+    public void concurrentAppends() throws Exception {
+        int threads = 8, appends = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < appends; i++) {
+                        spool.append(submission("uuid:" + thread + "-" + i));
+                    }
+                    return null;
+                }));
+            }
+            Set<String> taken = new HashSet<>();
+            while (taken.size() < threads * appends) {
+                List<String> batch = spool.take(100, 5, TimeUnit.SECONDS).stream()
+                        .map(SpooledSubmission::getInstanceId).collect(toList());
+                assertFalse(batch.isEmpty());
+                taken.addAll(batch);
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+            assertTrue(take(10).isEmpty());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
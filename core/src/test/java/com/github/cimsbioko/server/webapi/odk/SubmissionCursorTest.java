@@ -0,0 +1,38 @@
+package com.github.cimsbioko.server.webapi.odk;
+
+import org.junit.Test;
+
+import java.sql.Timestamp;
+
+import static org.junit.Assert.*;
+
+public class SubmissionCursorTest {
+
+    @Test
+    public void emptyIsStart() {
+        assertSame(SubmissionCursor.START, SubmissionCursor.decode(null));
+        assertSame(SubmissionCursor.START, SubmissionCursor.decode(""));
+    }
+
+    @Test
+    public void roundTrips() {
+        Timestamp submitted = Timestamp.valueOf("2020-01-02 03:04:05.123456");
+        String encoded = new SubmissionCursor(submitted, "uuid:a:b").encode();
+        assertFalse(encoded.contains("uuid"));
+        SubmissionCursor decoded = SubmissionCursor.decode(encoded);
+        assertEquals(submitted, decoded.getSubmitted());
+        assertEquals("uuid:a:b", decoded.getInstanceId());
+    }
+
+    @Test
+    public void acceptsTimestampCursors() {
+        SubmissionCursor decoded = SubmissionCursor.decode("2020-01-02 03:04:05.123");
+        assertEquals(Timestamp.valueOf("2020-01-02 03:04:05.123"), decoded.getSubmitted());
+        assertEquals("", decoded.getInstanceId());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidCursors() {
+        SubmissionCursor.decode("bm90IGEgY3Vyc29y");
+    }
+}
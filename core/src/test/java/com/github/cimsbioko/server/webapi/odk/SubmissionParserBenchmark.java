@@ -0,0 +1,102 @@
+package com.github.cimsbioko.server.webapi.odk;
+
+import com.github.cimsbioko.server.domain.FormId;
+import com.github.cimsbioko.server.hibernate.XMLType;
+import com.github.cimsbioko.server.service.FormMetadataService;
+import com.github.cimsbioko.server.service.Schema;
+import org.jdom2.Document;
+import org.jdom2.JDOMException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.cimsbioko.server.util.JDOMUtil.getBuilder;
+import static com.github.cimsbioko.server.util.JDOMUtil.stringFromDoc;
+
+/**
+ * Compares building, converting and storing a submission document, as done prior to single-pass parsing, against
+ * {@link DefaultSubmissionParser}. Storing is approximated by the copy and serialization {@link XMLType} performs when
+ * a submission is persisted. Run with the test classpath using the main method, adding -prof gc to the jmh
+ * options to compare allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SubmissionParserBenchmark {
+
+    private static final int FIELDS = 50;
+    private static final int REPEATS = 10;
+
+    private byte[] submission;
+    private DefaultSubmissionJSONConverter converter;
+    private SubmissionParser parser;
+    private XMLType xmlType;
+
+    @Setup
+    public void setUp() {
+        StringBuilder b = new StringBuilder("<?xml version='1.0' ?><data id=\"bench\" version=\"1\"" +
+                " xmlns:jr=\"http://openrosa.org/xforms\" xmlns:orx=\"http://openrosa.org/xforms\">");
+        for (int i = 0; i < FIELDS; i++) {
+            b.append("<field").append(i).append(">value ").append(i).append("</field").append(i).append('>');
+        }
+        for (int r = 0; r < REPEATS; r++) {
+            b.append("<member><name>member ").append(r).append("</name><age>").append(r).append("</age></member>");
+        }
+        b.append("<collectionDateTime>2020-01-02 03:04:05</collectionDateTime>");
+        b.append("<orx:meta><orx:instanceID>uuid:b6a5c0ee-0f3c-4bd9-a1a7-5b7c4a6b8f10</orx:instanceID></orx:meta>");
+        b.append("</data>");
+        submission = b.toString().getBytes(StandardCharsets.UTF_8);
+        FormMetadataService metadataService = new FormMetadataService() {
+            @Override
+            public Schema getFormSchema(FormId id) {
+                return null;
+            }
+
+            @Override
+            public List<String[]> getRepeats(FormId id) {
+                return Collections.singletonList(new String[]{"data", "member"});
+            }
+
+            @Override
+            public void invalidateMetadata(FormId id) {
+            }
+        };
+        converter = new DefaultSubmissionJSONConverter(metadataService);
+        parser = new DefaultSubmissionParser(metadataService, () -> "uuid:generated", new DefaultDateFormatter());
+        xmlType = new XMLType();
+    }
+
+    @Benchmark
+    public int documentAndConvert() throws JDOMException, IOException {
+        Document doc = getBuilder().build(new ByteArrayInputStream(submission));
+        JSONObject json = converter.convert(doc, new FormId("bench", "1"));
+        return json.length() + store(doc);
+    }
+
+    @Benchmark
+    public int singlePass() throws XMLStreamException {
+        ParsedSubmission parsed = parser.parse(new ByteArrayInputStream(submission));
+        return parsed.getJson().length() + store(parsed.getXml());
+    }
+
+    private int store(Document doc) {
+        return stringFromDoc((Document) xmlType.deepCopy(doc)).length();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SubmissionParserBenchmark.class.getSimpleName()).build()).run();
+    }
+}